@@ -0,0 +1,152 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.benchmark;
+
+import com.loohp.limbo.network.ConnectionThreads;
+import com.loohp.limbo.utils.DataTypeIO;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the memory cost of parking idle client connections, each blocked reading the next packet
+ * from its socket the way a blocking {@link com.loohp.limbo.network.ClientConnection} does.
+ * <p>
+ * Run with {@code mvn -Pbenchmark test-compile exec:exec -Dbenchmark.args="<connections>"}.
+ * Virtual threads are only measured when running on Java 21 or above.
+ */
+public class IdleConnectionMemoryBenchmark {
+
+    private static final Path PROC_STATUS = Paths.get("/proc/self/status");
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+
+        System.out.println("Idle connections per mode: " + connections);
+        System.out.println("Java: " + System.getProperty("java.version") + ", virtual threads supported: " + ConnectionThreads.isVirtualThreadsSupported());
+
+        try (ServerSocket serverSocket = new ServerSocket(0, connections, InetAddress.getLoopbackAddress())) {
+            run("warmup", serverSocket, Math.min(connections, 100), ConnectionThreads.newThreadFactory("Warmup-", false));
+            run("thread", serverSocket, connections, ConnectionThreads.newThreadFactory("Benchmark-Connection-", false));
+            if (ConnectionThreads.isVirtualThreadsSupported()) {
+                run("virtual", serverSocket, connections, ConnectionThreads.newThreadFactory("Benchmark-VirtualConnection-", true));
+            }
+        }
+    }
+
+    private static void run(String mode, ServerSocket serverSocket, int connections, ThreadFactory threadFactory) throws Exception {
+        List<Socket> sockets = new ArrayList<>(connections * 2);
+        List<Thread> threads = new ArrayList<>(connections);
+        CountDownLatch parked = new CountDownLatch(connections);
+
+        long heapBefore = usedHeap();
+        long rssBefore = residentSetSize();
+        long start = System.nanoTime();
+
+        for (int i = 0; i < connections; i++) {
+            Socket client = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+            Socket accepted = serverSocket.accept();
+            sockets.add(client);
+            sockets.add(accepted);
+            Thread thread = threadFactory.newThread(() -> {
+                try {
+                    DataInputStream input = new DataInputStream(accepted.getInputStream());
+                    parked.countDown();
+                    DataTypeIO.readVarInt(input);
+                } catch (IOException ignore) {
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        parked.await(1, TimeUnit.MINUTES);
+        TimeUnit.MILLISECONDS.sleep(500);
+
+        long elapsed = System.nanoTime() - start;
+        long heapAfter = usedHeap();
+        long rssAfter = residentSetSize();
+
+        if (!mode.equals("warmup")) {
+            System.out.println();
+            System.out.println("[" + mode + "]");
+            System.out.println("  setup time:          " + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms");
+            System.out.println("  live threads:        " + ManagementFactory.getThreadMXBean().getThreadCount());
+            System.out.println("  heap per connection: " + formatBytes((heapAfter - heapBefore) / connections));
+            if (rssBefore >= 0 && rssAfter >= 0) {
+                System.out.println("  rss per connection:  " + formatBytes((rssAfter - rssBefore) / connections));
+            } else {
+                System.out.println("  rss per connection:  unavailable on this platform");
+            }
+        }
+
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long residentSetSize() {
+        if (!Files.isReadable(PROC_STATUS)) {
+            return -1;
+        }
+        try {
+            for (String line : Files.readAllLines(PROC_STATUS, StandardCharsets.UTF_8)) {
+                if (line.startsWith("VmRSS:")) {
+                    String value = line.substring("VmRSS:".length()).trim();
+                    return Long.parseLong(value.substring(0, value.indexOf(' '))) * 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException ignore) {
+        }
+        return -1;
+    }
+
+    private static String formatBytes(long bytes) {
+        if (Math.abs(bytes) < 1024) {
+            return bytes + " B";
+        }
+        return String.format("%.1f KiB", bytes / 1024.0);
+    }
+
+}
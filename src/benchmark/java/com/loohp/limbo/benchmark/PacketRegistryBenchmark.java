@@ -0,0 +1,139 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.benchmark;
+
+import com.google.common.collect.BiMap;
+import com.google.common.collect.HashBiMap;
+import com.loohp.limbo.network.protocol.packets.ClientboundLevelChunkWithLightPacket;
+import com.loohp.limbo.network.protocol.packets.ClientboundSystemChatPacket;
+import com.loohp.limbo.network.protocol.packets.Packet;
+import com.loohp.limbo.network.protocol.packets.PacketPlayInKeepAlive;
+import com.loohp.limbo.network.protocol.packets.PacketPlayInPosition;
+import com.loohp.limbo.network.protocol.packets.PacketPlayInPositionAndLook;
+import com.loohp.limbo.network.protocol.packets.PacketPlayOutEntityMetadata;
+import com.loohp.limbo.network.protocol.packets.PacketPlayOutKeepAlive;
+import com.loohp.limbo.network.protocol.packets.PacketPlayOutPositionAndLook;
+import com.loohp.limbo.registry.PacketRegistry;
+import com.loohp.limbo.registry.PacketRegistry.NetworkPhase;
+import com.loohp.limbo.registry.PacketRegistry.PacketBound;
+import com.loohp.limbo.registry.PacketRegistry.PacketClassInfo;
+import net.kyori.adventure.key.Key;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares packet id and packet class lookups against the map based registry layout that was used before the
+ * registry got compiled into arrays. The legacy maps are rebuilt from the live registry so both sides resolve
+ * the exact same packets.
+ * <p>
+ * Run with {@code mvn -P benchmark test-compile exec:exec -Dbenchmark.mainClass=org.openjdk.jmh.Main -Dbenchmark.args=PacketRegistryBenchmark}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketRegistryBenchmark {
+
+    @SuppressWarnings("unchecked")
+    private static final Class<? extends Packet>[] OUTBOUND = new Class[] {
+            PacketPlayOutKeepAlive.class,
+            PacketPlayOutPositionAndLook.class,
+            PacketPlayOutEntityMetadata.class,
+            ClientboundLevelChunkWithLightPacket.class,
+            ClientboundSystemChatPacket.class
+    };
+
+    @SuppressWarnings("unchecked")
+    private static final Class<? extends Packet>[] INBOUND = new Class[] {
+            PacketPlayInKeepAlive.class,
+            PacketPlayInPosition.class,
+            PacketPlayInPositionAndLook.class
+    };
+
+    private final Map<NetworkPhase, Map<PacketBound, BiMap<Key, Integer>>> legacyIds = new EnumMap<>(NetworkPhase.class);
+    private final BiMap<Class<? extends Packet>, PacketClassInfo> legacyClasses = HashBiMap.create();
+
+    private int[] inboundIds;
+    private int index;
+
+    @Setup
+    public void setup() {
+        for (NetworkPhase networkPhase : NetworkPhase.values()) {
+            Map<PacketBound, BiMap<Key, Integer>> mappings = new EnumMap<>(PacketBound.class);
+            for (PacketBound packetBound : PacketBound.values()) {
+                mappings.put(packetBound, HashBiMap.create());
+            }
+            legacyIds.put(networkPhase, mappings);
+        }
+        register(OUTBOUND);
+        register(INBOUND);
+        inboundIds = new int[INBOUND.length];
+        for (int i = 0; i < INBOUND.length; i++) {
+            inboundIds[i] = PacketRegistry.getPacketId(INBOUND[i]);
+        }
+    }
+
+    private void register(Class<? extends Packet>[] classes) {
+        for (Class<? extends Packet> packetClass : classes) {
+            PacketClassInfo info = PacketRegistry.getPacketInfo(packetClass);
+            legacyIds.get(info.getNetworkPhase()).get(info.getPacketBound()).put(info.getKey(), PacketRegistry.getPacketId(packetClass));
+            legacyClasses.put(packetClass, new PacketClassInfo(info.getKey(), info.getNetworkPhase(), info.getPacketBound()));
+        }
+    }
+
+    @Benchmark
+    public int packetIdLegacy() {
+        Class<? extends Packet> packetClass = OUTBOUND[index++ % OUTBOUND.length];
+        PacketClassInfo info = legacyClasses.get(packetClass);
+        return legacyIds.get(info.getNetworkPhase()).get(info.getPacketBound()).get(info.getKey());
+    }
+
+    @Benchmark
+    public int packetIdCompiled() {
+        return PacketRegistry.getPacketId(OUTBOUND[index++ % OUTBOUND.length]);
+    }
+
+    @Benchmark
+    public Class<? extends Packet> packetClassLegacy() {
+        int packetId = inboundIds[index++ % inboundIds.length];
+        Key key = legacyIds.get(NetworkPhase.PLAY).get(PacketBound.SERVERBOUND).inverse().get(packetId);
+        return legacyClasses.inverse().get(new PacketClassInfo(key, NetworkPhase.PLAY, PacketBound.SERVERBOUND));
+    }
+
+    @Benchmark
+    public Class<? extends Packet> packetClassCompiled() {
+        return PacketRegistry.getPacketClass(inboundIds[index++ % inboundIds.length], NetworkPhase.PLAY, PacketBound.SERVERBOUND);
+    }
+
+}
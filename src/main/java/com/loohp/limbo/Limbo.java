@@ -34,7 +34,9 @@ import com.loohp.limbo.inventory.InventoryHolder;
 import com.loohp.limbo.inventory.InventoryType;
 import com.loohp.limbo.location.Location;
 import com.loohp.limbo.metrics.Metrics;
+import com.loohp.limbo.network.PacketBroadcaster;
 import com.loohp.limbo.network.ServerConnection;
+import com.loohp.limbo.network.StatusResponseCache;
 import com.loohp.limbo.network.protocol.packets.PacketPlayOutBoss;
 import com.loohp.limbo.permissions.PermissionsManager;
 import com.loohp.limbo.player.Player;
@@ -45,9 +47,11 @@ import com.loohp.limbo.scheduler.Tick;
 import com.loohp.limbo.utils.CustomStringUtils;
 import com.loohp.limbo.utils.ImageUtils;
 import com.loohp.limbo.utils.NetworkUtils;
+import com.loohp.limbo.utils.Pair;
 import com.loohp.limbo.world.Environment;
 import com.loohp.limbo.world.Schematic;
 import com.loohp.limbo.world.World;
+import com.loohp.limbo.world.WorldSnapshot;
 import net.kyori.adventure.bossbar.BossBar;
 import net.kyori.adventure.key.Key;
 import net.kyori.adventure.text.Component;
@@ -95,14 +99,19 @@ public final class Limbo {
 
 	private static Limbo instance;
 	public static boolean noGui = false;
+	public static boolean buildWorldSnapshot = false;
 	
 	public static void main(String args[]) throws IOException, ParseException, NumberFormatException, ClassNotFoundException, InterruptedException {
 		for (String flag : args) {
 			if (flag.equals("--nogui") || flag.equals("nogui")) {
 				noGui = true;
+			} else if (flag.equals("--build-world-snapshot")) {
+				buildWorldSnapshot = true;
+				noGui = true;
 			} else if (flag.equals("--help")) {
 				System.out.println("Accepted flags:");
 				System.out.println(" --nogui <- Disable the GUI");
+				System.out.println(" --build-world-snapshot <- Load the world from its schematic, save its snapshot and exit");
 				System.exit(0);
 			} else {
 				System.out.println("Unknown flag: \"" + flag + "\". Ignoring...");
@@ -158,6 +167,10 @@ public final class Limbo {
 	
 	private final Metrics metrics;
 	
+	private final StatusResponseCache statusResponseCache = new StatusResponseCache();
+	private final Gson serverListGson = new GsonBuilder().create();
+	private volatile Pair<BufferedImage, String> encodedFavicon;
+	
 	public final AtomicInteger entityIdCount = new AtomicInteger();
 	
 	@SuppressWarnings("deprecation")
@@ -199,6 +212,14 @@ public final class Limbo {
         }
 		
 		worlds.add(loadDefaultWorld());
+		if (buildWorldSnapshot) {
+			if (properties.getWorldSnapshotFileName().isEmpty()) {
+				console.sendMessage("World snapshots are disabled, set world-snapshot in server.properties to build one");
+				System.exit(1);
+			}
+			console.sendMessage("Built world snapshot " + properties.getWorldSnapshotFileName() + ", exiting");
+			System.exit(0);
+		}
 		Location spawn = properties.getWorldSpawn();
 		properties.setWorldSpawn(new Location(getWorld(properties.getLevelName().value()), spawn.getX(), spawn.getY(), spawn.getZ(), spawn.getYaw(), spawn.getPitch()));
 		
@@ -306,9 +327,38 @@ public final class Limbo {
 	        }
 		}
 		
+		String name = properties.getLevelName().value();
+		Environment environment = Environment.fromKey(properties.getLevelDimension());
+		File snapshot = properties.getWorldSnapshotFileName().isEmpty() ? null : new File(properties.getWorldSnapshotFileName());
+		
 		try {
-			World world = Schematic.toWorld(properties.getLevelName().value(), Environment.fromKey(properties.getLevelDimension()), (CompoundTag) NBTUtil.read(schem).getTag());
-			console.sendMessage("Loaded world " + properties.getLevelName() + "!");		
+			byte[] hash = snapshot == null ? null : WorldSnapshot.hash(schem);
+			if (snapshot != null && snapshot.exists() && !buildWorldSnapshot) {
+				try {
+					World world = WorldSnapshot.read(snapshot, hash, name, environment);
+					if (world != null) {
+						console.sendMessage("Loaded world " + properties.getLevelName() + " from the snapshot " + snapshot.getName() + "!");
+						return world;
+					}
+					console.sendMessage("World snapshot " + snapshot.getName() + " is outdated and will be rebuilt");
+				} catch (IOException e) {
+					console.sendMessage("Unable to read world snapshot " + snapshot.getName() + ", it will be rebuilt");
+					e.printStackTrace();
+				}
+			}
+			
+			World world = Schematic.toWorld(name, environment, (CompoundTag) NBTUtil.read(schem).getTag());
+			console.sendMessage("Loaded world " + properties.getLevelName() + "!");
+			
+			if (snapshot != null) {
+				try {
+					WorldSnapshot.write(world, hash, snapshot, properties.isWorldSnapshotChunkPackets());
+					console.sendMessage("Saved world snapshot " + snapshot.getName());
+				} catch (IOException e) {
+					console.sendMessage("Unable to save world snapshot " + snapshot.getName() + "!");
+					e.printStackTrace();
+				}
+			}
 			return world;
 		} catch (Throwable e) {
 			console.sendMessage("Unable to load world " + properties.getSchemFileName() + "!");
@@ -351,13 +401,7 @@ public final class Limbo {
 		keyedBossBar.getProperties().removeListener(keyedBossBar.getUnsafe().a());
 		keyedBossBar.getUnsafe().b();
 		PacketPlayOutBoss packetPlayOutBoss = new PacketPlayOutBoss(keyedBossBar, PacketPlayOutBoss.BossBarAction.REMOVE);
-		for (Player player : keyedBossBar.getPlayers()) {
-			try {
-				player.clientConnection.sendPacket(packetPlayOutBoss);
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-		}
+		PacketBroadcaster.broadcast(packetPlayOutBoss, keyedBossBar.getPlayers());
 	}
 
 	public Map<Key, KeyedBossBar> getBossBars() {
@@ -383,6 +427,14 @@ public final class Limbo {
 	public Set<Player> getPlayers() {
 		return new HashSet<>(playersByUUID.values());
 	}
+
+	public int getPlayerCount() {
+		return playersByUUID.size();
+	}
+
+	public StatusResponseCache getStatusResponseCache() {
+		return statusResponseCache;
+	}
 	
 	public Player getPlayer(String name) {
 		return playersByName.get(name);
@@ -423,8 +475,7 @@ public final class Limbo {
 		
 		if (favicon != null) {
 			if (favicon.getWidth() == 64 && favicon.getHeight() == 64) {
-				String base64 = "data:image/png;base64," + ImageUtils.imgToBase64String(favicon, "png");
-				json.put("favicon", base64);
+				json.put("favicon", encodeFavicon(favicon));
 			} else {
 				console.sendMessage("Server List Favicon must be 64 x 64 in size!");
 			}
@@ -439,9 +490,16 @@ public final class Limbo {
 		TreeMap<String, Object> treeMap = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
     	treeMap.putAll(json);
     	
-    	Gson g = new GsonBuilder().create();
+    	return serverListGson.toJson(treeMap).replace("\"%MOTD%\"", GsonComponentSerializer.gson().serialize(motd));
+	}
 
-    	return g.toJson(treeMap).replace("\"%MOTD%\"", GsonComponentSerializer.gson().serialize(motd));
+	private String encodeFavicon(BufferedImage favicon) throws IOException {
+		Pair<BufferedImage, String> encoded = encodedFavicon;
+		if (encoded == null || encoded.getFirst() != favicon) {
+			encoded = new Pair<>(favicon, "data:image/png;base64," + ImageUtils.imgToBase64String(favicon, "png"));
+			encodedFavicon = encoded;
+		}
+		return encoded.getSecond();
 	}
 	
 	public String buildLegacyPingResponse(String version, Component motd, int maxPlayers, int playersOnline) {
@@ -474,6 +532,7 @@ public final class Limbo {
 				e.printStackTrace();
 			}
 		}
+		server.close(5000);
 		
 		console.sendMessage("Server closed");
 		console.logs.close();
@@ -22,6 +22,9 @@ package com.loohp.limbo.commands;
 import com.loohp.limbo.Console;
 import com.loohp.limbo.Limbo;
 import com.loohp.limbo.player.Player;
+import com.loohp.limbo.scheduler.Tick;
+import com.loohp.limbo.scheduler.TickProfiler;
+import com.loohp.limbo.scheduler.TickStatistics;
 import com.loohp.limbo.utils.GameMode;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
@@ -48,6 +51,61 @@ public class DefaultCommands implements CommandExecutor, TabCompletor {
 			return;
 		}
 
+		if (args[0].equalsIgnoreCase("tps")) {
+			if (sender.hasPermission("limboserver.tps")) {
+				Tick tick = Limbo.getInstance().getHeartBeat();
+				TickStatistics statistics = tick.getStatistics();
+				StringBuilder tps = new StringBuilder();
+				for (TickStatistics.Window window : TickStatistics.Window.values()) {
+					tps.append(tps.length() == 0 ? "" : ", ").append(formatTps(statistics.getTps(window), statistics.getTargetTps()));
+				}
+				sender.sendMessage(ChatColor.GOLD + "TPS from last 1s, 1m, 5m: " + tps + ChatColor.GOLD + " (target " + statistics.getTargetTps() + ")");
+				String[] names = {"1s", "1m", "5m"};
+				for (TickStatistics.Window window : TickStatistics.Window.values()) {
+					double[] mspt = statistics.getMspt(window, 50, 95, 99);
+					sender.sendMessage(ChatColor.GOLD + "MSPT p50/p95/p99 (" + names[window.ordinal()] + "): " + ChatColor.GRAY + String.format("%.2f/%.2f/%.2f", mspt[0], mspt[1], mspt[2]));
+				}
+				if (tick.getSkippedTicks() > 0) {
+					sender.sendMessage(ChatColor.GOLD + "Skipped ticks: " + ChatColor.RED + tick.getSkippedTicks());
+				}
+			} else {
+				sender.sendMessage(ChatColor.RED + "You do not have permission to use that command!");
+			}
+			return;
+		}
+
+		if (args[0].equalsIgnoreCase("profiler")) {
+			if (sender.hasPermission("limboserver.profiler")) {
+				TickProfiler profiler = Limbo.getInstance().getHeartBeat().getProfiler();
+				String action = args.length > 1 ? args[1].toLowerCase() : (profiler.isEnabled() ? "stop" : "start");
+				if (action.equals("start")) {
+					profiler.start();
+					sender.sendMessage(ChatColor.GOLD + "Tick profiler started, use \"profiler stop\" to see the results");
+				} else if (action.equals("stop") || action.equals("report")) {
+					if (action.equals("stop")) {
+						profiler.stop();
+					}
+					int top = 10;
+					if (args.length > 2) {
+						try {
+							top = Integer.parseInt(args[2]);
+						} catch (NumberFormatException e) {
+							sender.sendMessage(ChatColor.RED + "Invalid usage!");
+							return;
+						}
+					}
+					for (String line : profiler.report(top)) {
+						sender.sendMessage(ChatColor.GRAY + line);
+					}
+				} else {
+					sender.sendMessage(ChatColor.RED + "Invalid usage!");
+				}
+			} else {
+				sender.sendMessage(ChatColor.RED + "You do not have permission to use that command!");
+			}
+			return;
+		}
+
 		if (args[0].equalsIgnoreCase("spawn")) {
 			if (sender.hasPermission("limboserver.spawn")) {
 				if (args.length == 1 && sender instanceof Player) {
@@ -202,6 +260,12 @@ public class DefaultCommands implements CommandExecutor, TabCompletor {
 			if (sender.hasPermission("limboserver.gamemode")) {
 				tab.add("gamemode");
 			}
+			if (sender.hasPermission("limboserver.tps")) {
+				tab.add("tps");
+			}
+			if (sender.hasPermission("limboserver.profiler")) {
+				tab.add("profiler");
+			}
 			break;
 		case 1:
 			if (sender.hasPermission("limboserver.spawn")) {
@@ -229,6 +293,16 @@ public class DefaultCommands implements CommandExecutor, TabCompletor {
 					tab.add("gamemode");
 				}
 			}
+			if (sender.hasPermission("limboserver.tps")) {
+				if ("tps".startsWith(args[0].toLowerCase())) {
+					tab.add("tps");
+				}
+			}
+			if (sender.hasPermission("limboserver.profiler")) {
+				if ("profiler".startsWith(args[0].toLowerCase())) {
+					tab.add("profiler");
+				}
+			}
 			break;
 		case 2:
 			if (sender.hasPermission("limboserver.kick")) {
@@ -249,6 +323,15 @@ public class DefaultCommands implements CommandExecutor, TabCompletor {
 					}
 				}
 			}
+			if (sender.hasPermission("limboserver.profiler")) {
+				if (args[0].equalsIgnoreCase("profiler")) {
+					for (String action : new String[] {"start", "stop", "report"}) {
+						if (action.startsWith(args[1].toLowerCase())) {
+							tab.add(action);
+						}
+					}
+				}
+			}
 			break;
 		case 3:
 			if (sender.hasPermission("limboserver.gamemode")) {
@@ -265,4 +348,9 @@ public class DefaultCommands implements CommandExecutor, TabCompletor {
 		return tab;
 	}
 
+	private static String formatTps(double tps, double target) {
+		ChatColor color = tps >= target * 0.9 ? ChatColor.GREEN : (tps >= target * 0.75 ? ChatColor.YELLOW : ChatColor.RED);
+		return color + String.format("%.2f", tps);
+	}
+
 }
@@ -19,7 +19,9 @@
 
 package com.loohp.limbo.events;
 
+import com.loohp.limbo.Limbo;
 import com.loohp.limbo.plugins.LimboPlugin;
+import com.loohp.limbo.scheduler.TickProfiler;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
@@ -39,21 +41,40 @@ public class EventsManager {
 	}
 	
 	public <T extends Event> T callEvent(T event) {
+		TickProfiler profiler = Limbo.getInstance().getHeartBeat().getProfiler();
 		for (EventPriority priority : EventPriority.getPrioritiesInOrder()) {
 			for (Entry<Listener, RegisteredCachedListener> entry : cachedListeners.entrySet()) {
 				for (Method method : entry.getValue().getListeners(event.getClass(), priority)) {
+					boolean profiling = profiler.isEnabled();
+					long start = profiling ? System.nanoTime() : 0;
 					try {
 						method.invoke(entry.getKey(), event);
 					} catch (Exception e) {
 						System.err.println("Error while passing " + event.getClass().getCanonicalName() + " to the plugin \"" + entry.getValue().getPlugin().getName() + "\"");
 						e.printStackTrace();
 					}
+					if (profiling) {
+						profiler.record(TickProfiler.Category.EVENT, entry.getValue().getPlugin().getName(), method.getDeclaringClass().getName() + "#" + method.getName() + "(" + event.getClass().getSimpleName() + ")", start);
+					}
 				}
 			}
 		}
 		return event;
 	}
 	
+	/**
+	 * Whether any registered listener handles the given event class, callers can skip
+	 * creating the event altogether when this is false.
+	 */
+	public boolean hasListeners(Class<? extends Event> eventClass) {
+		for (RegisteredCachedListener listener : cachedListeners.values()) {
+			if (listener.hasListeners(eventClass)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
 	public void registerEvents(LimboPlugin plugin, Listener listener) {
 		listeners.add(new ListenerPair(plugin, listener));
 		cachedListeners.put(listener, new RegisteredCachedListener(plugin, listener));
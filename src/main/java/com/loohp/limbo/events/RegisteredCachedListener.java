@@ -54,6 +54,10 @@ public class RegisteredCachedListener {
 		return plugin;
 	}
 	
+	public boolean hasListeners(Class<? extends Event> eventClass) {
+		return listeners.containsKey(eventClass);
+	}
+
 	public List<Method> getListeners(Class<? extends Event> eventClass, EventPriority priority) {
 		Map<EventPriority, List<Method>> mapping = listeners.get(eventClass);
 		if (mapping == null) {
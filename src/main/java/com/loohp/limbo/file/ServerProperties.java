@@ -23,6 +23,7 @@ import com.google.common.collect.Lists;
 import com.loohp.limbo.Console;
 import com.loohp.limbo.Limbo;
 import com.loohp.limbo.location.Location;
+import com.loohp.limbo.network.NetworkTransport;
 import com.loohp.limbo.utils.GameMode;
 import com.loohp.limbo.world.World;
 import net.kyori.adventure.key.Key;
@@ -60,6 +61,8 @@ public class ServerProperties {
 	private Key levelName;
 	private String schemFileName;
 	private Key levelDimension;
+	private String worldSnapshotFileName;
+	private boolean worldSnapshotChunkPackets;
 	private GameMode defaultGamemode;
 	private Location worldSpawn;
 	private boolean reducedDebugInfo;
@@ -75,7 +78,23 @@ public class ServerProperties {
 	private List<String> forwardingSecrets;
 	private int viewDistance;
 	private double ticksPerSecond;
+	private int maxCatchUpTicks;
+	private boolean parallelPlayerUpdates;
+	private int playerUpdateThreads;
+	private int asyncTaskThreads;
+	private boolean asyncTaskVirtualThreads;
 	private boolean handshakeVerbose;
+	private NetworkTransport networkTransport;
+	private int networkEventLoopThreads;
+	private int networkWorkerThreads;
+	private int networkCompressionThreshold;
+	private int networkCompressionLevel;
+	private int networkFlushThreshold;
+	private long networkFlushMaxDelay;
+	private long networkOutboundHighWaterMark;
+	private long networkOutboundLowWaterMark;
+	private long networkOutboundQueueLimit;
+	private long networkSlowClientTimeout;
 	private boolean enforceWhitelist;
 	private Map<UUID, String> whitelist;
 	
@@ -120,6 +139,8 @@ public class ServerProperties {
 		levelName = Key.key(level[0]);
 		schemFileName = level[1];
 		levelDimension = Key.key(prop.getProperty("level-dimension"));
+		worldSnapshotFileName = prop.getProperty("world-snapshot").trim();
+		worldSnapshotChunkPackets = Boolean.parseBoolean(prop.getProperty("world-snapshot-chunk-packets"));
 		defaultGamemode = GameMode.fromName(Key.key(prop.getProperty("default-gamemode")).value());
 		String[] locStr = prop.getProperty("world-spawn").split(";");
 		World world = Limbo.getInstance().getWorld(locStr[0]);
@@ -160,8 +181,53 @@ public class ServerProperties {
 
 		viewDistance = Integer.parseInt(prop.getProperty("view-distance"));
 		ticksPerSecond = Double.parseDouble(prop.getProperty("ticks-per-second"));
+		maxCatchUpTicks = Math.max(0, Integer.parseInt(prop.getProperty("max-catch-up-ticks")));
+		parallelPlayerUpdates = Boolean.parseBoolean(prop.getProperty("parallel-player-updates"));
+		playerUpdateThreads = Integer.parseInt(prop.getProperty("player-update-threads"));
+		if (playerUpdateThreads <= 0) {
+			playerUpdateThreads = Runtime.getRuntime().availableProcessors();
+		}
+		asyncTaskThreads = Integer.parseInt(prop.getProperty("async-task-threads"));
+		if (asyncTaskThreads <= 0) {
+			asyncTaskThreads = Runtime.getRuntime().availableProcessors();
+		}
+		asyncTaskVirtualThreads = Boolean.parseBoolean(prop.getProperty("async-task-virtual-threads"));
 		handshakeVerbose = Boolean.parseBoolean(prop.getProperty("handshake-verbose"));
 
+		networkTransport = NetworkTransport.fromName(prop.getProperty("network-transport"));
+		if (networkTransport == null) {
+			Limbo.getInstance().getConsole().sendMessage("Unknown network-transport \"" + prop.getProperty("network-transport") + "\", falling back to " + NetworkTransport.THREAD.getName());
+			networkTransport = NetworkTransport.THREAD;
+		}
+		networkEventLoopThreads = Integer.parseInt(prop.getProperty("network-event-loop-threads"));
+		if (networkEventLoopThreads <= 0) {
+			networkEventLoopThreads = Runtime.getRuntime().availableProcessors();
+		}
+		networkWorkerThreads = Integer.parseInt(prop.getProperty("network-worker-threads"));
+		if (networkWorkerThreads <= 0) {
+			networkWorkerThreads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+		}
+		networkCompressionThreshold = Math.max(-1, Integer.parseInt(prop.getProperty("network-compression-threshold")));
+		networkCompressionLevel = Integer.parseInt(prop.getProperty("network-compression-level"));
+		if (networkCompressionLevel < -1 || networkCompressionLevel > 9) {
+			Limbo.getInstance().getConsole().sendMessage("network-compression-level must be between -1 and 9, using the default compression level");
+			networkCompressionLevel = -1;
+		}
+		networkFlushThreshold = Integer.parseInt(prop.getProperty("network-flush-threshold"));
+		networkFlushMaxDelay = Math.max(1, Long.parseLong(prop.getProperty("network-flush-max-delay")));
+		networkOutboundHighWaterMark = Math.max(1, Long.parseLong(prop.getProperty("network-outbound-high-water-mark")));
+		networkOutboundLowWaterMark = Long.parseLong(prop.getProperty("network-outbound-low-water-mark"));
+		if (networkOutboundLowWaterMark < 0 || networkOutboundLowWaterMark > networkOutboundHighWaterMark) {
+			Limbo.getInstance().getConsole().sendMessage("network-outbound-low-water-mark must be between 0 and network-outbound-high-water-mark, using a quarter of the high water mark");
+			networkOutboundLowWaterMark = networkOutboundHighWaterMark / 4;
+		}
+		networkOutboundQueueLimit = Long.parseLong(prop.getProperty("network-outbound-queue-limit"));
+		if (networkOutboundQueueLimit < networkOutboundHighWaterMark) {
+			Limbo.getInstance().getConsole().sendMessage("network-outbound-queue-limit must not be lower than network-outbound-high-water-mark, using four times the high water mark");
+			networkOutboundQueueLimit = networkOutboundHighWaterMark * 4;
+		}
+		networkSlowClientTimeout = Math.max(0, Long.parseLong(prop.getProperty("network-slow-client-timeout")));
+
 		resourcePackLink = prop.getProperty("resource-pack");
 		resourcePackSHA1 = prop.getProperty("resource-pack-sha1");
 		resourcePackRequired = Boolean.parseBoolean(prop.getProperty("required-resource-pack"));
@@ -302,6 +368,17 @@ public class ServerProperties {
 		return levelDimension;
 	}
 
+	/**
+	 * The file the default world is snapshotted to, or an empty string if snapshots are disabled.
+	 */
+	public String getWorldSnapshotFileName() {
+		return worldSnapshotFileName;
+	}
+
+	public boolean isWorldSnapshotChunkPackets() {
+		return worldSnapshotChunkPackets;
+	}
+
 	public GameMode getDefaultGamemode() {
 		return defaultGamemode;
 	}
@@ -350,10 +427,74 @@ public class ServerProperties {
 		return ticksPerSecond;
 	}
 
+	public int getMaxCatchUpTicks() {
+		return maxCatchUpTicks;
+	}
+
+	public boolean isParallelPlayerUpdates() {
+		return parallelPlayerUpdates;
+	}
+
+	public int getPlayerUpdateThreads() {
+		return playerUpdateThreads;
+	}
+
+	public int getAsyncTaskThreads() {
+		return asyncTaskThreads;
+	}
+
+	public boolean isAsyncTaskVirtualThreads() {
+		return asyncTaskVirtualThreads;
+	}
+
 	public boolean handshakeVerboseEnabled() {
 		return handshakeVerbose;
 	}
 
+	public NetworkTransport getNetworkTransport() {
+		return networkTransport;
+	}
+
+	public int getNetworkEventLoopThreads() {
+		return networkEventLoopThreads;
+	}
+
+	public int getNetworkWorkerThreads() {
+		return networkWorkerThreads;
+	}
+
+	public int getNetworkCompressionThreshold() {
+		return networkCompressionThreshold;
+	}
+
+	public int getNetworkCompressionLevel() {
+		return networkCompressionLevel;
+	}
+
+	public int getNetworkFlushThreshold() {
+		return networkFlushThreshold;
+	}
+
+	public long getNetworkFlushMaxDelay() {
+		return networkFlushMaxDelay;
+	}
+
+	public long getNetworkOutboundHighWaterMark() {
+		return networkOutboundHighWaterMark;
+	}
+
+	public long getNetworkOutboundLowWaterMark() {
+		return networkOutboundLowWaterMark;
+	}
+
+	public long getNetworkOutboundQueueLimit() {
+		return networkOutboundQueueLimit;
+	}
+
+	public long getNetworkSlowClientTimeout() {
+		return networkSlowClientTimeout;
+	}
+
 	public boolean enforceWhitelist() {
 		return enforceWhitelist;
 	}
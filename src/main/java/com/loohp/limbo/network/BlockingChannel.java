@@ -0,0 +1,181 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.network;
+
+import com.loohp.limbo.network.protocol.packets.PacketIn;
+import com.loohp.limbo.utils.DataTypeIO;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A channel over the streams of a socket, packets are pulled from the input by the connection thread.
+ */
+public class BlockingChannel extends Channel {
+
+    private static final long CLOSE_TIMEOUT = 5000;
+
+    private final DataInputStream input;
+    private final DataOutputStream output;
+    private final BlockingWriterPool writerPool;
+    private final AtomicBoolean writeScheduled;
+    private volatile boolean closing;
+
+    public BlockingChannel(ClientConnection client, DataInputStream input, DataOutputStream output) {
+        this(client, input, output, BlockingWriterPool.getDefault());
+    }
+
+    /**
+     * Creates a channel for a blocking connection, queued frames are written to the output by the given writer pool.
+     */
+    public BlockingChannel(ClientConnection client, DataInputStream input, DataOutputStream output, BlockingWriterPool writerPool) {
+        super(client);
+        this.input = input;
+        this.output = output;
+        this.writerPool = writerPool;
+        this.writeScheduled = new AtomicBoolean(false);
+        this.closing = false;
+    }
+
+    public DataInputStream getInput() {
+        return input;
+    }
+
+    public PacketIn readPacket() throws Exception {
+        return readPacket(-1);
+    }
+
+    public PacketIn readPacket(int size) throws IOException {
+        PacketIn packet = null;
+        do {
+            ensureOpen();
+            size = size < 0 ? DataTypeIO.readVarInt(input) : size;
+            if (getCompression() == null) {
+                int packetId = DataTypeIO.readVarInt(input);
+                packet = handleRead(size, packetId, input);
+            } else {
+                if (size > NioChannel.MAX_FRAME_LENGTH) {
+                    throw new IOException("Packet of " + size + " bytes is larger than the maximum of " + NioChannel.MAX_FRAME_LENGTH);
+                }
+                byte[] frame = new byte[size];
+                input.readFully(frame);
+                packet = decodeFrame(frame);
+            }
+            size = -1;
+        } while (packet == null);
+        return packet;
+    }
+
+    @Override
+    protected void flushTransport() {
+        scheduleWrite();
+    }
+
+    private void scheduleWrite() {
+        if (!writeScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            writerPool.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            discardOutbound();
+            abortTransport();
+            closeStreams();
+        }
+    }
+
+    /**
+     * Runs on the writer pool, at most one drain of a channel is scheduled at a time.
+     */
+    private void drain() {
+        writerPool.writeStarted(this);
+        try {
+            writeOutbound();
+        } catch (IOException e) {
+            discardOutbound();
+            closeStreams();
+            return;
+        } finally {
+            writerPool.writeFinished(this);
+        }
+        writeScheduled.set(false);
+        if (hasOutbound()) {
+            scheduleWrite();
+        } else if (closing) {
+            closeStreams();
+        }
+    }
+
+    private void writeOutbound() throws IOException {
+        OutboundQueue.Frame frame;
+        while ((frame = pollOutbound()) != null) {
+            try {
+                ByteBuffer prefix = frame.getPrefix();
+                if (prefix != null) {
+                    output.write(prefix.array(), prefix.arrayOffset() + prefix.position(), prefix.remaining());
+                }
+                ByteBuffer body = frame.getBody();
+                output.write(body.array(), body.arrayOffset() + body.position(), body.remaining());
+            } finally {
+                frame.release();
+            }
+            outboundWritten(frame.length());
+        }
+        output.flush();
+    }
+
+    /**
+     * Writes out whatever is still queued and then closes the streams. This happens asynchronously on the writer
+     * pool, the socket is closed forcibly if the client does not take the remaining data in time.
+     */
+    @Override
+    protected void closeTransport() {
+        closing = true;
+        scheduleWrite();
+        try {
+            getFlushTimer().schedule(this::abortTransport, CLOSE_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            abortTransport();
+        }
+    }
+
+    @Override
+    protected void abortTransport() {
+        closing = true;
+        try {
+            getClient().getSocket().close();
+        } catch (IOException ignore) {
+        }
+    }
+
+    private void closeStreams() {
+        try {
+            input.close();
+            output.close();
+        } catch (Exception ignore) {
+        }
+    }
+
+}
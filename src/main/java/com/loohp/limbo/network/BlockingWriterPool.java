@@ -0,0 +1,113 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.network;
+
+import com.loohp.limbo.Limbo;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the outbound queues of blocking channels to their sockets. Senders only queue frames and signal the
+ * channel, so no game or plugin thread ever waits on a socket. Threads are only held while a write is in progress,
+ * a write that stays blocked for longer than the slow client timeout gets its connection evicted, which closes the
+ * socket and frees the thread.
+ */
+public class BlockingWriterPool {
+
+    private static final long KEEP_ALIVE = 60000;
+    private static final long WATCHDOG_INTERVAL = 1000;
+
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService watchdog;
+    private final Map<BlockingChannel, Long> writing;
+    private final long stallTimeout;
+
+    public BlockingWriterPool(ThreadFactory threadFactory, long stallTimeout) {
+        this.executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, KEEP_ALIVE, TimeUnit.MILLISECONDS, new SynchronousQueue<>(), threadFactory);
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Limbo-WriterWatchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.writing = new ConcurrentHashMap<>();
+        this.stallTimeout = stallTimeout;
+        this.watchdog.scheduleWithFixedDelay(this::evictStalled, WATCHDOG_INTERVAL, WATCHDOG_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gets the pool used by connections that were not given one, its threads are daemon platform threads.
+     */
+    public static BlockingWriterPool getDefault() {
+        return DefaultPool.INSTANCE;
+    }
+
+    public int getActiveWriters() {
+        return writing.size();
+    }
+
+    void execute(Runnable task) throws RejectedExecutionException {
+        executor.execute(task);
+    }
+
+    void writeStarted(BlockingChannel channel) {
+        writing.put(channel, System.currentTimeMillis());
+    }
+
+    void writeFinished(BlockingChannel channel) {
+        writing.remove(channel);
+    }
+
+    private void evictStalled() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<BlockingChannel, Long> entry : writing.entrySet()) {
+            if (now - entry.getValue() > stallTimeout) {
+                entry.getKey().evict("socket write was blocked for more than " + stallTimeout + "ms");
+            }
+        }
+    }
+
+    public void shutdown() {
+        watchdog.shutdown();
+        executor.shutdown();
+    }
+
+    private static class DefaultPool {
+
+        private static final BlockingWriterPool INSTANCE = new BlockingWriterPool(daemon(ConnectionThreads.newThreadFactory("Limbo-Writer-", false)), Limbo.getInstance().getServerProperties().getNetworkSlowClientTimeout());
+
+    }
+
+    static ThreadFactory daemon(ThreadFactory threadFactory) {
+        return runnable -> {
+            Thread thread = threadFactory.newThread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+}
@@ -19,36 +19,100 @@
 
 package com.loohp.limbo.network;
 
+import com.loohp.limbo.Limbo;
+import com.loohp.limbo.file.ServerProperties;
 import com.loohp.limbo.network.protocol.packets.PacketIn;
 import com.loohp.limbo.network.protocol.packets.PacketOut;
 import com.loohp.limbo.utils.DataTypeIO;
 import com.loohp.limbo.utils.Pair;
 import net.kyori.adventure.key.Key;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class Channel implements AutoCloseable {
+/**
+ * The packet pipeline of a connection: packet handlers, compression and the bounded outbound queue. How frames reach
+ * the socket is up to the transport, see {@link BlockingChannel} and {@link NioChannel}.
+ */
+public abstract class Channel implements AutoCloseable {
 
     private final ClientConnection client;
     private final List<Pair<Key, ChannelPacketHandler>> handlers;
     private final AtomicBoolean valid;
-    protected final DataInputStream input;
-    protected final DataOutputStream output;
+    private volatile PacketCompression compression;
+
+    private final AtomicInteger bufferedBytes;
+    private final AtomicBoolean flushScheduled;
+    private final int flushThreshold;
+    private final long flushMaxDelay;
+
+    private final OutboundQueue outbound;
+    private final AtomicBoolean outboundClosed;
+    private final AtomicBoolean evicted;
+    private final long slowClientTimeout;
 
-    public Channel(ClientConnection client, DataInputStream input, DataOutputStream output) {
+    protected Channel(ClientConnection client) {
         this.client = client;
-        this.input = input;
-        this.output = output;
         this.handlers = new CopyOnWriteArrayList<>();
         this.valid = new AtomicBoolean(true);
+        this.bufferedBytes = new AtomicInteger(0);
+        this.flushScheduled = new AtomicBoolean(false);
+        ServerProperties properties = Limbo.getInstance().getServerProperties();
+        this.flushThreshold = properties.getNetworkFlushThreshold();
+        this.flushMaxDelay = properties.getNetworkFlushMaxDelay();
+        this.outbound = new OutboundQueue(properties.getNetworkOutboundHighWaterMark(), properties.getNetworkOutboundLowWaterMark(), properties.getNetworkOutboundQueueLimit());
+        this.outboundClosed = new AtomicBoolean(false);
+        this.evicted = new AtomicBoolean(false);
+        this.slowClientTimeout = properties.getNetworkSlowClientTimeout();
+    }
+
+    public ClientConnection getClient() {
+        return client;
+    }
+
+    public boolean isValid() {
+        return valid.get();
+    }
+
+    /**
+     * Whether the outbound queue is below its high water mark, senders of optional data should hold off while
+     * this is false.
+     */
+    public boolean isWritable() {
+        return outbound.isWritable();
+    }
+
+    public long getQueuedBytes() {
+        return outbound.getQueuedBytes();
     }
 
-    private void ensureOpen() {
+    public int getQueuedFrames() {
+        return outbound.getQueuedFrames();
+    }
+
+    public PacketCompression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Switches this channel to the compressed packet format, this must happen right after
+     * {@code minecraft:login_compression} has been written.
+     */
+    public void setCompression(int threshold, int level) {
+        this.compression = threshold < 0 ? null : new PacketCompression(threshold, level);
+    }
+
+    protected final void ensureOpen() {
         if (!valid.get()) {
             close();
         }
@@ -66,31 +130,38 @@ public class Channel implements AutoCloseable {
         handlers.removeIf(each -> each.getFirst().equals(key));
     }
 
-    protected PacketIn readPacket() throws Exception {
-        return readPacket(-1);
+    protected PacketIn decodeFrame(byte[] frame) throws IOException {
+        PacketCompression compression = this.compression;
+        if (compression != null) {
+            frame = compression.decompress(frame);
+        }
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(frame));
+        int packetId = DataTypeIO.readVarInt(input);
+        return handleRead(frame.length, packetId, input);
     }
 
-    protected PacketIn readPacket(int size) throws IOException {
+    protected PacketIn handleRead(int size, int packetId, DataInputStream input) {
         PacketIn packet = null;
-        do {
-            ensureOpen();
-            size = size < 0 ? DataTypeIO.readVarInt(input) : size;
-            int packetId = DataTypeIO.readVarInt(input);
-            ChannelPacketRead read = new ChannelPacketRead(size, packetId, input);
-            for (Pair<Key, ChannelPacketHandler> pair : handlers) {
-                read = pair.getSecond().read(read);
-                if (read == null) {
-                    packet = null;
-                    break;
-                }
-                packet = read.getReadPacket();
+        ChannelPacketRead read = new ChannelPacketRead(size, packetId, input);
+        for (Pair<Key, ChannelPacketHandler> pair : handlers) {
+            read = pair.getSecond().read(read);
+            if (read == null) {
+                return null;
             }
-            size = -1;
-        } while (packet == null);
+            packet = read.getReadPacket();
+        }
         return packet;
     }
 
     protected boolean writePacket(PacketOut packet) throws IOException {
+        return writePacket(packet, null);
+    }
+
+    protected boolean writePacket(PreparedPacket preparedPacket) throws IOException {
+        return writePacket(preparedPacket.getPacket(), preparedPacket);
+    }
+
+    private boolean writePacket(PacketOut packet, PreparedPacket preparedPacket) throws IOException {
         if (client.getClientState() == ClientConnection.ClientState.DISCONNECTED) {
             return false;
         }
@@ -105,27 +176,220 @@ public class Channel implements AutoCloseable {
                 return false;
             }
         }
+        if (preparedPacket != null && write.getPacket() == preparedPacket.getPacket()) {
+            writeFrame(preparedPacket.getFrame(compression));
+            return true;
+        }
         packet = write.getPacket();
-        byte[] packetByte = packet.serializePacket();
-        writePacketRaw(packetByte);
+        PacketBuffer buffer = PacketBuffer.acquire(packet.getSizeHint());
+        byte[] compressed;
+        try {
+            packet.serializePacket(buffer);
+            PacketCompression compression = this.compression;
+            if (compression == null) {
+                compressed = null;
+            } else {
+                compressed = compression.compress(buffer.array(), PacketBuffer.HEADROOM, buffer.size());
+            }
+        } catch (IOException | RuntimeException e) {
+            buffer.release();
+            throw e;
+        }
+        if (compressed == null) {
+            writeFrame(buffer);
+        } else {
+            buffer.release();
+            writeFrame(compressed);
+        }
         return true;
     }
 
     public void writePacketRaw(byte[] packetByte) throws IOException {
-        DataTypeIO.writeVarInt(output, packetByte.length);
-        output.write(packetByte);
-        output.flush();
+        PacketCompression compression = this.compression;
+        writeFrame(compression == null ? packetByte : compression.compress(packetByte));
+    }
+
+    /**
+     * Queues a frame behind a separate length prefix, the frame itself is not copied so it may be shared
+     * between connections but must not be modified afterwards.
+     */
+    protected void writeFrame(byte[] frame) throws IOException {
+        ByteBuffer prefix = ByteBuffer.allocate(DataTypeIO.getVarIntLength(frame.length));
+        writeVarInt(prefix, frame.length);
+        prefix.flip();
+        enqueue(new OutboundQueue.Frame(prefix, ByteBuffer.wrap(frame), null));
+        frameBuffered(frame.length);
+    }
+
+    /**
+     * Queues a serialized packet as an uncompressed frame, the length is prepended into the headroom of the buffer.
+     * The queue takes over the buffer and releases it once the frame has been written or discarded.
+     */
+    protected void writeFrame(PacketBuffer buffer) throws IOException {
+        int start = buffer.prependLength();
+        int size = buffer.size();
+        enqueue(new OutboundQueue.Frame(null, ByteBuffer.wrap(buffer.array(), start, PacketBuffer.HEADROOM + size - start), buffer));
+        frameBuffered(size);
+    }
+
+    public void writeBytesRaw(byte[] bytes) throws IOException {
+        enqueue(new OutboundQueue.Frame(ByteBuffer.wrap(bytes)));
+        flush();
+    }
+
+    /**
+     * Adds a frame to the outbound queue. A connection that would go over the queue limit is evicted,
+     * as is one that has stayed above the high water mark for longer than the slow client timeout.
+     */
+    protected final void enqueue(OutboundQueue.Frame frame) throws IOException {
+        if (outboundClosed.get()) {
+            frame.release();
+            throw new IOException("Channel is closed");
+        }
+        if (!outbound.offer(frame)) {
+            frame.release();
+            NetworkMetrics.framesDropped(1);
+            evict("outbound queue went over " + outbound.getLimit() + " bytes");
+            throw new IOException("Outbound queue is full");
+        }
+        checkSlowClient();
+    }
+
+    protected final OutboundQueue.Frame pollOutbound() {
+        return outbound.poll();
+    }
+
+    protected final boolean hasOutbound() {
+        return !outbound.isEmpty();
+    }
+
+    /**
+     * Accounts for bytes of frames taken with {@link #pollOutbound()} that were written to the socket.
+     */
+    protected final void outboundWritten(int length) {
+        outbound.written(length);
+    }
+
+    /**
+     * Rejects further frames and discards the ones that are still queued.
+     */
+    protected final void discardOutbound() {
+        outboundClosed.set(true);
+        int discarded = outbound.clear();
+        if (discarded > 0) {
+            NetworkMetrics.framesDropped(discarded);
+        }
+    }
+
+    private static void writeVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private void checkSlowClient() {
+        if (outbound.isWritable()) {
+            return;
+        }
+        long since = outbound.getUnwritableSince();
+        if (since >= 0 && System.currentTimeMillis() - since > slowClientTimeout) {
+            evict("outbound queue stayed above the high water mark for more than " + slowClientTimeout + "ms");
+        }
+    }
+
+    protected final void evict(String reason) {
+        if (!evicted.compareAndSet(false, true)) {
+            return;
+        }
+        NetworkMetrics.clientEvicted();
+        Limbo.getInstance().getConsole().sendMessage("[/" + client.getInetAddress().getHostAddress() + "] Disconnecting slow client, " + reason);
+        valid.set(false);
+        discardOutbound();
+        abortTransport();
+    }
+
+    /**
+     * Accounts for a frame that was buffered but not written to the socket yet. The buffer is written out
+     * once it reaches the flush threshold, otherwise a flush is scheduled after the maximum flush delay.
+     */
+    protected final void frameBuffered(int length) throws IOException {
+        if (bufferedBytes.addAndGet(length) >= flushThreshold) {
+            flush();
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                getFlushTimer().schedule(this::delayedFlush, flushMaxDelay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                flushScheduled.set(false);
+                flush();
+            }
+        }
+    }
+
+    private void delayedFlush() {
+        flushScheduled.set(false);
+        if (bufferedBytes.get() > 0) {
+            try {
+                flush();
+            } catch (IOException e) {
+                close();
+            }
+        }
+    }
+
+    public boolean hasBufferedData() {
+        return bufferedBytes.get() > 0;
+    }
+
+    /**
+     * Writes out everything buffered on this channel.
+     */
+    public void flush() throws IOException {
+        if (!valid.get()) {
+            return;
+        }
+        bufferedBytes.set(0);
+        checkSlowClient();
+        flushTransport();
+    }
+
+    /**
+     * Gets everything in the outbound queue written to the socket, without blocking the calling thread on it.
+     */
+    protected abstract void flushTransport() throws IOException;
+
+    protected ScheduledExecutorService getFlushTimer() {
+        return FlushTimer.INSTANCE;
     }
 
     @Override
     public synchronized void close() {
         if (valid.compareAndSet(true, false)) {
-            try {
-                input.close();
-                output.close();
-            } catch (Exception ignore) {
-            }
+            outboundClosed.set(true);
+            closeTransport();
         }
     }
 
+    /**
+     * Writes out whatever is still queued and then closes the connection, forcibly if the client does not take the
+     * remaining data in time.
+     */
+    protected abstract void closeTransport();
+
+    /**
+     * Closes the connection right away without writing out what is still queued.
+     */
+    protected abstract void abortTransport();
+
+    private static class FlushTimer {
+
+        private static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Limbo-FlushTimer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    }
+
 }
@@ -50,6 +50,7 @@ import com.loohp.limbo.network.protocol.packets.PacketLoginInPluginMessaging;
 import com.loohp.limbo.network.protocol.packets.PacketLoginOutDisconnect;
 import com.loohp.limbo.network.protocol.packets.PacketLoginOutLoginSuccess;
 import com.loohp.limbo.network.protocol.packets.PacketLoginOutPluginMessaging;
+import com.loohp.limbo.network.protocol.packets.PacketLoginOutSetCompression;
 import com.loohp.limbo.network.protocol.packets.PacketOut;
 import com.loohp.limbo.network.protocol.packets.PacketPlayInBlockDig;
 import com.loohp.limbo.network.protocol.packets.PacketPlayInBlockPlace;
@@ -91,17 +92,17 @@ import com.loohp.limbo.network.protocol.packets.PacketPlayOutUpdateViewPosition;
 import com.loohp.limbo.network.protocol.packets.PacketStatusInPing;
 import com.loohp.limbo.network.protocol.packets.PacketStatusInRequest;
 import com.loohp.limbo.network.protocol.packets.PacketStatusOutPong;
-import com.loohp.limbo.network.protocol.packets.PacketStatusOutResponse;
 import com.loohp.limbo.network.protocol.packets.ServerboundChatCommandPacket;
 import com.loohp.limbo.network.protocol.packets.ServerboundFinishConfigurationPacket;
 import com.loohp.limbo.network.protocol.packets.ServerboundLoginAcknowledgedPacket;
 import com.loohp.limbo.player.Player;
 import com.loohp.limbo.player.PlayerInteractManager;
 import com.loohp.limbo.player.PlayerInventory;
+import com.loohp.limbo.registry.PacketDecoder;
 import com.loohp.limbo.registry.PacketRegistry;
 import com.loohp.limbo.registry.RegistryCustom;
 import com.loohp.limbo.utils.BungeecordAdventureConversionUtils;
-import com.loohp.limbo.utils.CheckedBiConsumer;
+import com.loohp.limbo.utils.CheckedRunnable;
 import com.loohp.limbo.utils.CustomStringUtils;
 import com.loohp.limbo.utils.DataTypeIO;
 import com.loohp.limbo.utils.DeclareCommands;
@@ -125,6 +126,7 @@ import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
 import java.io.DataInputStream;
@@ -132,12 +134,11 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.lang.reflect.Constructor;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
@@ -147,38 +148,89 @@ import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
-public class ClientConnection extends Thread {
+public class ClientConnection implements Runnable {
 
     private static final Key DEFAULT_HANDLER_NAMESPACE = Key.key("default");
     private static final String BRAND_ANNOUNCE_CHANNEL = Key.key("brand").toString();
+    private static final Timer KEEP_ALIVE_TIMER = new Timer("Limbo-KeepAlive", true);
+    private static final ExecutorService SKIN_LOOKUP_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger counter = new AtomicInteger(0);
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Limbo-SkinLookup-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
 
     private final Random random = new Random();
     private final Socket clientSocket;
+    private final SerialExecutor executor;
+    private final BlockingWriterPool writerPool;
+    private final ReentrantLock sendLock;
     protected Channel channel;
-    private boolean running;
+    private volatile boolean running;
     private volatile ClientState state;
+    private final AtomicBoolean finished;
 
     private Player player;
     private TimerTask keepAliveTask;
     private AtomicLong lastPacketTimestamp;
     private AtomicLong lastKeepAlivePayLoad;
     private InetAddress inetAddress;
-    private boolean ready;
+    private volatile boolean ready;
+
+    private UUID bungeeUUID;
+    private SkinResponse forwardedSkin;
+    private int messageId;
 
     public ClientConnection(Socket clientSocket) {
+        this(clientSocket, BlockingWriterPool.getDefault());
+    }
+
+    /**
+     * @param writerPool writes the queued packets of this connection to the socket
+     */
+    public ClientConnection(Socket clientSocket, BlockingWriterPool writerPool) {
         this.clientSocket = clientSocket;
+        this.executor = null;
+        this.writerPool = writerPool;
         this.inetAddress = clientSocket.getInetAddress();
         this.lastPacketTimestamp = new AtomicLong(-1);
         this.lastKeepAlivePayLoad = new AtomicLong(-1);
+        this.finished = new AtomicBoolean(false);
+        this.sendLock = new ReentrantLock();
         this.channel = null;
         this.running = false;
         this.ready = false;
     }
 
+    ClientConnection(SocketChannel socketChannel, EventLoop eventLoop, EventLoopGroup eventLoopGroup) {
+        this.clientSocket = socketChannel.socket();
+        this.executor = new SerialExecutor(eventLoopGroup.getWorkerExecutor(), eventLoopGroup.getTimer());
+        this.writerPool = null;
+        this.inetAddress = clientSocket.getInetAddress();
+        this.lastPacketTimestamp = new AtomicLong(-1);
+        this.lastKeepAlivePayLoad = new AtomicLong(-1);
+        this.finished = new AtomicBoolean(false);
+        this.sendLock = new ReentrantLock();
+        this.running = true;
+        this.ready = false;
+        this.state = ClientState.HANDSHAKE;
+        setChannel(new NioChannel(this, socketChannel, eventLoop, eventLoopGroup.getTimer()));
+    }
+
     public InetAddress getInetAddress() {
         return inetAddress;
     }
@@ -232,9 +284,48 @@ public class ClientConnection extends Thread {
         sendPacket(packet);
     }
 
-    public synchronized void sendPacket(PacketOut packet) throws IOException {
-        if (channel.writePacket(packet)) {
-            setLastPacketTimestamp(System.currentTimeMillis());
+    /**
+     * Queues the packet on this connection, it is written out with the next flush.
+     */
+    public void sendPacket(PacketOut packet) throws IOException {
+        sendPacket(packet, false);
+    }
+
+    /**
+     * Queues the packet on this connection, and if flush is true writes it out right away
+     * together with everything queued before it.
+     */
+    public void sendPacket(PacketOut packet, boolean flush) throws IOException {
+        sendLock.lock();
+        try {
+            if (channel.writePacket(packet)) {
+                setLastPacketTimestamp(System.currentTimeMillis());
+            }
+            if (flush) {
+                channel.flush();
+            }
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    /**
+     * Queues an already prepared packet, which is only serialized once across all connections it is sent to.
+     */
+    public void sendPacket(PreparedPacket packet) throws IOException {
+        sendLock.lock();
+        try {
+            if (channel.writePacket(packet)) {
+                setLastPacketTimestamp(System.currentTimeMillis());
+            }
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    public void flush() throws IOException {
+        if (channel != null) {
+            channel.flush();
         }
     }
 
@@ -245,13 +336,10 @@ public class ClientConnection extends Thread {
     public void disconnect(Component reason) {
         try {
             PacketPlayOutDisconnect packet = new PacketPlayOutDisconnect(reason);
-            sendPacket(packet);
-        } catch (IOException ignored) {
-        }
-        try {
-            clientSocket.close();
+            sendPacket(packet, true);
         } catch (IOException ignored) {
         }
+        channel.close();
     }
 
     private void disconnectDuringLogin(BaseComponent[] reason) {
@@ -266,17 +354,14 @@ public class ClientConnection extends Thread {
         }
         try {
             PacketLoginOutDisconnect packet = new PacketLoginOutDisconnect(reason);
-            sendPacket(packet);
-        } catch (IOException ignored) {
-        }
-        try {
-            clientSocket.close();
+            sendPacket(packet, true);
         } catch (IOException ignored) {
         }
+        channel.close();
     }
 
-    private void setChannel(DataInputStream input, DataOutputStream output) {
-        this.channel = new Channel(this, input, output);
+    private void setChannel(Channel channel) {
+        this.channel = channel;
 
         this.channel.addHandlerBefore(DEFAULT_HANDLER_NAMESPACE, new ChannelPacketHandler() {
             @Override
@@ -288,22 +373,12 @@ public class ClientConnection extends Thread {
                     DataInput input = read.getDataInput();
                     int size = read.getSize();
                     int packetId = read.getPacketId();
-                    Class<? extends PacketIn> packetType = PacketRegistry.getPacketClass(packetId, PacketRegistry.NetworkPhase.fromClientState(state), PacketRegistry.PacketBound.SERVERBOUND);
-                    if (packetType == null) {
+                    PacketDecoder decoder = PacketRegistry.getPacketDecoder(packetId, PacketRegistry.NetworkPhase.fromClientState(state), PacketRegistry.PacketBound.SERVERBOUND);
+                    if (decoder == null) {
                         input.skipBytes(size - DataTypeIO.getVarIntLength(packetId));
                         return null;
                     }
-                    Constructor<?>[] constructors = packetType.getConstructors();
-                    Constructor<?> constructor = Arrays.stream(constructors).filter(each -> each.getParameterCount() > 0 && each.getParameterTypes()[0].equals(DataInputStream.class)).findFirst().orElse(null);
-                    if (constructor == null) {
-                        throw new NoSuchMethodException(packetType + " has no valid constructors!");
-                    } else if (constructor.getParameterCount() == 1) {
-                        read.setPacket((PacketIn) constructor.newInstance(input));
-                    } else if (constructor.getParameterCount() == 3) {
-                        read.setPacket((PacketIn) constructor.newInstance(input, size, packetId));
-                    } else {
-                        throw new NoSuchMethodException(packetType + " has no valid constructors!");
-                    }
+                    read.setPacket(decoder.decode((DataInputStream) input, size, packetId));
                     return super.read(read);
                 } catch (Exception e) {
                     throw new RuntimeException("Unable to read packet", e);
@@ -312,555 +387,694 @@ public class ClientConnection extends Thread {
         });
     }
 
-    @SuppressWarnings("deprecation")
+    void execute(Runnable task) {
+        if (executor == null) {
+            task.run();
+        } else {
+            executor.execute(task);
+        }
+    }
+
+    private void runLater(long delayMillis, CheckedRunnable<Exception> task) throws Exception {
+        if (executor == null) {
+            TimeUnit.MILLISECONDS.sleep(delayMillis);
+            task.run();
+            channel.flush();
+        } else {
+            executor.executeLater(delayMillis, () -> {
+                try {
+                    task.run();
+                    channel.flush();
+                } catch (Exception e) {
+                    channel.close();
+                }
+            });
+        }
+    }
+
     @Override
     public void run() {
         running = true;
         state = ClientState.HANDSHAKE;
         try {
             clientSocket.setKeepAlive(true);
-            setChannel(new DataInputStream(clientSocket.getInputStream()), new DataOutputStream(clientSocket.getOutputStream()));
-            int handShakeSize = DataTypeIO.readVarInt(channel.input);
+            BlockingChannel channel = new BlockingChannel(this, new DataInputStream(clientSocket.getInputStream()), new DataOutputStream(new BufferedOutputStream(clientSocket.getOutputStream())), writerPool);
+            setChannel(channel);
+            int handShakeSize = DataTypeIO.readVarInt(channel.getInput());
 
             //legacy ping
             if (handShakeSize == 0xFE) {
-                ServerProperties properties = Limbo.getInstance().getServerProperties();
-
-                state = ClientState.LEGACY;
-                channel.output.writeByte(255);
-                String str = (properties.isLogPlayerIPAddresses() ? inetAddress.getHostName() : "<ip address withheld>") + ":" + clientSocket.getPort();
-                Limbo.getInstance().getConsole().sendMessage("[/" + str + "] <-> Legacy Status has pinged");
-                ServerProperties p = Limbo.getInstance().getServerProperties();
-                StatusPingEvent event = Limbo.getInstance().getEventsManager().callEvent(new StatusPingEvent(this, p.getVersionString(), p.getProtocol(), p.getMotd(), p.getMaxPlayers(), Limbo.getInstance().getPlayers().size(), p.getFavicon().orElse(null)));
-                String response = Limbo.getInstance().buildLegacyPingResponse(event.getVersion(), event.getMotd(), event.getMaxPlayers(), event.getPlayersOnline());
-                byte[] bytes = response.getBytes(StandardCharsets.UTF_16BE);
-                channel.output.writeShort(response.length());
-                channel.output.write(bytes);
-
-                channel.close();
-                clientSocket.close();
-                state = ClientState.DISCONNECTED;
+                handleLegacyPing();
+            } else {
+                handlePacket(channel.readPacket(handShakeSize));
+                while (channel.isValid() && state != ClientState.DISCONNECTED) {
+                    if (channel.getInput().available() <= 0) {
+                        channel.flush();
+                    }
+                    handlePacket(channel.readPacket());
+                }
             }
+        } catch (Exception ignored) {
+        }
+        finishConnection();
+    }
 
-            Limbo.getInstance().getEventsManager().callEvent(new ConnectionEstablishedEvent(this));
+    void processPacket(PacketIn packetIn) {
+        try {
+            handlePacket(packetIn);
+        } catch (Exception e) {
+            channel.close();
+        }
+    }
 
-            PacketHandshakingIn handshake = (PacketHandshakingIn) channel.readPacket(handShakeSize);
+    void channelInactive() {
+        execute(this::finishConnection);
+    }
+
+    void handleLegacyPing() {
+        try {
+            ServerProperties properties = Limbo.getInstance().getServerProperties();
+
+            state = ClientState.LEGACY;
+            String str = (properties.isLogPlayerIPAddresses() ? inetAddress.getHostName() : "<ip address withheld>") + ":" + clientSocket.getPort();
+            Limbo.getInstance().getConsole().sendMessage("[/" + str + "] <-> Legacy Status has pinged");
+            StatusPingEvent event = Limbo.getInstance().getEventsManager().callEvent(new StatusPingEvent(this, properties.getVersionString(), properties.getProtocol(), properties.getMotd(), properties.getMaxPlayers(), Limbo.getInstance().getPlayerCount(), properties.getFavicon().orElse(null)));
+            String response = Limbo.getInstance().buildLegacyPingResponse(event.getVersion(), event.getMotd(), event.getMaxPlayers(), event.getPlayersOnline());
+            byte[] bytes = response.getBytes(StandardCharsets.UTF_16BE);
+
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(buffer);
+            output.writeByte(255);
+            output.writeShort(response.length());
+            output.write(bytes);
+            channel.writeBytesRaw(buffer.toByteArray());
+        } catch (Exception ignored) {
+        }
+        channel.close();
+    }
+
+    private void handlePacket(PacketIn packetIn) throws Exception {
+        switch (state) {
+        case HANDSHAKE:
+            handleHandshake((PacketHandshakingIn) packetIn);
+            break;
+        case STATUS:
+            handleStatus(packetIn);
+            break;
+        case LOGIN:
+            handleLogin(packetIn);
+            break;
+        case CONFIGURATION:
+            handleConfiguration(packetIn);
+            break;
+        case PLAY:
+            handlePlay(packetIn);
+            break;
+        default:
+            break;
+        }
+    }
+
+    private void handleHandshake(PacketHandshakingIn handshake) {
+        Limbo.getInstance().getEventsManager().callEvent(new ConnectionEstablishedEvent(this));
+
+        switch (handshake.getHandshakeType()) {
+        case STATUS:
+            state = ClientState.STATUS;
+            break;
+        case LOGIN:
+        case TRANSFER:
+            state = ClientState.LOGIN;
+            ServerProperties properties = Limbo.getInstance().getServerProperties();
+            if (properties.isBungeecord() || properties.isBungeeGuard()) {
+                readBungeeForwarding(handshake.getServerAddress());
+            }
+            messageId = this.random.nextInt();
+            break;
+        }
+    }
 
-            boolean isBungeecord = Limbo.getInstance().getServerProperties().isBungeecord();
-            boolean isBungeeGuard = Limbo.getInstance().getServerProperties().isBungeeGuard();
-            boolean isVelocityModern = Limbo.getInstance().getServerProperties().isVelocityModern();
-            String bungeeForwarding = handshake.getServerAddress();
-            UUID bungeeUUID = null;
-            SkinResponse forwardedSkin = null;
+    private void readBungeeForwarding(String bungeeForwarding) {
+        ServerProperties properties = Limbo.getInstance().getServerProperties();
+        boolean isBungeeGuard = properties.isBungeeGuard();
 
             try {
-                switch (handshake.getHandshakeType()) {
-                case STATUS:
-                    state = ClientState.STATUS;
-                    while (clientSocket.isConnected()) {
-                        PacketIn packetIn = channel.readPacket();
-                        if (packetIn instanceof PacketStatusInRequest) {
-                            ServerProperties properties = Limbo.getInstance().getServerProperties();
-
-                            String str = (properties.isLogPlayerIPAddresses() ? inetAddress.getHostName() : "<ip address withheld>") + ":" + clientSocket.getPort();
-                            if (Limbo.getInstance().getServerProperties().handshakeVerboseEnabled()) {
-                                Limbo.getInstance().getConsole().sendMessage("[/" + str + "] <-> Handshake Status has pinged");
-                            }
-                            ServerProperties p = Limbo.getInstance().getServerProperties();
-                            StatusPingEvent event = Limbo.getInstance().getEventsManager().callEvent(new StatusPingEvent(this, p.getVersionString(), p.getProtocol(), p.getMotd(), p.getMaxPlayers(), Limbo.getInstance().getPlayers().size(), p.getFavicon().orElse(null)));
-                            PacketStatusOutResponse response = new PacketStatusOutResponse(Limbo.getInstance().buildServerListResponseJson(event.getVersion(), event.getProtocol(), event.getMotd(), event.getMaxPlayers(), event.getPlayersOnline(), event.getFavicon()));
-                            sendPacket(response);
-                        } else if (packetIn instanceof PacketStatusInPing) {
-                            PacketStatusInPing ping = (PacketStatusInPing) packetIn;
-                            PacketStatusOutPong pong = new PacketStatusOutPong(ping.getPayload());
-                            sendPacket(pong);
-                            break;
-                        }
+                String[] data = bungeeForwarding.split("\\x00");
+                String host = "";
+                String floodgate = "";
+                String clientIp = "";
+                String bungee = "";
+                String skinData = "";
+                int state = 0;
+                for (int i = 0; i < data.length; i++) {
+                    if (!properties.isReducedDebugInfo()) {
+                        Limbo.getInstance().getConsole().sendMessage(i + ": " + data[i]);
                     }
-                    break;
-                case LOGIN:
-                case TRANSFER:
-                    state = ClientState.LOGIN;
-                    ServerProperties properties = Limbo.getInstance().getServerProperties();
 
-                    if (isBungeecord || isBungeeGuard) {
-                        try {
-                            String[] data = bungeeForwarding.split("\\x00");
-                            String host = "";
-                            String floodgate = "";
-                            String clientIp = "";
-                            String bungee = "";
-                            String skinData = "";
-                            int state = 0;
-                            for (int i = 0; i < data.length; i++) {
-                                if (!properties.isReducedDebugInfo()) {
-                                    Limbo.getInstance().getConsole().sendMessage(i + ": " + data[i]);
-                                }
-
-                                switch (state) {
-                                default:
-                                    Limbo.getInstance().getConsole().sendMessage(i + ": ignore data: State: " + state);
-                                    break;
-                                case 0:
-                                    host = data[i];
-                                    state = 1;
-                                    break;
-                                case 1:
-                                    if (data[i].startsWith("^Floodgate^")) {
-                                        floodgate = data[i];
-                                        state = 2;
-                                        break;
-                                    }
-                                    /* fallthrough */
-                                case 2:
-                                    clientIp = data[i];
-                                    state = 3;
-                                    break;
-                                case 3:
-                                    bungee = data[i];
-                                    state = 4;
-                                    break;
-                                case 4:
-                                    skinData = data[i];
-                                    state = 6;
-                                    break;
-                                }
-                            }
-                            if (state != 6) {
-                                throw new IllegalStateException("Illegal bungee state: " + state);
-                            }
-
-                            if (!properties.isReducedDebugInfo()) {
-                                Limbo.getInstance().getConsole().sendMessage("Host: " + host);
-                                Limbo.getInstance().getConsole().sendMessage("Floodgate: " + floodgate);
-                                Limbo.getInstance().getConsole().sendMessage("clientIp: " + clientIp);
-                                Limbo.getInstance().getConsole().sendMessage("bungee: " + bungee);
-                                Limbo.getInstance().getConsole().sendMessage("skinData: " + skinData);
-                            }
-
-                            bungeeUUID = UUID.fromString(bungee.replaceFirst("([0-9a-fA-F]{8})([0-9a-fA-F]{4})([0-9a-fA-F]{4})([0-9a-fA-F]{4})([0-9a-fA-F]+)", "$1-$2-$3-$4-$5"));
-                            inetAddress = InetAddress.getByName(clientIp);
-
-                            boolean bungeeGuardFound = false;
-
-                            if (!skinData.equals("")) {
-                                JSONArray skinJson = (JSONArray) new JSONParser().parse(skinData);
-
-                                for (Object obj : skinJson) {
-                                    JSONObject property = (JSONObject) obj;
-                                    if (property.get("name").toString().equals("textures")) {
-                                        String skin = property.get("value").toString();
-                                        String signature = property.get("signature").toString();
-                                        forwardedSkin = new SkinResponse(skin, signature);
-                                    } else if (isBungeeGuard && property.get("name").toString().equals("bungeeguard-token")) {
-                                        String token = property.get("value").toString();
-                                        bungeeGuardFound = Limbo.getInstance().getServerProperties().getForwardingSecrets().contains(token);
-                                    }
-                                }
-                            }
-
-                            if (isBungeeGuard && !bungeeGuardFound) {
-                                disconnectDuringLogin(TextComponent.fromLegacyText("Invalid information forwarding"));
-                                break;
-                            }
-                        } catch (Exception e) {
-                            if (!properties.isReducedDebugInfo()) {
-                                StringWriter sw = new StringWriter();
-                                PrintWriter pw = new PrintWriter(sw);
-                                e.printStackTrace(pw);
-                                Limbo.getInstance().getConsole().sendMessage(sw.toString());
-                            }
-                            Limbo.getInstance().getConsole().sendMessage("If you wish to use bungeecord's IP forwarding, please enable that in your bungeecord config.yml as well!");
-                            disconnectDuringLogin(new BaseComponent[] {new TextComponent(ChatColor.RED + "Please connect from the proxy!")});
-                        }
-                    }
-                    int messageId = this.random.nextInt();
-                    while (clientSocket.isConnected()) {
-                        PacketIn packetIn = channel.readPacket();
-
-                        if (packetIn instanceof PacketLoginInLoginStart) {
-                            PacketLoginInLoginStart start = (PacketLoginInLoginStart) packetIn;
-                            String username = start.getUsername();
-
-                            if (Limbo.getInstance().getServerProperties().isVelocityModern()) {
-                                PacketLoginOutPluginMessaging loginPluginRequest = new PacketLoginOutPluginMessaging(messageId, ForwardingUtils.VELOCITY_FORWARDING_CHANNEL);
-                                sendPacket(loginPluginRequest);
-                                continue;
-                            }
-
-                            UUID uuid = isBungeecord || isBungeeGuard ? bungeeUUID : start.getUniqueId();
-                            if (uuid == null) {
-                                uuid = UUID.nameUUIDFromBytes(("OfflinePlayer:" + username).getBytes(StandardCharsets.UTF_8));
-                            }
-
-                            if (!properties.enforceWhitelist() && properties.uuidWhitelisted(uuid)) {
-                                disconnectDuringLogin(TextComponent.fromLegacyText("You are not whitelisted on the server"));
-                                break;
-                            }
-
-                            PacketLoginOutLoginSuccess success = new PacketLoginOutLoginSuccess(uuid, username);
-                            sendPacket(success);
-
-                            player = new Player(this, username, uuid, Limbo.getInstance().getNextEntityId(), Limbo.getInstance().getServerProperties().getWorldSpawn(), new PlayerInteractManager());
-                            player.setSkinLayers((byte) (0x01 | 0x02 | 0x04 | 0x08 | 0x10 | 0x20 | 0x40));
-                        } else if (packetIn instanceof PacketLoginInPluginMessaging) {
-                            PacketLoginInPluginMessaging response = (PacketLoginInPluginMessaging) packetIn;
-                            if (response.getMessageId() != messageId) {
-                                disconnectDuringLogin(TextComponent.fromLegacyText("Internal error, messageId did not match"));
-                                break;
-                            }
-                            if (!response.getData().isPresent()) {
-                                disconnectDuringLogin(TextComponent.fromLegacyText("Unknown login plugin response packet!"));
-                                break;
-                            }
-                            byte[] responseData = response.getData().get();
-                            if (!ForwardingUtils.validateVelocityModernResponse(responseData)) {
-                                disconnectDuringLogin(TextComponent.fromLegacyText("Invalid playerinfo forwarding!"));
-                                break;
-                            }
-                            ForwardingUtils.VelocityModernForwardingData data = ForwardingUtils.getVelocityDataFrom(responseData);
-                            inetAddress = InetAddress.getByName(data.getIpAddress());
-                            forwardedSkin = data.getSkinResponse();
-
-                            PacketLoginOutLoginSuccess success = new PacketLoginOutLoginSuccess(data.getUuid(), data.getUsername());
-                            sendPacket(success);
-
-                            player = new Player(this, data.getUsername(), data.getUuid(), Limbo.getInstance().getNextEntityId(), Limbo.getInstance().getServerProperties().getWorldSpawn(), new PlayerInteractManager());
-                            player.setSkinLayers((byte) (0x01 | 0x02 | 0x04 | 0x08 | 0x10 | 0x20 | 0x40));
-                        } else if (packetIn instanceof ServerboundLoginAcknowledgedPacket) {
-                            state = ClientState.CONFIGURATION;
+                    switch (state) {
+                    default:
+                        Limbo.getInstance().getConsole().sendMessage(i + ": ignore data: State: " + state);
+                        break;
+                    case 0:
+                        host = data[i];
+                        state = 1;
+                        break;
+                    case 1:
+                        if (data[i].startsWith("^Floodgate^")) {
+                            floodgate = data[i];
+                            state = 2;
                             break;
                         }
+                        /* fallthrough */
+                    case 2:
+                        clientIp = data[i];
+                        state = 3;
+                        break;
+                    case 3:
+                        bungee = data[i];
+                        state = 4;
+                        break;
+                    case 4:
+                        skinData = data[i];
+                        state = 6;
+                        break;
                     }
+                }
+                if (state != 6) {
+                    throw new IllegalStateException("Illegal bungee state: " + state);
+                }
+
+                if (!properties.isReducedDebugInfo()) {
+                    Limbo.getInstance().getConsole().sendMessage("Host: " + host);
+                    Limbo.getInstance().getConsole().sendMessage("Floodgate: " + floodgate);
+                    Limbo.getInstance().getConsole().sendMessage("clientIp: " + clientIp);
+                    Limbo.getInstance().getConsole().sendMessage("bungee: " + bungee);
+                    Limbo.getInstance().getConsole().sendMessage("skinData: " + skinData);
+                }
+
+                bungeeUUID = UUID.fromString(bungee.replaceFirst("([0-9a-fA-F]{8})([0-9a-fA-F]{4})([0-9a-fA-F]{4})([0-9a-fA-F]{4})([0-9a-fA-F]+)", "$1-$2-$3-$4-$5"));
+                inetAddress = InetAddress.getByName(clientIp);
 
-                    PlayerLoginEvent event = Limbo.getInstance().getEventsManager().callEvent(new PlayerLoginEvent(this, false, Component.empty()));
-                    if (event.isCancelled()) {
-                        disconnectDuringLogin(event.getCancelReason());
+                boolean bungeeGuardFound = false;
+
+                if (!skinData.equals("")) {
+                    JSONArray skinJson = (JSONArray) new JSONParser().parse(skinData);
+
+                    for (Object obj : skinJson) {
+                        JSONObject property = (JSONObject) obj;
+                        if (property.get("name").toString().equals("textures")) {
+                            String skin = property.get("value").toString();
+                            String signature = property.get("signature").toString();
+                            forwardedSkin = new SkinResponse(skin, signature);
+                        } else if (isBungeeGuard && property.get("name").toString().equals("bungeeguard-token")) {
+                            String token = property.get("value").toString();
+                            bungeeGuardFound = Limbo.getInstance().getServerProperties().getForwardingSecrets().contains(token);
+                        }
                     }
+                }
 
-                    break;
+                if (isBungeeGuard && !bungeeGuardFound) {
+                    disconnectDuringLogin(TextComponent.fromLegacyText("Invalid information forwarding"));
+                    return;
                 }
-            } catch (Exception ignored) {
-                channel.close();
-                clientSocket.close();
-                state = ClientState.DISCONNECTED;
+            } catch (Exception e) {
+                if (!properties.isReducedDebugInfo()) {
+                    StringWriter sw = new StringWriter();
+                    PrintWriter pw = new PrintWriter(sw);
+                    e.printStackTrace(pw);
+                    Limbo.getInstance().getConsole().sendMessage(sw.toString());
+                }
+                Limbo.getInstance().getConsole().sendMessage("If you wish to use bungeecord's IP forwarding, please enable that in your bungeecord config.yml as well!");
+                disconnectDuringLogin(new BaseComponent[] {new TextComponent(ChatColor.RED + "Please connect from the proxy!")});
+            }
+    }
+
+    private void handleStatus(PacketIn packetIn) throws IOException {
+        if (packetIn instanceof PacketStatusInRequest) {
+            ServerProperties properties = Limbo.getInstance().getServerProperties();
+
+            String str = (properties.isLogPlayerIPAddresses() ? inetAddress.getHostName() : "<ip address withheld>") + ":" + clientSocket.getPort();
+            if (Limbo.getInstance().getServerProperties().handshakeVerboseEnabled()) {
+                Limbo.getInstance().getConsole().sendMessage("[/" + str + "] <-> Handshake Status has pinged");
+            }
+            Limbo limbo = Limbo.getInstance();
+            StatusResponseCache cache = limbo.getStatusResponseCache();
+            PreparedPacket response;
+            if (limbo.getEventsManager().hasListeners(StatusPingEvent.class)) {
+                StatusPingEvent event = limbo.getEventsManager().callEvent(new StatusPingEvent(this, properties.getVersionString(), properties.getProtocol(), properties.getMotd(), properties.getMaxPlayers(), limbo.getPlayerCount(), properties.getFavicon().orElse(null)));
+                response = cache.getResponse(event.getVersion(), event.getProtocol(), event.getMotd(), event.getMaxPlayers(), event.getPlayersOnline(), event.getFavicon());
+            } else {
+                response = cache.getResponse(properties.getVersionString(), properties.getProtocol(), properties.getMotd(), properties.getMaxPlayers(), limbo.getPlayerCount(), properties.getFavicon().orElse(null));
             }
+            sendPacket(response);
+        } else if (packetIn instanceof PacketStatusInPing) {
+            PacketStatusInPing ping = (PacketStatusInPing) packetIn;
+            PacketStatusOutPong pong = new PacketStatusOutPong(ping.getPayload());
+            sendPacket(pong);
+            channel.close();
+        }
+    }
+
+    private void handleLogin(PacketIn packetIn) throws Exception {
+        ServerProperties properties = Limbo.getInstance().getServerProperties();
+        boolean isBungeecord = properties.isBungeecord();
+        boolean isBungeeGuard = properties.isBungeeGuard();
+
+            if (packetIn instanceof PacketLoginInLoginStart) {
+                PacketLoginInLoginStart start = (PacketLoginInLoginStart) packetIn;
+                String username = start.getUsername();
 
-            if (state == ClientState.CONFIGURATION) {
+                if (Limbo.getInstance().getServerProperties().isVelocityModern()) {
+                    PacketLoginOutPluginMessaging loginPluginRequest = new PacketLoginOutPluginMessaging(messageId, ForwardingUtils.VELOCITY_FORWARDING_CHANNEL);
+                    sendPacket(loginPluginRequest);
+                    return;
+                }
+
+                UUID uuid = isBungeecord || isBungeeGuard ? bungeeUUID : start.getUniqueId();
+                if (uuid == null) {
+                    uuid = UUID.nameUUIDFromBytes(("OfflinePlayer:" + username).getBytes(StandardCharsets.UTF_8));
+                }
 
-                TimeUnit.MILLISECONDS.sleep(500);
+                if (!properties.enforceWhitelist() && properties.uuidWhitelisted(uuid)) {
+                    disconnectDuringLogin(TextComponent.fromLegacyText("You are not whitelisted on the server"));
+                    return;
+                }
 
-                for (RegistryCustom registryCustom : RegistryCustom.getRegistries()) {
-                    ClientboundRegistryDataPacket registryDataPacket = new ClientboundRegistryDataPacket(registryCustom);
-                    sendPacket(registryDataPacket);
+                enableCompression();
+
+                PacketLoginOutLoginSuccess success = new PacketLoginOutLoginSuccess(uuid, username);
+                sendPacket(success);
+
+                player = new Player(this, username, uuid, Limbo.getInstance().getNextEntityId(), Limbo.getInstance().getServerProperties().getWorldSpawn(), new PlayerInteractManager());
+                player.setSkinLayers((byte) (0x01 | 0x02 | 0x04 | 0x08 | 0x10 | 0x20 | 0x40));
+            } else if (packetIn instanceof PacketLoginInPluginMessaging) {
+                PacketLoginInPluginMessaging response = (PacketLoginInPluginMessaging) packetIn;
+                if (response.getMessageId() != messageId) {
+                    disconnectDuringLogin(TextComponent.fromLegacyText("Internal error, messageId did not match"));
+                    return;
+                }
+                if (!response.getData().isPresent()) {
+                    disconnectDuringLogin(TextComponent.fromLegacyText("Unknown login plugin response packet!"));
+                    return;
                 }
+                byte[] responseData = response.getData().get();
+                if (!ForwardingUtils.validateVelocityModernResponse(responseData)) {
+                    disconnectDuringLogin(TextComponent.fromLegacyText("Invalid playerinfo forwarding!"));
+                    return;
+                }
+                ForwardingUtils.VelocityModernForwardingData data = ForwardingUtils.getVelocityDataFrom(responseData);
+                inetAddress = InetAddress.getByName(data.getIpAddress());
+                forwardedSkin = data.getSkinResponse();
 
-                ClientboundFinishConfigurationPacket clientboundFinishConfigurationPacket = new ClientboundFinishConfigurationPacket();
-                sendPacket(clientboundFinishConfigurationPacket);
+                enableCompression();
 
-                ServerboundFinishConfigurationPacket serverboundFinishConfigurationPacket = (ServerboundFinishConfigurationPacket) channel.readPacket();
+                PacketLoginOutLoginSuccess success = new PacketLoginOutLoginSuccess(data.getUuid(), data.getUsername());
+                sendPacket(success);
 
-                state = ClientState.PLAY;
-                Limbo.getInstance().getUnsafe().a(player);
+                player = new Player(this, data.getUsername(), data.getUuid(), Limbo.getInstance().getNextEntityId(), Limbo.getInstance().getServerProperties().getWorldSpawn(), new PlayerInteractManager());
+                player.setSkinLayers((byte) (0x01 | 0x02 | 0x04 | 0x08 | 0x10 | 0x20 | 0x40));
+        } else if (packetIn instanceof ServerboundLoginAcknowledgedPacket) {
+            state = ClientState.CONFIGURATION;
 
-                TimeUnit.MILLISECONDS.sleep(500);
+            PlayerLoginEvent event = Limbo.getInstance().getEventsManager().callEvent(new PlayerLoginEvent(this, false, Component.empty()));
+            if (event.isCancelled()) {
+                disconnectDuringLogin(event.getCancelReason());
+                return;
+            }
 
-                ServerProperties properties = Limbo.getInstance().getServerProperties();
-                Location worldSpawn = properties.getWorldSpawn();
+            runLater(500, this::sendConfiguration);
+        }
+    }
 
-                PlayerSpawnEvent spawnEvent = Limbo.getInstance().getEventsManager().callEvent(new PlayerSpawnEvent(player, worldSpawn));
-                worldSpawn = spawnEvent.getSpawnLocation();
-                World world = worldSpawn.getWorld();
+    private void enableCompression() throws IOException {
+        ServerProperties properties = Limbo.getInstance().getServerProperties();
+        int threshold = properties.getNetworkCompressionThreshold();
+        if (threshold >= 0) {
+            sendPacket(new PacketLoginOutSetCompression(threshold));
+            channel.setCompression(threshold, properties.getNetworkCompressionLevel());
+        }
+    }
+
+    private void sendConfiguration() throws IOException {
+        for (RegistryCustom registryCustom : RegistryCustom.getRegistries()) {
+            ClientboundRegistryDataPacket registryDataPacket = new ClientboundRegistryDataPacket(registryCustom);
+            sendPacket(registryDataPacket);
+        }
+
+        ClientboundFinishConfigurationPacket clientboundFinishConfigurationPacket = new ClientboundFinishConfigurationPacket();
+        sendPacket(clientboundFinishConfigurationPacket);
+    }
+
+    private void handleConfiguration(PacketIn packetIn) throws Exception {
+        if (packetIn instanceof ServerboundFinishConfigurationPacket) {
+            state = ClientState.PLAY;
+            Limbo.getInstance().getUnsafe().a(player);
+
+            CompletableFuture<SkinResponse> skin = lookupSkin();
+            runLater(500, () -> joinGame(skin));
+        }
+    }
+
+    /**
+     * Uses the skin forwarded by the proxy, or looks it up from the Mojang session server off the network threads.
+     */
+    private CompletableFuture<SkinResponse> lookupSkin() {
+        ServerProperties properties = Limbo.getInstance().getServerProperties();
+        if ((properties.isVelocityModern() || properties.isBungeeGuard() || properties.isBungeecord()) && forwardedSkin != null) {
+            return CompletableFuture.completedFuture(forwardedSkin);
+        }
+        String name = player.getName();
+        return CompletableFuture.supplyAsync(() -> MojangAPIUtils.getSkinFromMojangServer(name), SKIN_LOOKUP_EXECUTOR).exceptionally(e -> {
+            e.printStackTrace();
+            return null;
+        });
+    }
 
-                PacketPlayOutLogin join = new PacketPlayOutLogin(player.getEntityId(), false, Limbo.getInstance().getWorlds(), properties.getMaxPlayers(), 8, 8, properties.isReducedDebugInfo(), true, false, world.getEnvironment(), world, 0, properties.getDefaultGamemode(), false, true, 0, 0, false);
-                sendPacket(join);
-                Limbo.getInstance().getUnsafe().a(player, properties.getDefaultGamemode());
+    /**
+     * Joins once the skin lookup is done. With nio the worker is not held while waiting, the join resumes on
+     * the connection's executor when the lookup completes.
+     */
+    private void joinGame(CompletableFuture<SkinResponse> skin) throws Exception {
+        if (executor == null || skin.isDone()) {
+            joinGame(skin.join());
+            return;
+        }
+        skin.thenAccept(response -> execute(() -> {
+            try {
+                joinGame(response);
+                channel.flush();
+            } catch (Exception e) {
+                channel.close();
+            }
+        }));
+    }
+
+    @SuppressWarnings("deprecation")
+    private void joinGame(SkinResponse skinresponce) throws Exception {
+        ServerProperties properties = Limbo.getInstance().getServerProperties();
+
+        Location worldSpawn = properties.getWorldSpawn();
+
+        PlayerSpawnEvent spawnEvent = Limbo.getInstance().getEventsManager().callEvent(new PlayerSpawnEvent(player, worldSpawn));
+        worldSpawn = spawnEvent.getSpawnLocation();
+        World world = worldSpawn.getWorld();
+
+        PacketPlayOutLogin join = new PacketPlayOutLogin(player.getEntityId(), false, Limbo.getInstance().getWorlds(), properties.getMaxPlayers(), 8, 8, properties.isReducedDebugInfo(), true, false, world.getEnvironment(), world, 0, properties.getDefaultGamemode(), false, true, 0, 0, false);
+        sendPacket(join);
+        Limbo.getInstance().getUnsafe().a(player, properties.getDefaultGamemode());
+
+        ByteArrayOutputStream brandOut = new ByteArrayOutputStream();
+        DataTypeIO.writeString(new DataOutputStream(brandOut), properties.getServerModName(), StandardCharsets.UTF_8);
+        sendPluginMessage(BRAND_ANNOUNCE_CHANNEL, brandOut.toByteArray());
+
+        PlayerSkinProperty skin = skinresponce != null ? new PlayerSkinProperty(skinresponce.getSkin(), skinresponce.getSignature()) : null;
+        PacketPlayOutPlayerInfo info = new PacketPlayOutPlayerInfo(EnumSet.of(PlayerInfoAction.ADD_PLAYER, PlayerInfoAction.UPDATE_GAME_MODE, PlayerInfoAction.UPDATE_LISTED, PlayerInfoAction.UPDATE_LATENCY, PlayerInfoAction.UPDATE_DISPLAY_NAME), player.getUniqueId(), new PlayerInfoData.PlayerInfoDataAddPlayer(player.getName(), true, Optional.ofNullable(skin), properties.getDefaultGamemode(), 0, false, Optional.empty()));
+        sendPacket(info);
+
+        Set<PlayerAbilityFlags> flags = new HashSet<>();
+        if (properties.isAllowFlight()) {
+            flags.add(PlayerAbilityFlags.FLY);
+        }
+        if (player.getGamemode().equals(GameMode.CREATIVE)) {
+            flags.add(PlayerAbilityFlags.CREATIVE);
+        }
+        PacketPlayOutPlayerAbilities abilities = new PacketPlayOutPlayerAbilities(0.05F, 0.1F, flags.toArray(new PlayerAbilityFlags[flags.size()]));
+        sendPacket(abilities);
+
+        String str = (properties.isLogPlayerIPAddresses() ? inetAddress.getHostName() : "<ip address withheld>") + ":" + clientSocket.getPort() + "|" + player.getName() + "(" + player.getUniqueId() + ")";
+        Limbo.getInstance().getConsole().sendMessage("[/" + str + "] <-> Player had connected to the Limbo server!");
+
+        PacketPlayOutGameStateChange gameEvent = new PacketPlayOutGameStateChange(PacketPlayOutGameStateChange.GameStateChangeEvent.LEVEL_CHUNKS_LOAD_START, 0);
+        sendPacket(gameEvent);
+        player.playerInteractManager.update();
+
+        PacketPlayOutDeclareCommands declare = DeclareCommands.getDeclareCommandsPacket(player);
+        if (declare != null) {
+            sendPacket(declare);
+        }
+
+        PacketPlayOutSpawnPosition spawnPos = new PacketPlayOutSpawnPosition(BlockPosition.from(worldSpawn), worldSpawn.getPitch());
+        sendPacket(spawnPos);
+
+        PacketPlayOutPositionAndLook positionLook = new PacketPlayOutPositionAndLook(worldSpawn.getX(), worldSpawn.getY(), worldSpawn.getZ(), worldSpawn.getYaw(), worldSpawn.getPitch(), 1);
+        Limbo.getInstance().getUnsafe().a(player, new Location(world, worldSpawn.getX(), worldSpawn.getY(), worldSpawn.getZ(), worldSpawn.getYaw(), worldSpawn.getPitch()));
+        sendPacket(positionLook);
+
+        player.getDataWatcher().update();
+        PacketPlayOutEntityMetadata show = new PacketPlayOutEntityMetadata(player, false, Player.class.getDeclaredField("skinLayers"));
+        sendPacket(show);
+
+        Limbo.getInstance().getEventsManager().callEvent(new PlayerJoinEvent(player));
+
+        if (properties.isAllowFlight()) {
+            PacketPlayOutGameStateChange state = new PacketPlayOutGameStateChange(PacketPlayOutGameStateChange.GameStateChangeEvent.CHANGE_GAME_MODE, player.getGamemode().getId());
+            sendPacket(state);
+        }
 
-                ByteArrayOutputStream brandOut = new ByteArrayOutputStream();
-                DataTypeIO.writeString(new DataOutputStream(brandOut), properties.getServerModName(), StandardCharsets.UTF_8);
-                sendPluginMessage(BRAND_ANNOUNCE_CHANNEL, brandOut.toByteArray());
-                
-                SkinResponse skinresponce = (isVelocityModern || isBungeeGuard || isBungeecord) && forwardedSkin != null ? forwardedSkin : MojangAPIUtils.getSkinFromMojangServer(player.getName());
-                PlayerSkinProperty skin = skinresponce != null ? new PlayerSkinProperty(skinresponce.getSkin(), skinresponce.getSignature()) : null;
-                PacketPlayOutPlayerInfo info = new PacketPlayOutPlayerInfo(EnumSet.of(PlayerInfoAction.ADD_PLAYER, PlayerInfoAction.UPDATE_GAME_MODE, PlayerInfoAction.UPDATE_LISTED, PlayerInfoAction.UPDATE_LATENCY, PlayerInfoAction.UPDATE_DISPLAY_NAME), player.getUniqueId(), new PlayerInfoData.PlayerInfoDataAddPlayer(player.getName(), true, Optional.ofNullable(skin), properties.getDefaultGamemode(), 0, false, Optional.empty()));
-                sendPacket(info);
-                
-                Set<PlayerAbilityFlags> flags = new HashSet<>();
-                if (properties.isAllowFlight()) {
-                    flags.add(PlayerAbilityFlags.FLY);
+        // RESOURCEPACK CODE CONRIBUTED BY GAMERDUCK123
+        if (!properties.getResourcePackLink().equalsIgnoreCase("")) {
+            if (!properties.getResourcePackSHA1().equalsIgnoreCase("")) {
+                //SEND RESOURCEPACK
+                player.setResourcePack(properties.getResourcePackLink(), properties.getResourcePackSHA1(), properties.getResourcePackRequired(), properties.getResourcePackPrompt());
+            } else {
+                //NO SHA
+                Limbo.getInstance().getConsole().sendMessage("ResourcePacks require SHA1s");
+            }
+        } else {
+            //RESOURCEPACK NOT ENABLED
+        }
+
+        // PLAYER LIST HEADER AND FOOTER CODE CONRIBUTED BY GAMERDUCK123
+        player.sendPlayerListHeaderAndFooter(properties.getTabHeader(), properties.getTabFooter());
+
+        ready = true;
+
+        keepAliveTask = new TimerTask() {
+            @Override
+            public void run() {
+                if (state.equals(ClientState.DISCONNECTED)) {
+                    this.cancel();
+                } else if (ready && state.equals(ClientState.PLAY)) {
+                    long now = System.currentTimeMillis();
+                    if (now - getLastPacketTimestamp() > 15000) {
+                        PacketPlayOutKeepAlive keepAlivePacket = new PacketPlayOutKeepAlive(now);
+                        try {
+                            sendPacket(keepAlivePacket, true);
+                            setLastKeepAlivePayLoad(now);
+                        } catch (Exception e) {
+                        }
+                    }
                 }
-                if (player.getGamemode().equals(GameMode.CREATIVE)) {
-                    flags.add(PlayerAbilityFlags.CREATIVE);
+            }
+        };
+        KEEP_ALIVE_TIMER.schedule(keepAliveTask, 5000, 10000);
+    }
+
+    private void processMoveEvent(PlayerMoveEvent event, Location originalTo) throws IOException {
+        if (event.isCancelled()) {
+            Location returnTo = event.getFrom();
+            PacketPlayOutPositionAndLook cancel = new PacketPlayOutPositionAndLook(returnTo.getX(), returnTo.getY(), returnTo.getZ(), returnTo.getYaw(), returnTo.getPitch(), 1);
+            sendPacket(cancel);
+        } else {
+            Location to = event.getTo();
+            Limbo.getInstance().getUnsafe().a(player, to);
+            // If an event handler used setTo, let's make sure we tell the player about it.
+            if (!originalTo.equals(to)) {
+                PacketPlayOutPositionAndLook pos = new PacketPlayOutPositionAndLook(to.getX(), to.getY(), to.getZ(), to.getYaw(), to.getPitch(), 1);
+                sendPacket(pos);
+            }
+            PacketPlayOutUpdateViewPosition response = new PacketPlayOutUpdateViewPosition((int) player.getLocation().getX() >> 4, (int) player.getLocation().getZ() >> 4);
+            sendPacket(response);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private void handlePlay(PacketIn packetIn) throws Exception {
+        if (!ready) {
+            return;
+        }
+        if (packetIn instanceof PacketPlayInPositionAndLook) {
+            PacketPlayInPositionAndLook pos = (PacketPlayInPositionAndLook) packetIn;
+            Location from = player.getLocation();
+            Location to = new Location(player.getWorld(), pos.getX(), pos.getY(), pos.getZ(), pos.getYaw(), pos.getPitch());
+
+            if (!from.equals(to)) {
+                PlayerMoveEvent event = Limbo.getInstance().getEventsManager().callEvent(new PlayerMoveEvent(player, from, to));
+                processMoveEvent(event, to);
+            }
+        } else if (packetIn instanceof PacketPlayInPosition) {
+            PacketPlayInPosition pos = (PacketPlayInPosition) packetIn;
+            Location from = player.getLocation();
+            Location to = new Location(player.getWorld(), pos.getX(), pos.getY(), pos.getZ(), player.getLocation().getYaw(), player.getLocation().getPitch());
+
+            if (!from.equals(to)) {
+                PlayerMoveEvent event = Limbo.getInstance().getEventsManager().callEvent(new PlayerMoveEvent(player, from, to));
+                processMoveEvent(event, to);
+            }
+        } else if (packetIn instanceof PacketPlayInRotation) {
+            PacketPlayInRotation pos = (PacketPlayInRotation) packetIn;
+            Location from = player.getLocation();
+            Location to = new Location(player.getWorld(), player.getLocation().getX(), player.getLocation().getY(), player.getLocation().getZ(), pos.getYaw(), pos.getPitch());
+
+            if (!from.equals(to)) {
+                PlayerMoveEvent event = Limbo.getInstance().getEventsManager().callEvent(new PlayerMoveEvent(player, from, to));
+                processMoveEvent(event, to);
+            }
+        } else if (packetIn instanceof PacketPlayInKeepAlive) {
+            long lastPayload = getLastKeepAlivePayLoad();
+            PacketPlayInKeepAlive alive = (PacketPlayInKeepAlive) packetIn;
+            if (lastPayload == -1) {
+                Limbo.getInstance().getConsole().sendMessage("Unsolicited KeepAlive packet for player " + player.getName());
+            } else if (alive.getPayload() != lastPayload) {
+                Limbo.getInstance().getConsole().sendMessage("Incorrect Payload received in KeepAlive packet for player " + player.getName());
+                channel.close();
+            }
+        } else if (packetIn instanceof PacketPlayInTabComplete) {
+            PacketPlayInTabComplete request = (PacketPlayInTabComplete) packetIn;
+            String[] command = CustomStringUtils.splitStringToArgs(request.getText().substring(1));
+
+            List<TabCompleteMatches> matches = new ArrayList<>(Limbo.getInstance().getPluginManager().getTabOptions(player, command).stream().map(each -> new TabCompleteMatches(each)).collect(Collectors.toList()));
+
+            int start = CustomStringUtils.getIndexOfArg(request.getText(), command.length - 1) + 1;
+            int length = command[command.length - 1].length();
+
+            PacketPlayOutTabComplete response = new PacketPlayOutTabComplete(request.getId(), start, length, matches.toArray(new TabCompleteMatches[matches.size()]));
+            sendPacket(response);
+        } else if (packetIn instanceof PacketPlayInChat) {
+            PacketPlayInChat chat = (PacketPlayInChat) packetIn;
+            player.chat(chat.getMessage(), true, chat.getSignature(), chat.getTime());
+        } else if (packetIn instanceof ServerboundChatCommandPacket) {
+            ServerboundChatCommandPacket command = (ServerboundChatCommandPacket) packetIn;
+            Limbo.getInstance().dispatchCommand(player, "/" + command.getCommand());
+        } else if (packetIn instanceof PacketPlayInHeldItemChange) {
+            PacketPlayInHeldItemChange change = (PacketPlayInHeldItemChange) packetIn;
+            PlayerSelectedSlotChangeEvent event = Limbo.getInstance().getEventsManager().callEvent(new PlayerSelectedSlotChangeEvent(player, (byte) change.getSlot()));
+            if (event.isCancelled()) {
+                PacketPlayOutHeldItemChange cancelPacket = new PacketPlayOutHeldItemChange(player.getSelectedSlot());
+                sendPacket(cancelPacket);
+            } else if (change.getSlot() != event.getSlot()) {
+                PacketPlayOutHeldItemChange changePacket = new PacketPlayOutHeldItemChange(event.getSlot());
+                sendPacket(changePacket);
+                Limbo.getInstance().getUnsafe().a(player, event.getSlot());
+            } else {
+                Limbo.getInstance().getUnsafe().a(player, event.getSlot());
+            }
+
+        } else if (packetIn instanceof ServerboundResourcePackPacket) {
+            ServerboundResourcePackPacket rpcheck = (ServerboundResourcePackPacket) packetIn;
+            // Pass on result to the events
+            Limbo.getInstance().getEventsManager().callEvent(new PlayerResourcePackStatusEvent(player, rpcheck.getAction()));
+            if (rpcheck.getAction().equals(Action.DECLINED) && Limbo.getInstance().getServerProperties().getResourcePackRequired()) {
+                player.disconnect(new TranslatableComponent("multiplayer.requiredTexturePrompt.disconnect"));
+            }
+        } else if (packetIn instanceof PacketPlayInPluginMessaging) {
+            PacketPlayInPluginMessaging inPluginMessaging = (PacketPlayInPluginMessaging) packetIn;
+            Limbo.getInstance().getEventsManager().callEvent(new PluginMessageEvent(player, inPluginMessaging.getChannel(), inPluginMessaging.getData()));
+        } else if (packetIn instanceof PacketPlayInBlockPlace) {
+            PacketPlayInBlockPlace packet = (PacketPlayInBlockPlace) packetIn;
+            Limbo.getInstance().getEventsManager().callEvent(new PlayerInteractEvent(player, PlayerInteractEvent.Action.RIGHT_CLICK_AIR, player.getEquipment().getItem(packet.getHand()), null, null, packet.getHand()));
+        } else if (packetIn instanceof PacketPlayInUseItem) {
+            PacketPlayInUseItem packet = (PacketPlayInUseItem) packetIn;
+            BlockState block = player.getWorld().getBlock(packet.getBlockHit().getBlockPos());
+            Limbo.getInstance().getEventsManager().callEvent(new PlayerInteractEvent(player, PlayerInteractEvent.Action.RIGHT_CLICK_AIR, player.getEquipment().getItem(packet.getHand()), block, packet.getBlockHit().getDirection(), packet.getHand()));
+        } else if (packetIn instanceof PacketPlayInSetCreativeSlot) {
+            PacketPlayInSetCreativeSlot packet = (PacketPlayInSetCreativeSlot) packetIn;
+            InventoryCreativeEvent event = Limbo.getInstance().getEventsManager().callEvent(new InventoryCreativeEvent(player.getInventoryView(), player.getInventory().getUnsafe().b().applyAsInt(packet.getSlotNumber()), packet.getItemStack()));
+            if (event.isCancelled()) {
+                player.updateInventory();
+            } else {
+                player.getInventory().setItem(event.getSlot(), event.getNewItem());
+            }
+        } else if (packetIn instanceof PacketPlayInWindowClick) {
+            PacketPlayInWindowClick packet = (PacketPlayInWindowClick) packetIn;
+            try {
+                InventoryClickUtils.handle(player, packet);
+            } catch (Throwable e) {
+                e.printStackTrace();
+            }
+        } else if (packetIn instanceof PacketPlayInCloseWindow) {
+            PacketPlayInCloseWindow packet = (PacketPlayInCloseWindow) packetIn;
+            Inventory inventory = player.getInventoryView().getTopInventory();
+            if (inventory != null) {
+                Integer id = inventory.getUnsafe().c().get(player);
+                if (id != null) {
+                    Limbo.getInstance().getEventsManager().callEvent(new InventoryCloseEvent(player.getInventoryView()));
+                    player.getInventoryView().getUnsafe().a(null, null);
+                    inventory.getUnsafe().c().remove(player);
                 }
-                PacketPlayOutPlayerAbilities abilities = new PacketPlayOutPlayerAbilities(0.05F, 0.1F, flags.toArray(new PlayerAbilityFlags[flags.size()]));
-                sendPacket(abilities);
-                
-                String str = (properties.isLogPlayerIPAddresses() ? inetAddress.getHostName() : "<ip address withheld>") + ":" + clientSocket.getPort() + "|" + player.getName() + "(" + player.getUniqueId() + ")";
-                Limbo.getInstance().getConsole().sendMessage("[/" + str + "] <-> Player had connected to the Limbo server!");
-
-                PacketPlayOutGameStateChange gameEvent = new PacketPlayOutGameStateChange(PacketPlayOutGameStateChange.GameStateChangeEvent.LEVEL_CHUNKS_LOAD_START, 0);
-                sendPacket(gameEvent);
-                player.playerInteractManager.update();
-
-                PacketPlayOutDeclareCommands declare = DeclareCommands.getDeclareCommandsPacket(player);
-                if (declare != null) {
-                    sendPacket(declare);
+            }
+        } else if (packetIn instanceof PacketPlayInBlockDig) {
+            PacketPlayInBlockDig packet = (PacketPlayInBlockDig) packetIn;
+            //noinspection SwitchStatementWithTooFewBranches
+            switch (packet.getAction()) {
+                case SWAP_ITEM_WITH_OFFHAND: {
+                    EntityEquipment equipment = player.getEquipment();
+                    PlayerSwapHandItemsEvent event = Limbo.getInstance().getEventsManager().callEvent(new PlayerSwapHandItemsEvent(player, equipment.getItemInOffHand(), equipment.getItemInMainHand()));
+                    if (!event.isCancelled()) {
+                        equipment.setItemInMainHand(event.getMainHandItem());
+                        equipment.setItemInOffHand(event.getOffHandItem());
+                    }
+                    break;
                 }
-                
-                PacketPlayOutSpawnPosition spawnPos = new PacketPlayOutSpawnPosition(BlockPosition.from(worldSpawn), worldSpawn.getPitch());
-                sendPacket(spawnPos);
-                
-                PacketPlayOutPositionAndLook positionLook = new PacketPlayOutPositionAndLook(worldSpawn.getX(), worldSpawn.getY(), worldSpawn.getZ(), worldSpawn.getYaw(), worldSpawn.getPitch(), 1);
-                Limbo.getInstance().getUnsafe().a(player, new Location(world, worldSpawn.getX(), worldSpawn.getY(), worldSpawn.getZ(), worldSpawn.getYaw(), worldSpawn.getPitch()));
-                sendPacket(positionLook);
-                
-                player.getDataWatcher().update();
-                PacketPlayOutEntityMetadata show = new PacketPlayOutEntityMetadata(player, false, Player.class.getDeclaredField("skinLayers"));
-                sendPacket(show);
-                
-                Limbo.getInstance().getEventsManager().callEvent(new PlayerJoinEvent(player));
-                
-                if (properties.isAllowFlight()) {
-                    PacketPlayOutGameStateChange state = new PacketPlayOutGameStateChange(PacketPlayOutGameStateChange.GameStateChangeEvent.CHANGE_GAME_MODE, player.getGamemode().getId());
-                    sendPacket(state);
+            }
+        } else if (packetIn instanceof PacketPlayInPickItem) {
+            PacketPlayInPickItem packet = (PacketPlayInPickItem) packetIn;
+            PlayerInventory inventory = player.getInventory();
+            int slot = inventory.getUnsafe().b().applyAsInt(packet.getSlot());
+            int i = player.getSelectedSlot();
+            byte selectedSlot = -1;
+            boolean firstRun = true;
+            while (selectedSlot < 0 || (!firstRun && i == player.getSelectedSlot())) {
+                ItemStack itemStack = inventory.getItem(i);
+                if (itemStack == null) {
+                    selectedSlot = (byte) i;
+                    break;
                 }
-                
-                // RESOURCEPACK CODE CONRIBUTED BY GAMERDUCK123
-                if (!properties.getResourcePackLink().equalsIgnoreCase("")) {
-                    if (!properties.getResourcePackSHA1().equalsIgnoreCase("")) {
-                        //SEND RESOURCEPACK
-                        player.setResourcePack(properties.getResourcePackLink(), properties.getResourcePackSHA1(), properties.getResourcePackRequired(), properties.getResourcePackPrompt());
-                    } else {
-                        //NO SHA
-                        Limbo.getInstance().getConsole().sendMessage("ResourcePacks require SHA1s");
-                    }
-                } else {
-                    //RESOURCEPACK NOT ENABLED
+                if (++i >= 9) {
+                    i = 0;
                 }
-                
-                // PLAYER LIST HEADER AND FOOTER CODE CONRIBUTED BY GAMERDUCK123
-                player.sendPlayerListHeaderAndFooter(properties.getTabHeader(), properties.getTabFooter());
-                
-                ready = true;
-                
-                keepAliveTask = new TimerTask() {
-                    @Override
-                    public void run() {
-                        if (state.equals(ClientState.DISCONNECTED)) {
-                            this.cancel();
-                        } else if (ready && state.equals(ClientState.PLAY)) {
-                            long now = System.currentTimeMillis();
-                            if (now - getLastPacketTimestamp() > 15000) {
-                                PacketPlayOutKeepAlive keepAlivePacket = new PacketPlayOutKeepAlive(now);
-                                try {
-                                    sendPacket(keepAlivePacket);
-                                    setLastKeepAlivePayLoad(now);
-                                } catch (Exception e) {
-                                }
-                            }
-                        }
-                    }
-                };
-                new Timer().schedule(keepAliveTask, 5000, 10000);
-                
-                while (clientSocket.isConnected()) {
-                    try {
-                        CheckedBiConsumer<PlayerMoveEvent, Location, IOException> processMoveEvent = (event, originalTo) -> {
-                            if (event.isCancelled()) {
-                                Location returnTo = event.getFrom();
-                                PacketPlayOutPositionAndLook cancel = new PacketPlayOutPositionAndLook(returnTo.getX(), returnTo.getY(), returnTo.getZ(), returnTo.getYaw(), returnTo.getPitch(), 1);
-                                sendPacket(cancel);
-                            } else {
-                                Location to = event.getTo();
-                                Limbo.getInstance().getUnsafe().a(player, to);
-                                // If an event handler used setTo, let's make sure we tell the player about it.
-                                if (!originalTo.equals(to)) {
-                                    PacketPlayOutPositionAndLook pos = new PacketPlayOutPositionAndLook(to.getX(), to.getY(), to.getZ(), to.getYaw(), to.getPitch(), 1);
-                                    sendPacket(pos);
-                                }
-                                PacketPlayOutUpdateViewPosition response = new PacketPlayOutUpdateViewPosition((int) player.getLocation().getX() >> 4, (int) player.getLocation().getZ() >> 4);
-                                sendPacket(response);
-                            }
-                        };
-
-                        PacketIn packetIn = channel.readPacket();
-
-                        if (packetIn instanceof PacketPlayInPositionAndLook) {
-                            PacketPlayInPositionAndLook pos = (PacketPlayInPositionAndLook) packetIn;
-                            Location from = player.getLocation();
-                            Location to = new Location(player.getWorld(), pos.getX(), pos.getY(), pos.getZ(), pos.getYaw(), pos.getPitch());
-
-                            if (!from.equals(to)) {
-                                PlayerMoveEvent event = Limbo.getInstance().getEventsManager().callEvent(new PlayerMoveEvent(player, from, to));
-                                processMoveEvent.consume(event, to);
-                            }
-                        } else if (packetIn instanceof PacketPlayInPosition) {
-                            PacketPlayInPosition pos = (PacketPlayInPosition) packetIn;
-                            Location from = player.getLocation();
-                            Location to = new Location(player.getWorld(), pos.getX(), pos.getY(), pos.getZ(), player.getLocation().getYaw(), player.getLocation().getPitch());
-
-                            if (!from.equals(to)) {
-                                PlayerMoveEvent event = Limbo.getInstance().getEventsManager().callEvent(new PlayerMoveEvent(player, from, to));
-                                processMoveEvent.consume(event, to);
-                            }
-                        } else if (packetIn instanceof PacketPlayInRotation) {
-                            PacketPlayInRotation pos = (PacketPlayInRotation) packetIn;
-                            Location from = player.getLocation();
-                            Location to = new Location(player.getWorld(), player.getLocation().getX(), player.getLocation().getY(), player.getLocation().getZ(), pos.getYaw(), pos.getPitch());
-
-                            if (!from.equals(to)) {
-                                PlayerMoveEvent event = Limbo.getInstance().getEventsManager().callEvent(new PlayerMoveEvent(player, from, to));
-                                processMoveEvent.consume(event, to);
-                            }
-                        } else if (packetIn instanceof PacketPlayInKeepAlive) {
-                            long lastPayload = getLastKeepAlivePayLoad();
-                            PacketPlayInKeepAlive alive = (PacketPlayInKeepAlive) packetIn;
-                            if (lastPayload == -1) {
-                                Limbo.getInstance().getConsole().sendMessage("Unsolicited KeepAlive packet for player " + player.getName());
-                            } else if (alive.getPayload() != lastPayload) {
-                                Limbo.getInstance().getConsole().sendMessage("Incorrect Payload received in KeepAlive packet for player " + player.getName());
-                                break;
-                            }
-                        } else if (packetIn instanceof PacketPlayInTabComplete) {
-                            PacketPlayInTabComplete request = (PacketPlayInTabComplete) packetIn;
-                            String[] command = CustomStringUtils.splitStringToArgs(request.getText().substring(1));
-
-                            List<TabCompleteMatches> matches = new ArrayList<>(Limbo.getInstance().getPluginManager().getTabOptions(player, command).stream().map(each -> new TabCompleteMatches(each)).collect(Collectors.toList()));
-
-                            int start = CustomStringUtils.getIndexOfArg(request.getText(), command.length - 1) + 1;
-                            int length = command[command.length - 1].length();
-
-                            PacketPlayOutTabComplete response = new PacketPlayOutTabComplete(request.getId(), start, length, matches.toArray(new TabCompleteMatches[matches.size()]));
-                            sendPacket(response);
-                        } else if (packetIn instanceof PacketPlayInChat) {
-                            PacketPlayInChat chat = (PacketPlayInChat) packetIn;
-                            player.chat(chat.getMessage(), true, chat.getSignature(), chat.getTime());
-                        } else if (packetIn instanceof ServerboundChatCommandPacket) {
-                            ServerboundChatCommandPacket command = (ServerboundChatCommandPacket) packetIn;
-                            Limbo.getInstance().dispatchCommand(player, "/" + command.getCommand());
-                        } else if (packetIn instanceof PacketPlayInHeldItemChange) {
-                            PacketPlayInHeldItemChange change = (PacketPlayInHeldItemChange) packetIn;
-                            PlayerSelectedSlotChangeEvent event = Limbo.getInstance().getEventsManager().callEvent(new PlayerSelectedSlotChangeEvent(player, (byte) change.getSlot()));
-                            if (event.isCancelled()) {
-                                PacketPlayOutHeldItemChange cancelPacket = new PacketPlayOutHeldItemChange(player.getSelectedSlot());
-                                sendPacket(cancelPacket);
-                            } else if (change.getSlot() != event.getSlot()) {
-                                PacketPlayOutHeldItemChange changePacket = new PacketPlayOutHeldItemChange(event.getSlot());
-                                sendPacket(changePacket);
-                                Limbo.getInstance().getUnsafe().a(player, event.getSlot());
-                            } else {
-                                Limbo.getInstance().getUnsafe().a(player, event.getSlot());
-                            }
-
-                        } else if (packetIn instanceof ServerboundResourcePackPacket) {
-                            ServerboundResourcePackPacket rpcheck = (ServerboundResourcePackPacket) packetIn;
-                            // Pass on result to the events
-                            Limbo.getInstance().getEventsManager().callEvent(new PlayerResourcePackStatusEvent(player, rpcheck.getAction()));
-                            if (rpcheck.getAction().equals(Action.DECLINED) && properties.getResourcePackRequired()) {
-                                player.disconnect(new TranslatableComponent("multiplayer.requiredTexturePrompt.disconnect"));
-                            }
-                        } else if (packetIn instanceof PacketPlayInPluginMessaging) {
-                            PacketPlayInPluginMessaging inPluginMessaging = (PacketPlayInPluginMessaging) packetIn;
-                            Limbo.getInstance().getEventsManager().callEvent(new PluginMessageEvent(player, inPluginMessaging.getChannel(), inPluginMessaging.getData()));
-                        } else if (packetIn instanceof PacketPlayInBlockPlace) {
-                            PacketPlayInBlockPlace packet = (PacketPlayInBlockPlace) packetIn;
-                            Limbo.getInstance().getEventsManager().callEvent(new PlayerInteractEvent(player, PlayerInteractEvent.Action.RIGHT_CLICK_AIR, player.getEquipment().getItem(packet.getHand()), null, null, packet.getHand()));
-                        } else if (packetIn instanceof PacketPlayInUseItem) {
-                            PacketPlayInUseItem packet = (PacketPlayInUseItem) packetIn;
-                            BlockState block = player.getWorld().getBlock(packet.getBlockHit().getBlockPos());
-                            Limbo.getInstance().getEventsManager().callEvent(new PlayerInteractEvent(player, PlayerInteractEvent.Action.RIGHT_CLICK_AIR, player.getEquipment().getItem(packet.getHand()), block, packet.getBlockHit().getDirection(), packet.getHand()));
-                        } else if (packetIn instanceof PacketPlayInSetCreativeSlot) {
-                            PacketPlayInSetCreativeSlot packet = (PacketPlayInSetCreativeSlot) packetIn;
-                            InventoryCreativeEvent event = Limbo.getInstance().getEventsManager().callEvent(new InventoryCreativeEvent(player.getInventoryView(), player.getInventory().getUnsafe().b().applyAsInt(packet.getSlotNumber()), packet.getItemStack()));
-                            if (event.isCancelled()) {
-                                player.updateInventory();
-                            } else {
-                                player.getInventory().setItem(event.getSlot(), event.getNewItem());
-                            }
-                        } else if (packetIn instanceof PacketPlayInWindowClick) {
-                            PacketPlayInWindowClick packet = (PacketPlayInWindowClick) packetIn;
-                            try {
-                                InventoryClickUtils.handle(player, packet);
-                            } catch (Throwable e) {
-                                e.printStackTrace();
-                            }
-                        } else if (packetIn instanceof PacketPlayInCloseWindow) {
-                            PacketPlayInCloseWindow packet = (PacketPlayInCloseWindow) packetIn;
-                            Inventory inventory = player.getInventoryView().getTopInventory();
-                            if (inventory != null) {
-                                Integer id = inventory.getUnsafe().c().get(player);
-                                if (id != null) {
-                                    Limbo.getInstance().getEventsManager().callEvent(new InventoryCloseEvent(player.getInventoryView()));
-                                    player.getInventoryView().getUnsafe().a(null, null);
-                                    inventory.getUnsafe().c().remove(player);
-                                }
-                            }
-                        } else if (packetIn instanceof PacketPlayInBlockDig) {
-                            PacketPlayInBlockDig packet = (PacketPlayInBlockDig) packetIn;
-                            //noinspection SwitchStatementWithTooFewBranches
-                            switch (packet.getAction()) {
-                                case SWAP_ITEM_WITH_OFFHAND: {
-                                    EntityEquipment equipment = player.getEquipment();
-                                    PlayerSwapHandItemsEvent event = Limbo.getInstance().getEventsManager().callEvent(new PlayerSwapHandItemsEvent(player, equipment.getItemInOffHand(), equipment.getItemInMainHand()));
-                                    if (!event.isCancelled()) {
-                                        equipment.setItemInMainHand(event.getMainHandItem());
-                                        equipment.setItemInOffHand(event.getOffHandItem());
-                                    }
-                                    break;
-                                }
-                            }
-                        } else if (packetIn instanceof PacketPlayInPickItem) {
-                            PacketPlayInPickItem packet = (PacketPlayInPickItem) packetIn;
-                            PlayerInventory inventory = player.getInventory();
-                            int slot = inventory.getUnsafe().b().applyAsInt(packet.getSlot());
-                            int i = player.getSelectedSlot();
-                            byte selectedSlot = -1;
-                            boolean firstRun = true;
-                            while (selectedSlot < 0 || (!firstRun && i == player.getSelectedSlot())) {
-                                ItemStack itemStack = inventory.getItem(i);
-                                if (itemStack == null) {
-                                    selectedSlot = (byte) i;
-                                    break;
-                                }
-                                if (++i >= 9) {
-                                    i = 0;
-                                }
-                            }
-                            if (selectedSlot < 0) {
-                                selectedSlot = player.getSelectedSlot();
-                            }
-                            ItemStack leavingHotbar = inventory.getItem(selectedSlot);
-                            inventory.setItem(selectedSlot, inventory.getItem(slot));
-                            inventory.setItem(slot, leavingHotbar);
-                            player.setSelectedSlot(selectedSlot);
-                        } else if (packetIn instanceof PacketPlayInItemName) {
-                            PacketPlayInItemName packet = (PacketPlayInItemName) packetIn;
-                            if (player.getInventoryView().getTopInventory() instanceof AnvilInventory) {
-                                AnvilRenameInputEvent event = Limbo.getInstance().getEventsManager().callEvent(new AnvilRenameInputEvent(player.getInventoryView(), packet.getName()));
-                                if (!event.isCancelled()) {
-                                    AnvilInventory anvilInventory = (AnvilInventory) player.getInventoryView().getTopInventory();
-                                    ItemStack result = anvilInventory.getItem(2);
-                                    if (result != null) {
-                                        result.displayName(LegacyComponentSerializer.legacySection().deserialize(event.getInput()));
-                                    }
-                                }
-                            }
-                        }
-                    } catch (Exception ignored) {
-                        break;
+            }
+            if (selectedSlot < 0) {
+                selectedSlot = player.getSelectedSlot();
+            }
+            ItemStack leavingHotbar = inventory.getItem(selectedSlot);
+            inventory.setItem(selectedSlot, inventory.getItem(slot));
+            inventory.setItem(slot, leavingHotbar);
+            player.setSelectedSlot(selectedSlot);
+        } else if (packetIn instanceof PacketPlayInItemName) {
+            PacketPlayInItemName packet = (PacketPlayInItemName) packetIn;
+            if (player.getInventoryView().getTopInventory() instanceof AnvilInventory) {
+                AnvilRenameInputEvent event = Limbo.getInstance().getEventsManager().callEvent(new AnvilRenameInputEvent(player.getInventoryView(), packet.getName()));
+                if (!event.isCancelled()) {
+                    AnvilInventory anvilInventory = (AnvilInventory) player.getInventoryView().getTopInventory();
+                    ItemStack result = anvilInventory.getItem(2);
+                    if (result != null) {
+                        result.displayName(LegacyComponentSerializer.legacySection().deserialize(event.getInput()));
                     }
                 }
+            }
+        }
+    }
 
-                Limbo.getInstance().getEventsManager().callEvent(new PlayerQuitEvent(player));
+    private void finishConnection() {
+        if (!finished.compareAndSet(false, true)) {
+            return;
+        }
+        if (keepAliveTask != null) {
+            keepAliveTask.cancel();
+        }
+        if (ready) {
+            Limbo.getInstance().getEventsManager().callEvent(new PlayerQuitEvent(player));
 
-                str = (properties.isLogPlayerIPAddresses() ? inetAddress.getHostName() : "<ip address withheld>") + ":" + clientSocket.getPort() + "|" + player.getName();
-                Limbo.getInstance().getConsole().sendMessage("[/" + str + "] <-> Player had disconnected!");
-            }
-        } catch (Exception ignored) {
+            ServerProperties properties = Limbo.getInstance().getServerProperties();
+            String str = (properties.isLogPlayerIPAddresses() ? inetAddress.getHostName() : "<ip address withheld>") + ":" + clientSocket.getPort() + "|" + player.getName();
+            Limbo.getInstance().getConsole().sendMessage("[/" + str + "] <-> Player had disconnected!");
         }
 
         try {
-            channel.close();
+            if (channel != null) {
+                channel.close();
+            }
             clientSocket.close();
         } catch (Exception ignored) {
         }
@@ -0,0 +1,135 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.network;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class EventLoop extends Thread {
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks;
+    private final AtomicBoolean wakenUp;
+    private volatile boolean running;
+
+    EventLoop(String name) throws IOException {
+        super(name);
+        this.selector = Selector.open();
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.wakenUp = new AtomicBoolean(false);
+        this.running = true;
+    }
+
+    public boolean inEventLoop() {
+        return Thread.currentThread() == this;
+    }
+
+    public void execute(Runnable task) {
+        tasks.offer(task);
+        if (!inEventLoop() && wakenUp.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    void register(NioChannel channel) {
+        execute(() -> {
+            try {
+                SelectionKey key = channel.getSocketChannel().register(selector, SelectionKey.OP_READ, channel);
+                channel.channelRegistered(key);
+            } catch (IOException e) {
+                channel.closeNow();
+            }
+        });
+    }
+
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                wakenUp.set(false);
+                if (tasks.isEmpty()) {
+                    selector.select();
+                } else {
+                    selector.selectNow();
+                }
+                processSelectedKeys();
+                runTasks();
+            } catch (Throwable e) {
+                e.printStackTrace();
+            }
+        }
+        for (SelectionKey key : selector.keys()) {
+            Object attachment = key.attachment();
+            if (attachment instanceof NioChannel) {
+                ((NioChannel) attachment).closeNow();
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException ignore) {
+        }
+    }
+
+    private void processSelectedKeys() {
+        Iterator<SelectionKey> itr = selector.selectedKeys().iterator();
+        while (itr.hasNext()) {
+            SelectionKey key = itr.next();
+            itr.remove();
+            NioChannel channel = (NioChannel) key.attachment();
+            try {
+                if (!key.isValid()) {
+                    channel.closeNow();
+                    continue;
+                }
+                if (key.isWritable()) {
+                    channel.flushNow();
+                }
+                if (key.isValid() && key.isReadable()) {
+                    channel.readNow();
+                }
+            } catch (CancelledKeyException e) {
+                channel.closeNow();
+            }
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Throwable e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.network;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class EventLoopGroup {
+
+    private final EventLoop[] eventLoops;
+    private final AtomicInteger nextIndex;
+    private final ExecutorService workerExecutor;
+    private final ScheduledExecutorService timer;
+
+    public EventLoopGroup(int eventLoopThreads, int workerThreads) throws IOException {
+        this.eventLoops = new EventLoop[eventLoopThreads];
+        this.nextIndex = new AtomicInteger(0);
+        for (int i = 0; i < eventLoopThreads; i++) {
+            EventLoop eventLoop = new EventLoop("Limbo-EventLoop-" + i);
+            eventLoop.setDaemon(true);
+            eventLoops[i] = eventLoop;
+        }
+        this.workerExecutor = Executors.newFixedThreadPool(workerThreads, namedThreadFactory("Limbo-NetworkWorker-"));
+        this.timer = Executors.newSingleThreadScheduledExecutor(namedThreadFactory("Limbo-NetworkTimer-"));
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.start();
+        }
+    }
+
+    private static ThreadFactory namedThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger(0);
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public EventLoop next() {
+        return eventLoops[Math.floorMod(nextIndex.getAndIncrement(), eventLoops.length)];
+    }
+
+    public ExecutorService getWorkerExecutor() {
+        return workerExecutor;
+    }
+
+    public ScheduledExecutorService getTimer() {
+        return timer;
+    }
+
+    public void shutdown() {
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.shutdown();
+        }
+        workerExecutor.shutdown();
+        timer.shutdown();
+    }
+
+}
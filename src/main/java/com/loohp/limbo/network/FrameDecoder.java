@@ -0,0 +1,104 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.network;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Splits the bytes read from a non-blocking connection into VarInt length prefixed frames.
+ */
+final class FrameDecoder {
+
+    enum Result {
+
+        /**
+         * Every complete frame was passed on, the buffer is left at the start of the incomplete one if any.
+         */
+        NEED_MORE,
+        /**
+         * The connection opened with a pre-netty server list ping instead of a handshake.
+         */
+        LEGACY_PING,
+        /**
+         * A frame length was malformed or out of range, the connection should be closed.
+         */
+        INVALID
+
+    }
+
+    /**
+     * The first two bytes of a legacy ping, 0xFE 0x01, read as a VarInt frame length.
+     */
+    static final int LEGACY_PING_LENGTH = 0xFE;
+
+    private FrameDecoder() {
+    }
+
+    /**
+     * Passes every complete frame in the buffer to the consumer, the buffer must be in read mode.
+     *
+     * @param expectLegacyPing whether nothing has been received on the connection yet, so it may be a legacy ping
+     */
+    static Result decode(ByteBuffer buffer, boolean expectLegacyPing, Consumer<byte[]> frames) {
+        while (buffer.hasRemaining()) {
+            int start = buffer.position();
+            int length = readVarInt(buffer);
+            if (length == -1) {
+                buffer.position(start);
+                return Result.NEED_MORE;
+            }
+            if (expectLegacyPing && length == LEGACY_PING_LENGTH) {
+                return Result.LEGACY_PING;
+            }
+            if (length <= 0 || length > NioChannel.MAX_FRAME_LENGTH) {
+                return Result.INVALID;
+            }
+            if (buffer.remaining() < length) {
+                buffer.position(start);
+                return Result.NEED_MORE;
+            }
+            byte[] frame = new byte[length];
+            buffer.get(frame);
+            expectLegacyPing = false;
+            frames.accept(frame);
+        }
+        return Result.NEED_MORE;
+    }
+
+    /**
+     * @return the value, -1 if the buffer ends before the VarInt does, or {@link Integer#MAX_VALUE} if it is too long
+     */
+    static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int i = 0; i < 5; i++) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            byte b = buffer.get();
+            value |= (b & 0x7F) << (i * 7);
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        return Integer.MAX_VALUE;
+    }
+
+}
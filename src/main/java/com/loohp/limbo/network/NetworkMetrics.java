@@ -0,0 +1,85 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.network;
+
+import com.loohp.limbo.Limbo;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for the outbound queues of all connections.
+ */
+public class NetworkMetrics {
+
+    private static final LongAdder DROPPED_FRAMES = new LongAdder();
+    private static final LongAdder EVICTED_CLIENTS = new LongAdder();
+
+    static void framesDropped(int frames) {
+        DROPPED_FRAMES.add(frames);
+    }
+
+    static void clientEvicted() {
+        EVICTED_CLIENTS.increment();
+    }
+
+    /**
+     * The total number of frames that were discarded without being written, because the connection went over its
+     * outbound queue limit or was closed before they could be written.
+     */
+    public static long getDroppedFrames() {
+        return DROPPED_FRAMES.sum();
+    }
+
+    /**
+     * The total number of connections that were disconnected for not keeping up with their outbound queue.
+     */
+    public static long getEvictedClients() {
+        return EVICTED_CLIENTS.sum();
+    }
+
+    /**
+     * The bytes currently waiting in the outbound queues of all connections.
+     */
+    public static long getQueuedBytes() {
+        long bytes = 0;
+        for (ClientConnection client : Limbo.getInstance().getServerConnection().getClients()) {
+            Channel channel = client.getChannel();
+            if (channel != null) {
+                bytes += channel.getQueuedBytes();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * The largest outbound queue of any connection in bytes.
+     */
+    public static long getMaxQueuedBytes() {
+        long bytes = 0;
+        for (ClientConnection client : Limbo.getInstance().getServerConnection().getClients()) {
+            Channel channel = client.getChannel();
+            if (channel != null) {
+                bytes = Math.max(bytes, channel.getQueuedBytes());
+            }
+        }
+        return bytes;
+    }
+
+}
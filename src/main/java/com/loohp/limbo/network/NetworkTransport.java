@@ -0,0 +1,47 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.network;
+
+public enum NetworkTransport {
+
+    NIO("nio"),
+    THREAD("thread"),
+    VIRTUAL("virtual");
+
+    public static NetworkTransport fromName(String name) {
+        for (NetworkTransport transport : values()) {
+            if (transport.getName().equalsIgnoreCase(name)) {
+                return transport;
+            }
+        }
+        return null;
+    }
+
+    private final String name;
+
+    NetworkTransport(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+}
@@ -0,0 +1,297 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.network;
+
+import com.loohp.limbo.network.protocol.packets.PacketIn;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class NioChannel extends Channel {
+
+    public static final int MAX_FRAME_LENGTH = 2097151;
+    private static final int INITIAL_BUFFER_SIZE = 2048;
+    private static final int MAX_BUFFER_SIZE = MAX_FRAME_LENGTH + 3;
+    private static final int MAX_BUFFERS_PER_WRITE = 64;
+    private static final long CLOSE_TIMEOUT = 5000;
+    private static final int MAX_PENDING_FRAMES = 256;
+    private static final int RESUME_PENDING_FRAMES = MAX_PENDING_FRAMES / 2;
+
+    private final SocketChannel socketChannel;
+    private final EventLoop eventLoop;
+    private final ScheduledExecutorService timer;
+    private final ArrayDeque<OutboundQueue.Frame> flushingWrites;
+    private final AtomicBoolean flushScheduled;
+    private final AtomicBoolean closed;
+    private final AtomicInteger pendingFrames;
+    private final AtomicBoolean readSuspended;
+    private volatile boolean closing;
+    private volatile SelectionKey selectionKey;
+    private ByteBuffer inbound;
+    private boolean receivedFrame;
+
+    NioChannel(ClientConnection client, SocketChannel socketChannel, EventLoop eventLoop, ScheduledExecutorService timer) {
+        super(client);
+        this.socketChannel = socketChannel;
+        this.eventLoop = eventLoop;
+        this.timer = timer;
+        this.flushingWrites = new ArrayDeque<>();
+        this.flushScheduled = new AtomicBoolean(false);
+        this.closed = new AtomicBoolean(false);
+        this.pendingFrames = new AtomicInteger(0);
+        this.readSuspended = new AtomicBoolean(false);
+        this.closing = false;
+        this.inbound = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        this.receivedFrame = false;
+    }
+
+    public SocketChannel getSocketChannel() {
+        return socketChannel;
+    }
+
+    public EventLoop getEventLoop() {
+        return eventLoop;
+    }
+
+    void channelRegistered(SelectionKey selectionKey) {
+        this.selectionKey = selectionKey;
+        if (closed.get()) {
+            selectionKey.cancel();
+        }
+    }
+
+    void readNow() {
+        int read;
+        try {
+            read = socketChannel.read(inbound);
+        } catch (IOException e) {
+            closeNow();
+            return;
+        }
+        if (read < 0) {
+            closeNow();
+            return;
+        }
+        inbound.flip();
+        boolean expectLegacyPing = !receivedFrame && getClient().getClientState() == ClientConnection.ClientState.HANDSHAKE;
+        FrameDecoder.Result result = FrameDecoder.decode(inbound, expectLegacyPing, frame -> {
+            receivedFrame = true;
+            pendingFrames.incrementAndGet();
+            getClient().execute(() -> processFrame(frame));
+        });
+        if (result == FrameDecoder.Result.LEGACY_PING) {
+            receivedFrame = true;
+            inbound.clear();
+            selectionKey.interestOps(selectionKey.interestOps() & ~SelectionKey.OP_READ);
+            getClient().execute(getClient()::handleLegacyPing);
+            return;
+        }
+        if (result == FrameDecoder.Result.INVALID) {
+            closeNow();
+            return;
+        }
+        inbound.compact();
+        if (!inbound.hasRemaining() && inbound.capacity() < MAX_BUFFER_SIZE) {
+            ByteBuffer expanded = ByteBuffer.allocate(Math.min(inbound.capacity() * 2, MAX_BUFFER_SIZE));
+            inbound.flip();
+            expanded.put(inbound);
+            inbound = expanded;
+        }
+        if (pendingFrames.get() >= MAX_PENDING_FRAMES) {
+            suspendRead();
+        }
+    }
+
+    /**
+     * Stops reading while the worker pool is behind on this connection, so a client sending faster than its
+     * packets are handled is held back by TCP instead of queueing frames without bound.
+     */
+    private void suspendRead() {
+        readSuspended.set(true);
+        setReadInterest(false);
+        if (pendingFrames.get() <= RESUME_PENDING_FRAMES && readSuspended.compareAndSet(true, false)) {
+            setReadInterest(true);
+        }
+    }
+
+    private void resumeRead() {
+        if (!closing) {
+            setReadInterest(true);
+        }
+    }
+
+    private void processFrame(byte[] frame) {
+        try {
+            if (!isValid()) {
+                return;
+            }
+            PacketIn packet;
+            try {
+                packet = decodeFrame(frame);
+            } catch (Exception e) {
+                close();
+                return;
+            }
+            if (packet != null) {
+                getClient().processPacket(packet);
+            }
+        } finally {
+            int remaining = pendingFrames.decrementAndGet();
+            if (remaining <= RESUME_PENDING_FRAMES && readSuspended.compareAndSet(true, false)) {
+                eventLoop.execute(this::resumeRead);
+            }
+            if (remaining == 0 && hasBufferedData()) {
+                try {
+                    flush();
+                } catch (IOException ignore) {
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void flushTransport() {
+        scheduleFlush();
+    }
+
+    @Override
+    protected ScheduledExecutorService getFlushTimer() {
+        return timer;
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            eventLoop.execute(this::flushNow);
+        }
+    }
+
+    void flushNow() {
+        flushScheduled.set(false);
+        if (closed.get()) {
+            return;
+        }
+        OutboundQueue.Frame frame;
+        while ((frame = pollOutbound()) != null) {
+            flushingWrites.add(frame);
+        }
+        try {
+            ByteBuffer[] buffers = new ByteBuffer[MAX_BUFFERS_PER_WRITE];
+            while (!flushingWrites.isEmpty()) {
+                int count = 0;
+                for (OutboundQueue.Frame each : flushingWrites) {
+                    if (count + 2 > buffers.length) {
+                        break;
+                    }
+                    if (each.getPrefix() != null && each.getPrefix().hasRemaining()) {
+                        buffers[count++] = each.getPrefix();
+                    }
+                    buffers[count++] = each.getBody();
+                }
+                socketChannel.write(buffers, 0, count);
+                while (!flushingWrites.isEmpty() && !flushingWrites.peek().hasRemaining()) {
+                    OutboundQueue.Frame written = flushingWrites.poll();
+                    written.release();
+                    outboundWritten(written.length());
+                }
+                if (buffers[count - 1].hasRemaining()) {
+                    setWriteInterest(true);
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            closeNow();
+            return;
+        }
+        setWriteInterest(false);
+        if (closing && !hasOutbound()) {
+            closeNow();
+        }
+    }
+
+    private void setWriteInterest(boolean interested) {
+        setInterest(SelectionKey.OP_WRITE, interested);
+    }
+
+    private void setReadInterest(boolean interested) {
+        setInterest(SelectionKey.OP_READ, interested);
+    }
+
+    private void setInterest(int op, boolean interested) {
+        SelectionKey selectionKey = this.selectionKey;
+        if (selectionKey == null || !selectionKey.isValid()) {
+            return;
+        }
+        int ops = selectionKey.interestOps();
+        int newOps = interested ? ops | op : ops & ~op;
+        if (ops != newOps) {
+            selectionKey.interestOps(newOps);
+        }
+    }
+
+    /**
+     * Stops reading, writes out whatever is still queued and then closes the socket.
+     * The socket is closed forcibly if the client does not take the remaining data in time.
+     */
+    @Override
+    protected void closeTransport() {
+        if (closed.get()) {
+            return;
+        }
+        closing = true;
+        eventLoop.execute(() -> setReadInterest(false));
+        scheduleFlush();
+        try {
+            timer.schedule(this::closeNow, CLOSE_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            closeNow();
+        }
+    }
+
+    @Override
+    protected void abortTransport() {
+        closeNow();
+    }
+
+    void closeNow() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        SelectionKey selectionKey = this.selectionKey;
+        if (selectionKey != null) {
+            selectionKey.cancel();
+        }
+        try {
+            socketChannel.close();
+        } catch (IOException ignore) {
+        }
+        discardOutbound();
+        close();
+        getClient().channelInactive();
+    }
+
+}
@@ -0,0 +1,180 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.network;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The frames of a connection that are waiting to be written to the socket. Bytes are accounted from the time a
+ * frame is offered until it has been fully written. The queue stops being writable once it goes over the high
+ * water mark and becomes writable again when it drains below the low water mark.
+ */
+class OutboundQueue {
+
+    private final Queue<Frame> frames;
+    private final AtomicLong queuedBytes;
+    private final AtomicInteger queuedFrames;
+    private final long highWaterMark;
+    private final long lowWaterMark;
+    private final long limit;
+    private volatile boolean writable;
+    private volatile long unwritableSince;
+
+    OutboundQueue(long highWaterMark, long lowWaterMark, long limit) {
+        this.frames = new ConcurrentLinkedQueue<>();
+        this.queuedBytes = new AtomicLong(0);
+        this.queuedFrames = new AtomicInteger(0);
+        this.highWaterMark = highWaterMark;
+        this.lowWaterMark = lowWaterMark;
+        this.limit = limit;
+        this.writable = true;
+        this.unwritableSince = -1;
+    }
+
+    /**
+     * @return false if the frame would take the queue over its limit, the frame is not queued in that case
+     */
+    boolean offer(Frame frame) {
+        int length = frame.length();
+        long queued = queuedBytes.addAndGet(length);
+        if (queued > limit) {
+            queuedBytes.addAndGet(-length);
+            return false;
+        }
+        queuedFrames.incrementAndGet();
+        frames.offer(frame);
+        if (writable && queued > highWaterMark) {
+            unwritableSince = System.currentTimeMillis();
+            writable = false;
+        }
+        return true;
+    }
+
+    Frame poll() {
+        Frame frame = frames.poll();
+        if (frame != null) {
+            queuedFrames.decrementAndGet();
+        }
+        return frame;
+    }
+
+    boolean isEmpty() {
+        return frames.isEmpty();
+    }
+
+    /**
+     * Accounts for bytes of polled frames that made it to the socket.
+     */
+    void written(int length) {
+        long queued = queuedBytes.addAndGet(-length);
+        if (!writable && queued <= lowWaterMark) {
+            writable = true;
+            unwritableSince = -1;
+        }
+    }
+
+    /**
+     * Discards everything that is still queued, returning pooled buffers to their pool.
+     *
+     * @return the number of frames that were discarded
+     */
+    int clear() {
+        int discarded = 0;
+        Frame frame;
+        while ((frame = poll()) != null) {
+            frame.release();
+            discarded++;
+        }
+        queuedBytes.set(0);
+        return discarded;
+    }
+
+    boolean isWritable() {
+        return writable;
+    }
+
+    long getUnwritableSince() {
+        return unwritableSince;
+    }
+
+    long getQueuedBytes() {
+        return queuedBytes.get();
+    }
+
+    int getQueuedFrames() {
+        return queuedFrames.get();
+    }
+
+    long getLimit() {
+        return limit;
+    }
+
+    /**
+     * A queued frame, made of an optional length prefix and the frame body. The body is either shared with
+     * other connections, as for {@link PreparedPacket}s, or backed by a pooled {@link PacketBuffer} that is
+     * released once the frame has been written or discarded.
+     */
+    static final class Frame {
+
+        private final ByteBuffer prefix;
+        private final ByteBuffer body;
+        private final PacketBuffer pooled;
+        private final int length;
+
+        Frame(ByteBuffer prefix, ByteBuffer body, PacketBuffer pooled) {
+            this.prefix = prefix;
+            this.body = body;
+            this.pooled = pooled;
+            this.length = (prefix == null ? 0 : prefix.remaining()) + body.remaining();
+        }
+
+        Frame(ByteBuffer body) {
+            this(null, body, null);
+        }
+
+        ByteBuffer getPrefix() {
+            return prefix;
+        }
+
+        ByteBuffer getBody() {
+            return body;
+        }
+
+        int length() {
+            return length;
+        }
+
+        boolean hasRemaining() {
+            return (prefix != null && prefix.hasRemaining()) || body.hasRemaining();
+        }
+
+        void release() {
+            if (pooled != null) {
+                pooled.release();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,59 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.network;
+
+import com.loohp.limbo.network.protocol.packets.PacketOut;
+import com.loohp.limbo.player.Player;
+
+import java.io.IOException;
+
+/**
+ * Sends the same packet to many players while serializing it only once.
+ * Every connection still runs the packet through its own {@link ChannelPacketHandler}s,
+ * a connection whose handlers replace the packet gets the replacement serialized just for it.
+ */
+public class PacketBroadcaster {
+
+    public static void broadcast(PacketOut packet, Iterable<? extends Player> players) {
+        broadcast(new PreparedPacket(packet), players);
+    }
+
+    public static void broadcast(PreparedPacket packet, Iterable<? extends Player> players) {
+        for (Player player : players) {
+            try {
+                player.clientConnection.sendPacket(packet);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public static void broadcastToConnections(PacketOut packet, Iterable<? extends ClientConnection> connections) {
+        PreparedPacket preparedPacket = new PreparedPacket(packet);
+        for (ClientConnection connection : connections) {
+            try {
+                connection.sendPacket(preparedPacket);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+}
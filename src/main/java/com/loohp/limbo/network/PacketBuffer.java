@@ -0,0 +1,208 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.network;
+
+import com.loohp.limbo.network.protocol.packets.PacketOut;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A growable byte buffer that packets are serialized into. The first {@link #HEADROOM} bytes are kept free
+ * so that the frame length can be prepended in place once the packet is written, which lets a serialized
+ * packet go to the connection without being copied into a separate {@code byte[]} first.
+ * <p>
+ * Buffers are pooled, like the deflaters in {@link PacketCompression} the pool is shared instead of thread
+ * local so that virtual threads do not each hold on to their own buffer. Buffers that grew past
+ * {@link #MAX_RETAINED_CAPACITY} are not returned to the pool.
+ */
+public class PacketBuffer extends OutputStream {
+
+    public static final int HEADROOM = 5;
+    public static final int LENGTH_PREFIX_SIZE = 3;
+    private static final int DEFAULT_CAPACITY = 512;
+    private static final int MAX_RETAINED_CAPACITY = 262144;
+    private static final int MAX_POOLED = Math.max(16, Runtime.getRuntime().availableProcessors() * 4);
+
+    private static final Queue<PacketBuffer> POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOLED = new AtomicInteger(0);
+
+    public static PacketBuffer acquire(int sizeHint) {
+        PacketBuffer buffer = POOL.poll();
+        if (buffer == null) {
+            buffer = new PacketBuffer(Math.max(DEFAULT_CAPACITY, sizeHint + HEADROOM));
+        } else {
+            POOLED.decrementAndGet();
+            buffer.ensureWritable(sizeHint);
+        }
+        return buffer;
+    }
+
+    public static PacketBuffer acquire() {
+        return acquire(0);
+    }
+
+    /**
+     * Serializes the packet through a pooled buffer and returns a copy of the packet id and payload.
+     */
+    public static byte[] serialize(PacketOut packet) throws IOException {
+        PacketBuffer buffer = acquire(packet.getSizeHint());
+        try {
+            packet.serializePacket(buffer);
+            return buffer.toByteArray();
+        } finally {
+            buffer.release();
+        }
+    }
+
+    private byte[] array;
+    private int position;
+    private final DataOutputStream output;
+
+    private PacketBuffer(int capacity) {
+        this.array = new byte[capacity];
+        this.position = HEADROOM;
+        this.output = new DataOutputStream(this);
+    }
+
+    /**
+     * A {@link DataOutputStream} view of this buffer for the {@link com.loohp.limbo.utils.DataTypeIO} helpers.
+     */
+    public DataOutputStream getOutput() {
+        return output;
+    }
+
+    public void ensureWritable(int bytes) {
+        int required = position + bytes;
+        if (required > array.length) {
+            array = Arrays.copyOf(array, Math.max(required, array.length << 1));
+        }
+    }
+
+    @Override
+    public void write(int b) {
+        ensureWritable(1);
+        array[position++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+        ensureWritable(length);
+        System.arraycopy(bytes, offset, array, position, length);
+        position += length;
+    }
+
+    public void writeVarInt(int value) {
+        ensureWritable(5);
+        position = putVarInt(array, position, value);
+    }
+
+    /**
+     * Reserves room for a VarInt length prefix, the returned mark is passed to {@link #writeLengthPrefix(int)}
+     * once everything that the prefix covers has been written.
+     */
+    public int markLengthPrefix() {
+        ensureWritable(LENGTH_PREFIX_SIZE);
+        int mark = position;
+        position += LENGTH_PREFIX_SIZE;
+        return mark;
+    }
+
+    /**
+     * Fills in the length prefix reserved at the mark with the number of bytes written since, moving those
+     * bytes if the prefix ends up shorter or longer than the reserved space.
+     */
+    public void writeLengthPrefix(int mark) {
+        int start = mark + LENGTH_PREFIX_SIZE;
+        int length = position - start;
+        int prefixLength = varIntLength(length);
+        if (prefixLength != LENGTH_PREFIX_SIZE) {
+            int shift = prefixLength - LENGTH_PREFIX_SIZE;
+            if (shift > 0) {
+                ensureWritable(shift);
+            }
+            System.arraycopy(array, start, array, start + shift, length);
+            position += shift;
+        }
+        putVarInt(array, mark, length);
+    }
+
+    /**
+     * The number of bytes written, excluding the headroom.
+     */
+    public int size() {
+        return position - HEADROOM;
+    }
+
+    /**
+     * The backing array, the written bytes start at {@link #HEADROOM}.
+     */
+    public byte[] array() {
+        return array;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOfRange(array, HEADROOM, position);
+    }
+
+    /**
+     * Writes the length of the written bytes into the headroom right in front of them.
+     *
+     * @return the offset in {@link #array()} where the length prefixed frame starts
+     */
+    public int prependLength() {
+        int length = size();
+        int start = HEADROOM - varIntLength(length);
+        putVarInt(array, start, length);
+        return start;
+    }
+
+    public void reset() {
+        position = HEADROOM;
+    }
+
+    public void release() {
+        reset();
+        if (array.length <= MAX_RETAINED_CAPACITY && POOLED.incrementAndGet() <= MAX_POOLED) {
+            POOL.offer(this);
+        } else if (array.length <= MAX_RETAINED_CAPACITY) {
+            POOLED.decrementAndGet();
+        }
+    }
+
+    private static int varIntLength(int value) {
+        return (31 - Integer.numberOfLeadingZeros(value | 1)) / 7 + 1;
+    }
+
+    private static int putVarInt(byte[] array, int index, int value) {
+        while ((value & ~0x7F) != 0) {
+            array[index++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        array[index++] = (byte) value;
+        return index;
+    }
+
+}
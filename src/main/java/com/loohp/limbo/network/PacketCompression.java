@@ -0,0 +1,174 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.network;
+
+import com.loohp.limbo.utils.DataTypeIO;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compressed packet framing, used after the server has sent {@code minecraft:login_compression}.
+ * <p>
+ * Deflaters and inflaters are native resources, so they are kept in a small shared pool instead of
+ * being created per packet. The pool is not thread local so that thousands of virtual threads do not
+ * each end up holding on to their own instances.
+ */
+public class PacketCompression {
+
+    public static final int MAX_UNCOMPRESSED_LENGTH = 8388608;
+    private static final int MAX_POOLED = Math.max(16, Runtime.getRuntime().availableProcessors() * 4);
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final Queue<Deflater> DEFLATERS = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOLED_DEFLATERS = new AtomicInteger(0);
+    private static final Queue<Inflater> INFLATERS = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOLED_INFLATERS = new AtomicInteger(0);
+
+    private static Deflater acquireDeflater(int level) {
+        Deflater deflater = DEFLATERS.poll();
+        if (deflater == null) {
+            return new Deflater(level);
+        }
+        POOLED_DEFLATERS.decrementAndGet();
+        deflater.setLevel(level);
+        return deflater;
+    }
+
+    private static void releaseDeflater(Deflater deflater) {
+        deflater.reset();
+        if (POOLED_DEFLATERS.incrementAndGet() <= MAX_POOLED) {
+            DEFLATERS.offer(deflater);
+        } else {
+            POOLED_DEFLATERS.decrementAndGet();
+            deflater.end();
+        }
+    }
+
+    private static Inflater acquireInflater() {
+        Inflater inflater = INFLATERS.poll();
+        if (inflater == null) {
+            return new Inflater();
+        }
+        POOLED_INFLATERS.decrementAndGet();
+        return inflater;
+    }
+
+    private static void releaseInflater(Inflater inflater) {
+        inflater.reset();
+        if (POOLED_INFLATERS.incrementAndGet() <= MAX_POOLED) {
+            INFLATERS.offer(inflater);
+        } else {
+            POOLED_INFLATERS.decrementAndGet();
+            inflater.end();
+        }
+    }
+
+    private final int threshold;
+    private final int level;
+
+    public PacketCompression(int threshold, int level) {
+        this.threshold = threshold;
+        this.level = level;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Wraps a serialized packet (id and payload) into the body of a compressed frame,
+     * which is the uncompressed length followed by the zlib data, or 0 followed by the
+     * packet as is if the packet is below the threshold.
+     */
+    public byte[] compress(byte[] packet) throws IOException {
+        return compress(packet, 0, packet.length);
+    }
+
+    public byte[] compress(byte[] packet, int offset, int length) throws IOException {
+        if (length < threshold) {
+            byte[] body = new byte[length + 1];
+            System.arraycopy(packet, offset, body, 1, length);
+            return body;
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(length / 2 + 16);
+        DataTypeIO.writeVarInt(new DataOutputStream(buffer), length);
+        Deflater deflater = acquireDeflater(level);
+        try {
+            deflater.setInput(packet, offset, length);
+            deflater.finish();
+            byte[] chunk = new byte[Math.min(BUFFER_SIZE, length + 64)];
+            while (!deflater.finished()) {
+                int deflated = deflater.deflate(chunk);
+                buffer.write(chunk, 0, deflated);
+            }
+        } finally {
+            releaseDeflater(deflater);
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Unwraps the body of a compressed frame back into the serialized packet.
+     */
+    public byte[] decompress(byte[] body) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(body));
+        int dataLength = DataTypeIO.readVarInt(input);
+        int offset = DataTypeIO.getVarIntLength(dataLength);
+        if (dataLength == 0) {
+            return Arrays.copyOfRange(body, offset, body.length);
+        }
+        if (dataLength < threshold) {
+            throw new IOException("Badly compressed packet, size of " + dataLength + " is below the threshold of " + threshold);
+        }
+        if (dataLength > MAX_UNCOMPRESSED_LENGTH) {
+            throw new IOException("Badly compressed packet, size of " + dataLength + " is larger than the maximum of " + MAX_UNCOMPRESSED_LENGTH);
+        }
+        byte[] packet = new byte[dataLength];
+        Inflater inflater = acquireInflater();
+        try {
+            inflater.setInput(body, offset, body.length - offset);
+            int length = inflater.inflate(packet);
+            if (length != dataLength || !inflater.finished()) {
+                throw new IOException("Badly compressed packet, expected " + dataLength + " bytes but got " + length);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Badly compressed packet", e);
+        } finally {
+            releaseInflater(inflater);
+        }
+        return packet;
+    }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.network;
+
+import com.loohp.limbo.network.protocol.packets.PacketOut;
+
+import java.io.IOException;
+
+/**
+ * A packet that is serialized at most once no matter how many connections it is written to.
+ * The compressed form is cached as well, for the compression settings it was last requested with.
+ */
+public class PreparedPacket {
+
+    private final PacketOut packet;
+    private byte[] serialized;
+    private byte[] compressed;
+    private int compressedThreshold;
+    private int compressedLevel;
+
+    public PreparedPacket(PacketOut packet) {
+        this.packet = packet;
+        this.serialized = null;
+        this.compressed = null;
+    }
+
+    /**
+     * Creates a prepared packet from the output of an earlier {@link #getSerialized()} of the same packet.
+     */
+    public PreparedPacket(PacketOut packet, byte[] serialized) {
+        this.packet = packet;
+        this.serialized = serialized;
+        this.compressed = null;
+    }
+
+    public PacketOut getPacket() {
+        return packet;
+    }
+
+    public synchronized byte[] getSerialized() throws IOException {
+        if (serialized == null) {
+            serialized = packet.serializePacket();
+        }
+        return serialized;
+    }
+
+    synchronized byte[] getFrame(PacketCompression compression) throws IOException {
+        byte[] serialized = getSerialized();
+        if (compression == null) {
+            return serialized;
+        }
+        if (compressed == null || compressedThreshold != compression.getThreshold() || compressedLevel != compression.getLevel()) {
+            compressed = compression.compress(serialized);
+            compressedThreshold = compression.getThreshold();
+            compressedLevel = compression.getLevel();
+        }
+        return compressed;
+    }
+
+}
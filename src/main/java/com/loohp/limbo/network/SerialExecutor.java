@@ -0,0 +1,119 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.network;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the tasks of a single connection one after another, in submission order,
+ * on a shared executor.
+ */
+class SerialExecutor implements Executor {
+
+    private static final int MAX_TASKS_PER_RUN = 64;
+
+    private final Executor executor;
+    private final ScheduledExecutorService timer;
+    private final Deque<Runnable> tasks;
+    private boolean scheduled;
+    private boolean paused;
+
+    SerialExecutor(Executor executor, ScheduledExecutorService timer) {
+        this.executor = executor;
+        this.timer = timer;
+        this.tasks = new ArrayDeque<>();
+        this.scheduled = false;
+        this.paused = false;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        synchronized (this) {
+            tasks.offer(task);
+            if (scheduled || paused) {
+                return;
+            }
+            scheduled = true;
+        }
+        submit();
+    }
+
+    /**
+     * Runs the task after the given delay, ahead of anything queued in the meantime.
+     * Nothing else is run on this executor until the task has been run.
+     */
+    void executeLater(long delayMillis, Runnable task) {
+        synchronized (this) {
+            paused = true;
+        }
+        timer.schedule(() -> {
+            synchronized (this) {
+                tasks.addFirst(task);
+                paused = false;
+                if (scheduled) {
+                    return;
+                }
+                scheduled = true;
+            }
+            submit();
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void submit() {
+        try {
+            executor.execute(this::run);
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                scheduled = false;
+                tasks.clear();
+            }
+        }
+    }
+
+    private void run() {
+        for (int i = 0; i < MAX_TASKS_PER_RUN; i++) {
+            Runnable task;
+            synchronized (this) {
+                if (paused || (task = tasks.poll()) == null) {
+                    scheduled = false;
+                    return;
+                }
+            }
+            try {
+                task.run();
+            } catch (Throwable e) {
+                e.printStackTrace();
+            }
+        }
+        synchronized (this) {
+            if (paused || tasks.isEmpty()) {
+                scheduled = false;
+                return;
+            }
+        }
+        submit();
+    }
+
+}
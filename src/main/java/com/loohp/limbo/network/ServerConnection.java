@@ -20,13 +20,19 @@
 package com.loohp.limbo.network;
 
 import com.loohp.limbo.Limbo;
+import com.loohp.limbo.file.ServerProperties;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.ArrayList;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 public class ServerConnection extends Thread {
 
@@ -34,10 +40,13 @@ public class ServerConnection extends Thread {
 	private final int port;
 	private final boolean silent;
 	private ServerSocket serverSocket;
+	private EventLoopGroup eventLoopGroup;
+	private BlockingWriterPool writerPool;
 	private List<ClientConnection> clients;
+	private volatile boolean closed;
 
 	public ServerConnection(String ip, int port, boolean silent) {
-		this.clients = new ArrayList<>();
+		this.clients = new CopyOnWriteArrayList<>();
 		this.ip = ip;
 		this.port = port;
 		this.silent = silent;
@@ -46,6 +55,63 @@ public class ServerConnection extends Thread {
 	
 	@Override
 	public void run() {
+		ServerProperties properties = Limbo.getInstance().getServerProperties();
+		switch (properties.getNetworkTransport()) {
+			case NIO:
+				runEventLoops(properties.getNetworkEventLoopThreads(), properties.getNetworkWorkerThreads());
+				break;
+			case VIRTUAL:
+				if (ConnectionThreads.isVirtualThreadsSupported()) {
+					runBlocking(properties, true);
+				} else {
+					Limbo.getInstance().getConsole().sendMessage("Virtual threads require Java 21 or above, falling back to platform threads");
+					runBlocking(properties, false);
+				}
+				break;
+			default:
+				runBlocking(properties, false);
+				break;
+		}
+	}
+
+	private void runEventLoops(int eventLoopThreads, int workerThreads) {
+		try {
+			ServerSocketChannel serverChannel = ServerSocketChannel.open();
+			serverChannel.bind(new InetSocketAddress(InetAddress.getByName(ip), port), 50);
+			serverSocket = serverChannel.socket();
+			eventLoopGroup = new EventLoopGroup(eventLoopThreads, workerThreads);
+			if (!silent) {
+				Limbo.getInstance().getConsole().sendMessage("Limbo server listening on /" + serverSocket.getInetAddress().getHostName() + ":" + serverSocket.getLocalPort() + " using " + eventLoopThreads + " event loop threads");
+			}
+			while (true) {
+				SocketChannel connection = serverChannel.accept();
+				try {
+					connection.configureBlocking(false);
+					connection.socket().setKeepAlive(true);
+				} catch (IOException e) {
+					connection.close();
+					continue;
+				}
+				EventLoop eventLoop = eventLoopGroup.next();
+				ClientConnection sc = new ClientConnection(connection, eventLoop, eventLoopGroup);
+				clients.add(sc);
+				eventLoop.register((NioChannel) sc.getChannel());
+			}
+		} catch (IOException e) {
+			if (!closed) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Serves every connection on its own thread for reading, writes go through a shared writer pool that only
+	 * holds a thread while a connection has data to write.
+	 */
+	private void runBlocking(ServerProperties properties, boolean virtual) {
+		ThreadFactory threadFactory = ConnectionThreads.newThreadFactory(virtual ? "Limbo-VirtualConnection-" : "Limbo-Connection-", virtual);
+		ThreadFactory writerThreadFactory = BlockingWriterPool.daemon(ConnectionThreads.newThreadFactory(virtual ? "Limbo-VirtualWriter-" : "Limbo-Writer-", virtual));
+		writerPool = new BlockingWriterPool(writerThreadFactory, properties.getNetworkSlowClientTimeout());
 		try {
 			serverSocket = new ServerSocket(port, 50, InetAddress.getByName(ip));
 			if (!silent) {
@@ -53,19 +119,64 @@ public class ServerConnection extends Thread {
 			}
 	        while (true) {
 	            Socket connection = serverSocket.accept();
-	            ClientConnection sc = new ClientConnection(connection);
+	            ClientConnection sc = new ClientConnection(connection, writerPool);
 	            clients.add(sc);
-	            sc.start();
+	            threadFactory.newThread(sc).start();
 	        }
 	    } catch(IOException e) {
-	        e.printStackTrace();
+	        if (!closed) {
+	        	e.printStackTrace();
+	        }
 	    }
 	}
 
+	/**
+	 * Stops accepting connections and closes the open ones, giving them up to the given time to write out what is
+	 * still queued before the nio event loops, workers and writer pool are shut down.
+	 */
+	public void close(long waitTime) {
+		closed = true;
+		try {
+			if (serverSocket != null) {
+				serverSocket.close();
+			}
+		} catch (IOException ignore) {
+		}
+		for (ClientConnection client : clients) {
+			Channel channel = client.getChannel();
+			if (channel != null) {
+				channel.close();
+			}
+		}
+		long end = System.currentTimeMillis() + waitTime;
+		while (!clients.isEmpty() && System.currentTimeMillis() < end) {
+			try {
+				TimeUnit.MILLISECONDS.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		if (eventLoopGroup != null) {
+			eventLoopGroup.shutdown();
+		}
+		if (writerPool != null) {
+			writerPool.shutdown();
+		}
+	}
+
 	public ServerSocket getServerSocket() {
 		return serverSocket;
 	}
 
+	public EventLoopGroup getEventLoopGroup() {
+		return eventLoopGroup;
+	}
+
+	public BlockingWriterPool getWriterPool() {
+		return writerPool;
+	}
+
 	public List<ClientConnection> getClients() {
 		return clients;
 	}
@@ -0,0 +1,112 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.network;
+
+import com.loohp.limbo.Limbo;
+import com.loohp.limbo.network.protocol.packets.PacketStatusOutResponse;
+import net.kyori.adventure.text.Component;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Caches the server list response. The JSON is kept as a template split around the online player count, so it is
+ * only serialized again when the version, MOTD, max players or favicon change, and the response packet is only
+ * rebuilt when the online player count changes as well.
+ */
+public class StatusResponseCache {
+
+    private static final int PLAYERS_ONLINE_PLACEHOLDER = Integer.MIN_VALUE;
+    private static final String PLAYERS_ONLINE_KEY = "\"online\":";
+    private static final String PLAYERS_ONLINE_TOKEN = PLAYERS_ONLINE_KEY + PLAYERS_ONLINE_PLACEHOLDER;
+
+    private volatile Template template;
+    private volatile Response response;
+
+    public PreparedPacket getResponse(String version, int protocol, Component motd, int maxPlayers, int playersOnline, BufferedImage favicon) throws IOException {
+        Template template = this.template;
+        if (template == null || !template.matches(version, protocol, motd, maxPlayers, favicon)) {
+            template = new Template(version, protocol, motd, maxPlayers, favicon);
+            this.template = template;
+        }
+        Response response = this.response;
+        if (response == null || response.template != template || response.playersOnline != playersOnline) {
+            response = new Response(template, playersOnline);
+            this.response = response;
+        }
+        return response.packet;
+    }
+
+    public void invalidate() {
+        template = null;
+        response = null;
+    }
+
+    private static class Template {
+
+        private final String version;
+        private final int protocol;
+        private final Component motd;
+        private final int maxPlayers;
+        private final BufferedImage favicon;
+        private final String prefix;
+        private final String suffix;
+
+        private Template(String version, int protocol, Component motd, int maxPlayers, BufferedImage favicon) throws IOException {
+            this.version = version;
+            this.protocol = protocol;
+            this.motd = motd;
+            this.maxPlayers = maxPlayers;
+            this.favicon = favicon;
+            String json = Limbo.getInstance().buildServerListResponseJson(version, protocol, motd, maxPlayers, PLAYERS_ONLINE_PLACEHOLDER, favicon);
+            int index = json.indexOf(PLAYERS_ONLINE_TOKEN);
+            if (index < 0) {
+                throw new IOException("Server list response does not contain the online player count");
+            }
+            this.prefix = json.substring(0, index + PLAYERS_ONLINE_KEY.length());
+            this.suffix = json.substring(index + PLAYERS_ONLINE_TOKEN.length());
+        }
+
+        private boolean matches(String version, int protocol, Component motd, int maxPlayers, BufferedImage favicon) {
+            return this.protocol == protocol && this.maxPlayers == maxPlayers && this.favicon == favicon && Objects.equals(this.version, version) && Objects.equals(this.motd, motd);
+        }
+
+        private String toJson(int playersOnline) {
+            return prefix + playersOnline + suffix;
+        }
+
+    }
+
+    private static class Response {
+
+        private final Template template;
+        private final int playersOnline;
+        private final PreparedPacket packet;
+
+        private Response(Template template, int playersOnline) {
+            this.template = template;
+            this.playersOnline = playersOnline;
+            this.packet = new PreparedPacket(new PacketStatusOutResponse(template.toJson(playersOnline)));
+        }
+
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.network.protocol.packets;
+
+import com.loohp.limbo.network.PacketBuffer;
+import com.loohp.limbo.registry.PacketRegistry;
+import com.loohp.limbo.utils.DataTypeIO;
+import com.loohp.limbo.world.BlockPosition;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+public class ClientboundBlockUpdatePacket extends PacketOut {
+
+	private final BlockPosition position;
+	private final int blockStateId;
+
+	public ClientboundBlockUpdatePacket(BlockPosition position, int blockStateId) {
+		this.position = position;
+		this.blockStateId = blockStateId;
+	}
+
+	public BlockPosition getPosition() {
+		return position;
+	}
+
+	public int getBlockStateId() {
+		return blockStateId;
+	}
+
+	@Override
+	public void serializePacket(PacketBuffer buffer) throws IOException {
+		DataOutputStream output = buffer.getOutput();
+		output.writeByte(PacketRegistry.getPacketId(getClass()));
+		DataTypeIO.writeBlockPosition(output, position);
+		DataTypeIO.writeVarInt(output, blockStateId);
+	}
+
+}
@@ -19,10 +19,10 @@
 
 package com.loohp.limbo.network.protocol.packets;
 
+import com.loohp.limbo.network.PacketBuffer;
 import com.loohp.limbo.registry.PacketRegistry;
 import com.loohp.limbo.utils.DataTypeIO;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 
@@ -39,15 +39,11 @@ public class ClientboundChunkBatchFinishedPacket extends PacketOut {
 	}
 
 	@Override
-	public byte[] serializePacket() throws IOException {
-		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-		
-		DataOutputStream output = new DataOutputStream(buffer);
+	public void serializePacket(PacketBuffer buffer) throws IOException {
+		DataOutputStream output = buffer.getOutput();
 		output.writeByte(PacketRegistry.getPacketId(getClass()));
 
 		DataTypeIO.writeVarInt(output, batchSize);
-		
-		return buffer.toByteArray();
 	}
 
 }
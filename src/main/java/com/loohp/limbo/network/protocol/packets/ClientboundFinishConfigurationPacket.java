@@ -19,9 +19,9 @@
 
 package com.loohp.limbo.network.protocol.packets;
 
+import com.loohp.limbo.network.PacketBuffer;
 import com.loohp.limbo.registry.PacketRegistry;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 
@@ -31,12 +31,8 @@ public class ClientboundFinishConfigurationPacket extends PacketOut {
     }
 
     @Override
-    public byte[] serializePacket() throws IOException {
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-
-        DataOutputStream output = new DataOutputStream(buffer);
+    public void serializePacket(PacketBuffer buffer) throws IOException {
+        DataOutputStream output = buffer.getOutput();
         output.writeByte(PacketRegistry.getPacketId(getClass()));
-
-        return buffer.toByteArray();
     }
 }
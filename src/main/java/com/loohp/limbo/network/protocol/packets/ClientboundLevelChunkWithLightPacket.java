@@ -19,70 +19,84 @@
 
 package com.loohp.limbo.network.protocol.packets;
 
+import com.loohp.limbo.network.PacketBuffer;
 import com.loohp.limbo.registry.BuiltInRegistries;
 import com.loohp.limbo.registry.PacketRegistry;
-import com.loohp.limbo.utils.BitsUtils;
 import com.loohp.limbo.utils.DataTypeIO;
+import com.loohp.limbo.world.ChunkSection;
 import com.loohp.limbo.world.Environment;
 import com.loohp.limbo.world.GeneratedBlockDataMappings;
 import net.kyori.adventure.key.Key;
 import net.querz.mca.Chunk;
-import net.querz.mca.Section;
 import net.querz.nbt.tag.CompoundTag;
 import net.querz.nbt.tag.ListTag;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.BitSet;
-import java.util.LinkedList;
-import java.util.List;
 
 public class ClientboundLevelChunkWithLightPacket extends PacketOut {
 
 	private final int chunkX;
 	private final int chunkZ;
 	private final Chunk chunk;
+	private final ChunkSection[] sections;
 	private final Environment environment;
 	private final long[] skyLightBitMasks;
 	private final long[] blockLightBitMasks;
 	private final long[] skyLightBitMasksEmpty;
 	private final long[] blockLightBitMasksEmpty;
-	private final List<Byte[]> skylightArrays;
-	private final List<Byte[]> blocklightArrays;
+	private final byte[][] skylightArrays;
+	private final byte[][] blocklightArrays;
 
-	public ClientboundLevelChunkWithLightPacket(int chunkX, int chunkZ, Chunk chunk, Environment environment, List<Byte[]> skylightArrays, List<Byte[]> blocklightArrays) {
+	public ClientboundLevelChunkWithLightPacket(int chunkX, int chunkZ, Chunk chunk, Environment environment, byte[][] skylightArrays, byte[][] blocklightArrays) {
+		this(chunkX, chunkZ, chunk, toSections(chunk), environment, skylightArrays, blocklightArrays);
+	}
+
+	public ClientboundLevelChunkWithLightPacket(int chunkX, int chunkZ, Chunk chunk, ChunkSection[] sections, Environment environment, byte[][] skylightArrays, byte[][] blocklightArrays) {
 		this.chunkX = chunkX;
 		this.chunkZ = chunkZ;
 		this.chunk = chunk;
+		this.sections = sections;
 		this.environment = environment;
 		this.skylightArrays = skylightArrays;
 		this.blocklightArrays = blocklightArrays;
 
 		BitSet skyLightBitSet = new BitSet();
 		BitSet skyLightBitSetInverse = new BitSet();
-		for (int i = Math.min(17, skylightArrays.size() - 1); i >= 0; i--) {
-			skyLightBitSet.set(i, skylightArrays.get(i) != null);
-			skyLightBitSetInverse.set(i, skylightArrays.get(i) == null);
+		for (int i = Math.min(17, skylightArrays.length - 1); i >= 0; i--) {
+			skyLightBitSet.set(i, skylightArrays[i] != null);
+			skyLightBitSetInverse.set(i, skylightArrays[i] == null);
 		}
 		skyLightBitMasks = skyLightBitSet.toLongArray();
 		skyLightBitMasksEmpty = skyLightBitSetInverse.toLongArray();
 
 		BitSet blockLightBitSet = new BitSet();
 		BitSet blockLightBitSetInverse = new BitSet();
-		for (int i = Math.min(17, blocklightArrays.size() - 1); i >= 0; i--) {
-			blockLightBitSet.set(i, blocklightArrays.get(i) != null);
-			blockLightBitSetInverse.set(i, blocklightArrays.get(i) == null);
+		for (int i = Math.min(17, blocklightArrays.length - 1); i >= 0; i--) {
+			blockLightBitSet.set(i, blocklightArrays[i] != null);
+			blockLightBitSetInverse.set(i, blocklightArrays[i] == null);
 		}
 		blockLightBitMasks = blockLightBitSet.toLongArray();
 		blockLightBitMasksEmpty = blockLightBitSetInverse.toLongArray();
 	}
 
+	private static ChunkSection[] toSections(Chunk chunk) {
+		ChunkSection[] sections = new ChunkSection[16];
+		for (int i = 0; i < sections.length; i++) {
+			sections[i] = ChunkSection.fromSection(chunk.getSection(i));
+		}
+		return sections;
+	}
+
 	public Chunk getChunk() {
 		return chunk;
 	}
 
+	public ChunkSection[] getSections() {
+		return sections;
+	}
+
 	public int getChunkX() {
 		return chunkX;
 	}
@@ -103,124 +117,31 @@ public class ClientboundLevelChunkWithLightPacket extends PacketOut {
 		return blockLightBitMasks;
 	}
 
-	public List<Byte[]> getSkylightArrays() {
+	public byte[][] getSkylightArrays() {
 		return skylightArrays;
 	}
 
-	public List<Byte[]> getBlocklightArrays() {
+	public byte[][] getBlocklightArrays() {
 		return blocklightArrays;
 	}
 
 	@Override
-	public byte[] serializePacket() throws IOException {
-		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+	public int getSizeHint() {
+		return 16384 + (skylightArrays.length + blocklightArrays.length) * 2051;
+	}
 
-		DataOutputStream output = new DataOutputStream(buffer);
+	@Override
+	public void serializePacket(PacketBuffer buffer) throws IOException {
+		DataOutputStream output = buffer.getOutput();
 		output.writeByte(PacketRegistry.getPacketId(getClass()));
 
 		output.writeInt(chunkX);
 		output.writeInt(chunkZ);
 		DataTypeIO.writeTag(output, chunk.getHeightMaps());
 
-		ByteArrayOutputStream dataBuffer = new ByteArrayOutputStream();
-		DataOutputStream dataOut = new DataOutputStream(dataBuffer);
+		int dataLength = buffer.markLengthPrefix();
 		for (int i = 0; i < 16; i++) {
-			Section section = chunk.getSection(i);
-			if (section != null) {
-				short counter = 0;
-				for (int x = 0; x < 16; x++) {
-					for (int z = 0; z < 16; z++) {
-						for (int y = 0; y < 16; y++) {
-							CompoundTag tag = section.getBlockStateAt(x, y, z);
-							if (tag != null && !tag.getString("Name").equals("minecraft:air")) {
-								counter++;
-							}
-						}
-					}
-				}
-				dataOut.writeShort(counter);
-
-				int newBits = 32 - Integer.numberOfLeadingZeros(section.getPalette().size() - 1);
-				newBits = Math.max(newBits, 4);
-				//Limbo.getInstance().getConsole().sendMessage(i + " " + newBits);
-				if (newBits <= 8) {
-					dataOut.writeByte(newBits);
-
-					DataTypeIO.writeVarInt(dataOut, section.getPalette().size());
-					//Limbo.getInstance().getConsole().sendMessage(section.getPalette().size());
-					//Limbo.getInstance().getConsole().sendMessage("Nonnull -> " + i + " " + newBits);
-					for (CompoundTag tag : section.getPalette()) {
-						DataTypeIO.writeVarInt(dataOut, GeneratedBlockDataMappings.getGlobalPaletteIDFromState(tag));
-						//Limbo.getInstance().getConsole().sendMessage(tag + " -> " + GeneratedDataUtils.getGlobalPaletteIDFromState(tag));
-					}
-
-					BitSet bits = BitSet.valueOf(section.getBlockStates());
-					int shift = 64 % newBits;
-					int longsNeeded = (int) Math.ceil(4096 / (double) (64 / newBits));
-					for (int u = 64; u <= bits.length(); u += 64) {
-						BitsUtils.shiftAfter(bits, u - shift, shift);
-					}
-
-					long[] formattedLongs = bits.toLongArray();
-					//Limbo.getInstance().getConsole().sendMessage(longsNeeded + "");
-
-					DataTypeIO.writeVarInt(dataOut, longsNeeded);
-					for (int u = 0; u < longsNeeded; u++) {
-						if (u < formattedLongs.length) {
-							dataOut.writeLong(formattedLongs[u]);
-						} else {
-							dataOut.writeLong(0);
-						}
-						//Limbo.getInstance().getConsole().sendMessage(Arrays.toString(section.getBlockStates()));
-					}
-				} else {
-					try {
-						dataOut.writeByte(16);
-						section.getBlockStates();
-						int longsNeeded = 1024;
-						List<Integer> list = new LinkedList<>();
-						for (int y = 0; y < 16; y++) {
-							for (int z = 0; z < 16; z++) {
-								for (int x = 0; x < 16; x++) {
-									list.add(GeneratedBlockDataMappings.getGlobalPaletteIDFromState(section.getBlockStateAt(x, y, z)));
-								}
-							}
-						}
-						List<Long> globalLongs = new ArrayList<>();
-						long currentLong = 0;
-						int pos = 0;
-						int u = 0;
-						while (pos < longsNeeded) {
-							if (u == 3) {
-								globalLongs.add(currentLong);
-								currentLong = 0;
-								u = 0;
-								pos++;
-							} else {
-								u++;
-							}
-							int id = list.isEmpty() ? 0 : list.remove(0);
-							currentLong = currentLong << 16;
-							currentLong |= id;
-						}
-						DataTypeIO.writeVarInt(dataOut, longsNeeded);
-						for (int j = 0; j < longsNeeded; j++) {
-							if (j < globalLongs.size()) {
-								dataOut.writeLong(globalLongs.get(j));
-							} else {
-								dataOut.writeLong(0);
-							}
-						}
-					} catch (Exception e) {
-						e.printStackTrace();
-					}
-				}
-			} else {
-				dataOut.writeShort(0);
-				dataOut.writeByte(0);
-				DataTypeIO.writeVarInt(dataOut, 0);
-				DataTypeIO.writeVarInt(dataOut, 0);
-			}
+			sections[i].write(output);
 			int biome;
 			if (environment.equals(Environment.END)) {
 				biome = 55; //the_end
@@ -231,14 +152,12 @@ public class ClientboundLevelChunkWithLightPacket extends PacketOut {
 			} else {
 				biome = 39; //plains
 			}
-			dataOut.writeByte(0);
-			DataTypeIO.writeVarInt(dataOut, biome);
-			DataTypeIO.writeVarInt(dataOut, 0);
+			output.writeByte(0);
+			DataTypeIO.writeVarInt(output, biome);
+			DataTypeIO.writeVarInt(output, 0);
 		}
 
-		byte[] data = dataBuffer.toByteArray();
-		DataTypeIO.writeVarInt(output, data.length);
-		output.write(data);
+		buffer.writeLengthPrefix(dataLength);
 
 		ListTag<CompoundTag> tileEntities = chunk.getTileEntities();
 		DataTypeIO.writeVarInt(output, tileEntities.size());
@@ -248,7 +167,8 @@ public class ClientboundLevelChunkWithLightPacket extends PacketOut {
 			int z = each.getInt("z") % 16;
 			output.writeByte(((x & 15) << 4) | (z & 15));
 			output.writeShort(y);
-			Integer id = BuiltInRegistries.BLOCK_ENTITY_TYPE.getId(Key.key(chunk.getBlockStateAt(x, y, z).getString("Name")));
+			CompoundTag state = GeneratedBlockDataMappings.getStateFromGlobalPaletteID(sections[(y >> 4) & 15].get(x, y, z));
+			Integer id = state == null ? null : BuiltInRegistries.BLOCK_ENTITY_TYPE.getId(Key.key(state.getString("Name")));
 			DataTypeIO.writeVarInt(output, id == null ? -1 : id);
 			DataTypeIO.writeTag(output, each);
 		}
@@ -270,31 +190,24 @@ public class ClientboundLevelChunkWithLightPacket extends PacketOut {
 			output.writeLong(l);
 		}
 
-		DataTypeIO.writeVarInt(output, skylightArrays.stream().mapToInt(each -> each == null ? 0 : 1).sum());
-		for (int i = skylightArrays.size() - 1; i >= 0; i--) {
-			Byte[] array = skylightArrays.get(i);
+		writeLightArrays(output, skylightArrays);
+		writeLightArrays(output, blocklightArrays);
+	}
+
+	private static void writeLightArrays(DataOutputStream output, byte[][] arrays) throws IOException {
+		int count = 0;
+		for (byte[] array : arrays) {
 			if (array != null) {
-				DataTypeIO.writeVarInt(output, 2048);
-				//System.out.println(Arrays.toString(ArrayUtils.toPrimitive(array)));
-				for (int u = 0; u < array.length; u++) {
-					output.writeByte(array[u]);
-				}
+				count++;
 			}
 		}
-
-		DataTypeIO.writeVarInt(output, blocklightArrays.stream().mapToInt(each -> each == null ? 0 : 1).sum());
-		for (int i = blocklightArrays.size() - 1; i >= 0; i--) {
-			Byte[] array = blocklightArrays.get(i);
+		DataTypeIO.writeVarInt(output, count);
+		for (byte[] array : arrays) {
 			if (array != null) {
-				DataTypeIO.writeVarInt(output, 2048);
-				//System.out.println(Arrays.toString(ArrayUtils.toPrimitive(array)));
-				for (int u = 0; u < array.length; u++) {
-					output.writeByte(array[u]);
-				}
+				DataTypeIO.writeVarInt(output, array.length);
+				output.write(array);
 			}
 		}
-
-		return buffer.toByteArray();
 	}
 
 }
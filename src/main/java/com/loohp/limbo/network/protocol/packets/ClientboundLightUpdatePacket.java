@@ -0,0 +1,131 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.network.protocol.packets;
+
+import com.loohp.limbo.network.PacketBuffer;
+import com.loohp.limbo.registry.PacketRegistry;
+import com.loohp.limbo.utils.DataTypeIO;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.BitSet;
+
+public class ClientboundLightUpdatePacket extends PacketOut {
+
+	private final int chunkX;
+	private final int chunkZ;
+	private final BitSet skyLightUpdated;
+	private final byte[][] skylightArrays;
+	private final BitSet blockLightUpdated;
+	private final byte[][] blocklightArrays;
+
+	/**
+	 * Only the sections set in the updated bit sets are sent, an updated section whose array is null is sent as
+	 * having no light.
+	 */
+	public ClientboundLightUpdatePacket(int chunkX, int chunkZ, BitSet skyLightUpdated, byte[][] skylightArrays, BitSet blockLightUpdated, byte[][] blocklightArrays) {
+		this.chunkX = chunkX;
+		this.chunkZ = chunkZ;
+		this.skyLightUpdated = skyLightUpdated;
+		this.skylightArrays = skylightArrays;
+		this.blockLightUpdated = blockLightUpdated;
+		this.blocklightArrays = blocklightArrays;
+	}
+
+	public int getChunkX() {
+		return chunkX;
+	}
+
+	public int getChunkZ() {
+		return chunkZ;
+	}
+
+	public BitSet getSkyLightUpdated() {
+		return skyLightUpdated;
+	}
+
+	public byte[][] getSkylightArrays() {
+		return skylightArrays;
+	}
+
+	public BitSet getBlockLightUpdated() {
+		return blockLightUpdated;
+	}
+
+	public byte[][] getBlocklightArrays() {
+		return blocklightArrays;
+	}
+
+	@Override
+	public int getSizeHint() {
+		return 64 + (skyLightUpdated.cardinality() + blockLightUpdated.cardinality()) * 2051;
+	}
+
+	@Override
+	public void serializePacket(PacketBuffer buffer) throws IOException {
+		DataOutputStream output = buffer.getOutput();
+		output.writeByte(PacketRegistry.getPacketId(getClass()));
+
+		DataTypeIO.writeVarInt(output, chunkX);
+		DataTypeIO.writeVarInt(output, chunkZ);
+
+		BitSet skyLightMask = new BitSet();
+		BitSet skyLightEmptyMask = new BitSet();
+		splitMasks(skyLightUpdated, skylightArrays, skyLightMask, skyLightEmptyMask);
+		BitSet blockLightMask = new BitSet();
+		BitSet blockLightEmptyMask = new BitSet();
+		splitMasks(blockLightUpdated, blocklightArrays, blockLightMask, blockLightEmptyMask);
+
+		writeBitSet(output, skyLightMask);
+		writeBitSet(output, blockLightMask);
+		writeBitSet(output, skyLightEmptyMask);
+		writeBitSet(output, blockLightEmptyMask);
+
+		writeLightArrays(output, skyLightMask, skylightArrays);
+		writeLightArrays(output, blockLightMask, blocklightArrays);
+	}
+
+	private static void splitMasks(BitSet updated, byte[][] arrays, BitSet mask, BitSet emptyMask) {
+		for (int i = updated.nextSetBit(0); i >= 0 && i < arrays.length; i = updated.nextSetBit(i + 1)) {
+			if (arrays[i] == null) {
+				emptyMask.set(i);
+			} else {
+				mask.set(i);
+			}
+		}
+	}
+
+	private static void writeBitSet(DataOutputStream output, BitSet bitSet) throws IOException {
+		long[] longs = bitSet.toLongArray();
+		DataTypeIO.writeVarInt(output, longs.length);
+		for (long l : longs) {
+			output.writeLong(l);
+		}
+	}
+
+	private static void writeLightArrays(DataOutputStream output, BitSet mask, byte[][] arrays) throws IOException {
+		DataTypeIO.writeVarInt(output, mask.cardinality());
+		for (int i = mask.nextSetBit(0); i >= 0; i = mask.nextSetBit(i + 1)) {
+			DataTypeIO.writeVarInt(output, arrays[i].length);
+			output.write(arrays[i]);
+		}
+	}
+
+}
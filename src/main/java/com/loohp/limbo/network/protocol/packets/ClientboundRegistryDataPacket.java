@@ -19,13 +19,13 @@
 
 package com.loohp.limbo.network.protocol.packets;
 
+import com.loohp.limbo.network.PacketBuffer;
 import com.loohp.limbo.registry.PacketRegistry;
 import com.loohp.limbo.registry.RegistryCustom;
 import com.loohp.limbo.utils.DataTypeIO;
 import net.kyori.adventure.key.Key;
 import net.querz.nbt.tag.CompoundTag;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -44,10 +44,8 @@ public class ClientboundRegistryDataPacket extends PacketOut {
     }
 
     @Override
-    public byte[] serializePacket() throws IOException {
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-
-        DataOutputStream output = new DataOutputStream(buffer);
+    public void serializePacket(PacketBuffer buffer) throws IOException {
+        DataOutputStream output = buffer.getOutput();
         output.writeByte(PacketRegistry.getPacketId(getClass()));
 
         DataTypeIO.writeString(output, registry.getIdentifier().asString(), StandardCharsets.UTF_8);
@@ -62,7 +60,5 @@ public class ClientboundRegistryDataPacket extends PacketOut {
                 DataTypeIO.writeTag(output, data);
             }
         }
-
-        return buffer.toByteArray();
     }
 }
@@ -19,11 +19,11 @@
 
 package com.loohp.limbo.network.protocol.packets;
 
+import com.loohp.limbo.network.PacketBuffer;
 import com.loohp.limbo.registry.PacketRegistry;
 import com.loohp.limbo.utils.DataTypeIO;
 import net.kyori.adventure.text.Component;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -71,10 +71,8 @@ public class ClientboundResourcePackPushPacket extends PacketOut {
 	}
 
 	@Override
-	public byte[] serializePacket() throws IOException {
-		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-		
-		DataOutputStream output = new DataOutputStream(buffer);
+	public void serializePacket(PacketBuffer buffer) throws IOException {
+		DataOutputStream output = buffer.getOutput();
 		output.writeByte(PacketRegistry.getPacketId(getClass()));
 		DataTypeIO.writeUUID(output, id);
 		DataTypeIO.writeString(output, url, StandardCharsets.UTF_8);
@@ -86,8 +84,6 @@ public class ClientboundResourcePackPushPacket extends PacketOut {
 			output.writeBoolean(true);
 			DataTypeIO.writeComponent(output, prompt);
 		}
-
-		return buffer.toByteArray();
 	}
 
 }
@@ -0,0 +1,91 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.network.protocol.packets;
+
+import com.loohp.limbo.network.PacketBuffer;
+import com.loohp.limbo.registry.PacketRegistry;
+import com.loohp.limbo.utils.DataTypeIO;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+public class ClientboundSectionBlocksUpdatePacket extends PacketOut {
+
+	private final int sectionX;
+	private final int sectionY;
+	private final int sectionZ;
+	private final short[] positions;
+	private final int[] blockStateIds;
+	private final int size;
+
+	/**
+	 * The positions are packed as <code>x &lt;&lt; 8 | z &lt;&lt; 4 | y</code> relative to the section, only the first
+	 * size entries of both arrays are sent.
+	 */
+	public ClientboundSectionBlocksUpdatePacket(int sectionX, int sectionY, int sectionZ, short[] positions, int[] blockStateIds, int size) {
+		this.sectionX = sectionX;
+		this.sectionY = sectionY;
+		this.sectionZ = sectionZ;
+		this.positions = positions;
+		this.blockStateIds = blockStateIds;
+		this.size = size;
+	}
+
+	public int getSectionX() {
+		return sectionX;
+	}
+
+	public int getSectionY() {
+		return sectionY;
+	}
+
+	public int getSectionZ() {
+		return sectionZ;
+	}
+
+	public short[] getPositions() {
+		return positions;
+	}
+
+	public int[] getBlockStateIds() {
+		return blockStateIds;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	@Override
+	public int getSizeHint() {
+		return 16 + size * 5;
+	}
+
+	@Override
+	public void serializePacket(PacketBuffer buffer) throws IOException {
+		DataOutputStream output = buffer.getOutput();
+		output.writeByte(PacketRegistry.getPacketId(getClass()));
+		output.writeLong(((sectionX & 0x3FFFFFL) << 42) | ((sectionZ & 0x3FFFFFL) << 20) | (sectionY & 0xFFFFFL));
+		DataTypeIO.writeVarInt(output, size);
+		for (int i = 0; i < size; i++) {
+			DataTypeIO.writeVarLong(output, ((long) blockStateIds[i] << 12) | (positions[i] & 0xFFF));
+		}
+	}
+
+}
@@ -19,11 +19,11 @@
 
 package com.loohp.limbo.network.protocol.packets;
 
+import com.loohp.limbo.network.PacketBuffer;
 import com.loohp.limbo.registry.PacketRegistry;
 import com.loohp.limbo.utils.DataTypeIO;
 import net.kyori.adventure.text.Component;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 
@@ -40,13 +40,9 @@ public class ClientboundSetActionBarTextPacket extends PacketOut {
     }
 
     @Override
-    public byte[] serializePacket() throws IOException {
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-
-        DataOutputStream output = new DataOutputStream(buffer);
+    public void serializePacket(PacketBuffer buffer) throws IOException {
+        DataOutputStream output = buffer.getOutput();
         output.writeByte(PacketRegistry.getPacketId(getClass()));
         DataTypeIO.writeComponent(output, actionBar);
-
-        return buffer.toByteArray();
     }
 }
@@ -19,10 +19,27 @@
 
 package com.loohp.limbo.network.protocol.packets;
 
+import com.loohp.limbo.network.PacketBuffer;
+
 import java.io.IOException;
 
+/**
+ * Outgoing packets write themselves into a {@link PacketBuffer}, which the connection can send without copying.
+ * Packets that can only produce a byte array extend {@link ByteArrayPacketOut} instead.
+ */
 public abstract class PacketOut extends Packet {
 	
-	public abstract byte[] serializePacket() throws IOException;
+	public byte[] serializePacket() throws IOException {
+		return PacketBuffer.serialize(this);
+	}
+
+	public abstract void serializePacket(PacketBuffer buffer) throws IOException;
+
+	/**
+	 * The expected serialized size of this packet, used to size the buffer up front.
+	 */
+	public int getSizeHint() {
+		return 0;
+	}
 
 }
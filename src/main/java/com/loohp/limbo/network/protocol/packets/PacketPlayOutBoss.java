@@ -20,11 +20,11 @@
 package com.loohp.limbo.network.protocol.packets;
 
 import com.loohp.limbo.bossbar.KeyedBossBar;
+import com.loohp.limbo.network.PacketBuffer;
 import com.loohp.limbo.registry.PacketRegistry;
 import com.loohp.limbo.utils.DataTypeIO;
 import net.kyori.adventure.bossbar.BossBar;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 
@@ -70,10 +70,8 @@ public class PacketPlayOutBoss extends PacketOut {
     }
 
     @Override
-    public byte[] serializePacket() throws IOException {
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-
-        DataOutputStream output = new DataOutputStream(buffer);
+    public void serializePacket(PacketBuffer buffer) throws IOException {
+        DataOutputStream output = buffer.getOutput();
         output.writeByte(PacketRegistry.getPacketId(getClass()));
 
         DataTypeIO.writeUUID(output, bossBar.getUniqueId());
@@ -110,7 +108,5 @@ public class PacketPlayOutBoss extends PacketOut {
                 break;
             }
         }
-
-        return buffer.toByteArray();
     }
 }
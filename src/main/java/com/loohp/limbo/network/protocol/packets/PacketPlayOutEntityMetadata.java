@@ -23,13 +23,13 @@ import com.loohp.limbo.entity.DataWatcher.WatchableObject;
 import com.loohp.limbo.entity.DataWatcher.WatchableObjectType;
 import com.loohp.limbo.entity.Entity;
 import com.loohp.limbo.entity.Pose;
+import com.loohp.limbo.network.PacketBuffer;
 import com.loohp.limbo.registry.PacketRegistry;
 import com.loohp.limbo.utils.DataTypeIO;
 import com.loohp.limbo.utils.Rotation3f;
 import com.loohp.limbo.world.BlockPosition;
 import net.kyori.adventure.text.Component;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.lang.reflect.Field;
@@ -65,10 +65,8 @@ public class PacketPlayOutEntityMetadata extends PacketOut {
 	}
 
 	@Override
-	public byte[] serializePacket() throws IOException {
-		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-		
-		DataOutputStream output = new DataOutputStream(buffer);
+	public void serializePacket(PacketBuffer buffer) throws IOException {
+		DataOutputStream output = buffer.getOutput();
 		output.writeByte(PacketRegistry.getPacketId(getClass()));
 		DataTypeIO.writeVarInt(output, entity.getEntityId());
 		Collection<WatchableObject> watches;
@@ -168,8 +166,6 @@ public class PacketPlayOutEntityMetadata extends PacketOut {
 			}
 		}
 		output.writeByte(END_OFF_METADATA);
-		
-		return buffer.toByteArray();
 	}
 
 }
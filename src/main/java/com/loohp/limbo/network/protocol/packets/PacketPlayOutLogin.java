@@ -19,6 +19,7 @@
 
 package com.loohp.limbo.network.protocol.packets;
 
+import com.loohp.limbo.network.PacketBuffer;
 import com.loohp.limbo.registry.PacketRegistry;
 import com.loohp.limbo.registry.RegistryCustom;
 import com.loohp.limbo.utils.DataTypeIO;
@@ -27,7 +28,6 @@ import com.loohp.limbo.world.Environment;
 import com.loohp.limbo.world.World;
 import net.kyori.adventure.key.Key;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -148,10 +148,8 @@ public class PacketPlayOutLogin extends PacketOut {
 	}
 
 	@Override
-	public byte[] serializePacket() throws IOException {
-		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-		
-		DataOutputStream output = new DataOutputStream(buffer);
+	public void serializePacket(PacketBuffer buffer) throws IOException {
+		DataOutputStream output = buffer.getOutput();
 		output.writeByte(PacketRegistry.getPacketId(getClass()));
 		output.writeInt(entityId);
 		output.writeBoolean(isHardcore);
@@ -176,8 +174,6 @@ public class PacketPlayOutLogin extends PacketOut {
 		DataTypeIO.writeVarInt(output, portalCooldown);
 		DataTypeIO.writeVarInt(output, seaLevel);
 		output.writeBoolean(enforcesSecureChat);
-
-		return buffer.toByteArray();
 	}
 
 }
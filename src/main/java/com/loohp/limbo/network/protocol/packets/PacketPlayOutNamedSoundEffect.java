@@ -19,12 +19,12 @@
 
 package com.loohp.limbo.network.protocol.packets;
 
+import com.loohp.limbo.network.PacketBuffer;
 import com.loohp.limbo.registry.PacketRegistry;
 import com.loohp.limbo.sounds.SoundEffect;
 import com.loohp.limbo.utils.DataTypeIO;
 import net.kyori.adventure.sound.Sound;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -85,10 +85,8 @@ public class PacketPlayOutNamedSoundEffect extends PacketOut {
     }
 
     @Override
-    public byte[] serializePacket() throws IOException {
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-
-        DataOutputStream output = new DataOutputStream(buffer);
+    public void serializePacket(PacketBuffer buffer) throws IOException {
+        DataOutputStream output = buffer.getOutput();
         output.writeByte(PacketRegistry.getPacketId(getClass()));
 
         DataTypeIO.writeVarInt(output, 0);
@@ -107,7 +105,5 @@ public class PacketPlayOutNamedSoundEffect extends PacketOut {
         output.writeFloat(volume);
         output.writeFloat(pitch);
         output.writeLong(seed);
-
-        return buffer.toByteArray();
     }
 }
@@ -19,9 +19,9 @@
 
 package com.loohp.limbo.network.protocol.packets;
 
+import com.loohp.limbo.network.PacketBuffer;
 import com.loohp.limbo.registry.PacketRegistry;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 
@@ -67,10 +67,8 @@ public class PacketPlayOutPlayerAbilities extends PacketOut {
 	}
 	
 	@Override
-	public byte[] serializePacket() throws IOException {
-		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-		
-		DataOutputStream output = new DataOutputStream(buffer);
+	public void serializePacket(PacketBuffer buffer) throws IOException {
+		DataOutputStream output = buffer.getOutput();
 		output.writeByte(PacketRegistry.getPacketId(getClass()));
 		byte value = 0;
 		for (PlayerAbilityFlags flag : flags) {
@@ -80,8 +78,6 @@ public class PacketPlayOutPlayerAbilities extends PacketOut {
 		output.writeByte(value);
 		output.writeFloat(flySpeed);
 		output.writeFloat(fieldOfField);
-		
-		return buffer.toByteArray();
 	}
 
 }
@@ -20,10 +20,10 @@
 package com.loohp.limbo.network.protocol.packets;
 
 import com.loohp.limbo.inventory.ItemStack;
+import com.loohp.limbo.network.PacketBuffer;
 import com.loohp.limbo.registry.PacketRegistry;
 import com.loohp.limbo.utils.DataTypeIO;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 
@@ -58,17 +58,13 @@ public class PacketPlayOutSetSlot extends PacketOut {
     }
 
     @Override
-    public byte[] serializePacket() throws IOException {
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-
-        DataOutputStream output = new DataOutputStream(buffer);
+    public void serializePacket(PacketBuffer buffer) throws IOException {
+        DataOutputStream output = buffer.getOutput();
         output.writeByte(PacketRegistry.getPacketId(getClass()));
 
         output.writeByte(containerId);
         DataTypeIO.writeVarInt(output, stateId);
         output.writeShort(slot);
         DataTypeIO.writeItemStack(output, itemStack);
-
-        return buffer.toByteArray();
     }
 }
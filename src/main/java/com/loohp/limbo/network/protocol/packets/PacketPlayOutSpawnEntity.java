@@ -20,10 +20,10 @@
 package com.loohp.limbo.network.protocol.packets;
 
 import com.loohp.limbo.entity.EntityType;
+import com.loohp.limbo.network.PacketBuffer;
 import com.loohp.limbo.registry.PacketRegistry;
 import com.loohp.limbo.utils.DataTypeIO;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.UUID;
@@ -113,10 +113,8 @@ public class PacketPlayOutSpawnEntity extends PacketOut {
 	}
 
 	@Override
-	public byte[] serializePacket() throws IOException {
-		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-		
-		DataOutputStream output = new DataOutputStream(buffer);
+	public void serializePacket(PacketBuffer buffer) throws IOException {
+		DataOutputStream output = buffer.getOutput();
 		output.writeByte(PacketRegistry.getPacketId(getClass()));
 		DataTypeIO.writeVarInt(output, entityId);
 		DataTypeIO.writeUUID(output, uuid);
@@ -131,8 +129,6 @@ public class PacketPlayOutSpawnEntity extends PacketOut {
 		output.writeShort(velocityX * 8000);
 		output.writeShort(velocityY * 8000);
 		output.writeShort(velocityZ * 8000);
-		
-		return buffer.toByteArray();
 	}
 
 }
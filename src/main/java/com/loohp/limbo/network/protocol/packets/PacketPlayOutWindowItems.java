@@ -20,10 +20,10 @@
 package com.loohp.limbo.network.protocol.packets;
 
 import com.loohp.limbo.inventory.ItemStack;
+import com.loohp.limbo.network.PacketBuffer;
 import com.loohp.limbo.registry.PacketRegistry;
 import com.loohp.limbo.utils.DataTypeIO;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.List;
@@ -59,10 +59,8 @@ public class PacketPlayOutWindowItems extends PacketOut {
     }
 
     @Override
-    public byte[] serializePacket() throws IOException {
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-
-        DataOutputStream output = new DataOutputStream(buffer);
+    public void serializePacket(PacketBuffer buffer) throws IOException {
+        DataOutputStream output = buffer.getOutput();
         output.writeByte(PacketRegistry.getPacketId(getClass()));
 
         output.writeByte(containerId);
@@ -72,7 +70,5 @@ public class PacketPlayOutWindowItems extends PacketOut {
             DataTypeIO.writeItemStack(output, itemStack);
         }
         DataTypeIO.writeItemStack(output, carriedItem);
-
-        return buffer.toByteArray();
     }
 }
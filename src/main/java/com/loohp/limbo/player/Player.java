@@ -37,6 +37,7 @@ import com.loohp.limbo.inventory.InventoryView;
 import com.loohp.limbo.inventory.TitledInventory;
 import com.loohp.limbo.location.Location;
 import com.loohp.limbo.network.ClientConnection;
+import com.loohp.limbo.network.PacketBroadcaster;
 import com.loohp.limbo.network.protocol.packets.ClientboundClearTitlesPacket;
 import com.loohp.limbo.network.protocol.packets.ClientboundSetActionBarTextPacket;
 import com.loohp.limbo.network.protocol.packets.ClientboundSetSubtitleTextPacket;
@@ -337,15 +338,13 @@ public class Player extends LivingEntity implements CommandSender, InventoryHold
 				if (hasPermission("limboserver.chat")) {
 					String chat = event.getFormat().replace("%name%", username).replace("%message%", event.getMessage());
 					Limbo.getInstance().getConsole().sendMessage(chat);
+					Component component;
 					if (event.getFormat().equals(CHAT_DEFAULT_FORMAT)) {
-						for (Player each : Limbo.getInstance().getPlayers()) {
-							each.sendMessage(Identity.identity(uuid), Component.translatable("chat.type.text").args(Component.text(this.getName()), Component.text(event.getMessage())), MessageType.CHAT, saltSignature, time);
-						}
+						component = Component.translatable("chat.type.text").args(Component.text(this.getName()), Component.text(event.getMessage()));
 					} else {
-						for (Player each : Limbo.getInstance().getPlayers()) {
-							each.sendMessage(Identity.identity(uuid), Component.text(chat), MessageType.SYSTEM, saltSignature, time);
-						}
+						component = Component.text(chat);
 					}
+					PacketBroadcaster.broadcast(new ClientboundSystemChatPacket(component, false), Limbo.getInstance().getPlayers());
 				} else if (verbose) {
 					sendMessage(ChatColor.RED + "You do not have permission to chat!");
 				}
@@ -25,37 +25,28 @@ import com.loohp.limbo.location.Location;
 import com.loohp.limbo.network.ClientConnection;
 import com.loohp.limbo.network.protocol.packets.ClientboundChunkBatchFinishedPacket;
 import com.loohp.limbo.network.protocol.packets.ClientboundChunkBatchStartPacket;
-import com.loohp.limbo.network.protocol.packets.ClientboundLevelChunkWithLightPacket;
 import com.loohp.limbo.network.protocol.packets.PacketPlayOutEntityDestroy;
 import com.loohp.limbo.network.protocol.packets.PacketPlayOutEntityMetadata;
 import com.loohp.limbo.network.protocol.packets.PacketPlayOutSpawnEntity;
 import com.loohp.limbo.network.protocol.packets.PacketPlayOutUnloadChunk;
 import com.loohp.limbo.world.ChunkPosition;
 import com.loohp.limbo.world.World;
-import net.querz.mca.Chunk;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 public class PlayerInteractManager {
 	
 	private Player player;
 	
 	private Set<Entity> entities;
-	private Map<ChunkPosition, Chunk> currentViewing;
+	private volatile ChunkView view;
 	
 	public PlayerInteractManager() {
 		this.player = null;
 		this.entities = new HashSet<>();
-		this.currentViewing = new HashMap<>();
+		this.view = null;
 	}
 	
 	protected void setPlayer(Player player) {
@@ -70,16 +61,33 @@ public class PlayerInteractManager {
 		return player;
 	}
 
+	public boolean isViewing(ChunkPosition chunkPosition) {
+		ChunkView view = this.view;
+		return view != null && view.contains(chunkPosition.getWorld(), chunkPosition.getChunkX(), chunkPosition.getChunkZ());
+	}
+
+	/**
+	 * Sends the entities and chunks that came into view and removes the ones that left it. With parallel-player-updates
+	 * this runs for several players at once, so it must only read shared state, see {@link World}.
+	 */
 	public void update() throws IOException {
 		if (player.clientConnection.getClientState() != ClientConnection.ClientState.PLAY) {
 			return;
 		}
 
 		int viewDistanceChunks = Limbo.getInstance().getServerProperties().getViewDistance();
-		int viewDistanceBlocks = viewDistanceChunks << 4;
 		Location location = player.getLocation();
-		Set<Entity> entitiesInRange = player.getWorld().getEntities().stream().filter(each -> each.getLocation().distanceSquared(location) < viewDistanceBlocks * viewDistanceBlocks).collect(Collectors.toSet());
-		for (Entity entity : entitiesInRange) {
+		updateEntities(location, viewDistanceChunks << 4);
+		updateChunks(location.getWorld(), (int) Math.floor(location.getX()) >> 4, (int) Math.floor(location.getZ()) >> 4, viewDistanceChunks);
+	}
+
+	private void updateEntities(Location location, int viewDistanceBlocks) throws IOException {
+		Set<Entity> entitiesInRange = new HashSet<>();
+		for (Entity entity : player.getWorld().getEntities()) {
+			if (entity.getLocation().distanceSquared(location) >= viewDistanceBlocks * viewDistanceBlocks) {
+				continue;
+			}
+			entitiesInRange.add(entity);
 			if (!entities.contains(entity)) {
 				PacketPlayOutSpawnEntity packet = new PacketPlayOutSpawnEntity(entity.getEntityId(), entity.getUniqueId(), entity.getType(), entity.getX(), entity.getY(), entity.getZ(), entity.getYaw(), entity.getPitch(), entity.getPitch(), 0, (short) 0, (short) 0, (short) 0);
 				player.clientConnection.sendPacket(packet);
@@ -88,76 +96,97 @@ public class PlayerInteractManager {
 				player.clientConnection.sendPacket(meta);
 			}
 		}
-		List<Integer> ids = new ArrayList<>();
 		for (Entity entity : entities) {
 			if (!entitiesInRange.contains(entity)) {
-				ids.add(entity.getEntityId());
+				PacketPlayOutEntityDestroy packet = new PacketPlayOutEntityDestroy(entity.getEntityId());
+				player.clientConnection.sendPacket(packet);
 			}
 		}
-		for (int id : ids) {
-			PacketPlayOutEntityDestroy packet = new PacketPlayOutEntityDestroy(id);
-			player.clientConnection.sendPacket(packet);
-		}
 
 		entities = entitiesInRange;
+	}
 
-		int playerChunkX = (int) location.getX() >> 4;
-		int playerChunkZ = (int) location.getZ() >> 4;
-		World world = location.getWorld();
-
-		Map<ChunkPosition, Chunk> chunksInRange = new HashMap<>();
+	/**
+	 * Unloads the chunks that left the view square and sends the ones that entered it, nearest first. Nothing is done
+	 * unless the player moved to another chunk or world, or the view distance changed.
+	 */
+	private void updateChunks(World world, int chunkX, int chunkZ, int viewDistance) throws IOException {
+		ChunkView previous = view;
+		if (previous != null && previous.world == world && previous.x == chunkX && previous.z == chunkZ && previous.radius == viewDistance) {
+			return;
+		}
+		ChunkView current = new ChunkView(world, chunkX, chunkZ, viewDistance);
 
-		for (int x = playerChunkX - viewDistanceChunks; x < playerChunkX + viewDistanceChunks; x++) {
-			for (int z = playerChunkZ - viewDistanceChunks; z < playerChunkZ + viewDistanceChunks; z++) {
-				Chunk chunk = world.getChunkAt(x, z);
-				if (chunk != null) {
-					chunksInRange.put(new ChunkPosition(world, x, z), chunk);
-				} else {
-					chunksInRange.put(new ChunkPosition(world, x, z), World.EMPTY_CHUNK);
+		if (previous != null) {
+			for (int x = previous.x - previous.radius; x <= previous.x + previous.radius; x++) {
+				for (int z = previous.z - previous.radius; z <= previous.z + previous.radius; z++) {
+					if (!current.contains(previous.world, x, z)) {
+						PacketPlayOutUnloadChunk packet = new PacketPlayOutUnloadChunk(x, z);
+						player.clientConnection.sendPacket(packet);
+					}
 				}
 			}
 		}
 
-		for (Entry<ChunkPosition, Chunk> entry : currentViewing.entrySet()) {
-			ChunkPosition chunkPos = entry.getKey();
-			if (!chunksInRange.containsKey(chunkPos)) {
-				PacketPlayOutUnloadChunk packet = new PacketPlayOutUnloadChunk(chunkPos.getChunkX(), chunkPos.getChunkZ());
-				player.clientConnection.sendPacket(packet);
+		int sent = sendChunk(previous, world, chunkX, chunkZ, 0);
+		for (int ring = 1; ring <= viewDistance; ring++) {
+			int sideLength = ring * 2;
+			for (int i = 0; i < sideLength * 4; i++) {
+				int offset = i % sideLength;
+				switch (i / sideLength) {
+					case 0:
+						sent = sendChunk(previous, world, chunkX - ring + offset, chunkZ - ring, sent);
+						break;
+					case 1:
+						sent = sendChunk(previous, world, chunkX + ring, chunkZ - ring + offset, sent);
+						break;
+					case 2:
+						sent = sendChunk(previous, world, chunkX + ring - offset, chunkZ + ring, sent);
+						break;
+					default:
+						sent = sendChunk(previous, world, chunkX - ring, chunkZ + ring - offset, sent);
+						break;
+				}
 			}
 		}
+		if (sent > 0) {
+			ClientboundChunkBatchFinishedPacket chunkBatchFinishedPacket = new ClientboundChunkBatchFinishedPacket(sent);
+			player.clientConnection.sendPacket(chunkBatchFinishedPacket);
+		}
 
-		int counter = 0;
-		ClientboundChunkBatchStartPacket chunkBatchStartPacket = new ClientboundChunkBatchStartPacket();
-		player.clientConnection.sendPacket(chunkBatchStartPacket);
-		for (Entry<ChunkPosition, Chunk> entry : chunksInRange.entrySet()) {
-			ChunkPosition chunkPos = entry.getKey();
-			if (!currentViewing.containsKey(chunkPos)) {
-				Chunk chunk = chunkPos.getWorld().getChunkAt(chunkPos.getChunkX(), chunkPos.getChunkZ());
-				if (chunk == null) {
-					ClientboundLevelChunkWithLightPacket chunkdata = new ClientboundLevelChunkWithLightPacket(chunkPos.getChunkX(), chunkPos.getChunkZ(), entry.getValue(), world.getEnvironment(), Collections.emptyList(), Collections.emptyList());
-					player.clientConnection.sendPacket(chunkdata);
-                } else {
-					List<Byte[]> blockChunk = world.getLightEngineBlock().getBlockLightBitMask(chunkPos.getChunkX(), chunkPos.getChunkZ());
-					if (blockChunk == null) {
-						blockChunk = new ArrayList<>();
-					}
-					List<Byte[]> skyChunk = null;
-					if (world.hasSkyLight()) {
-						skyChunk = world.getLightEngineSky().getSkyLightBitMask(chunkPos.getChunkX(), chunkPos.getChunkZ());
-					}
-					if (skyChunk == null) {
-						skyChunk = new ArrayList<>();
-					}
-					ClientboundLevelChunkWithLightPacket chunkdata = new ClientboundLevelChunkWithLightPacket(chunkPos.getChunkX(), chunkPos.getChunkZ(), chunk, world.getEnvironment(), skyChunk, blockChunk);
-					player.clientConnection.sendPacket(chunkdata);
-                }
-                counter++;
-            }
+		view = current;
+	}
+
+	private int sendChunk(ChunkView previous, World world, int chunkX, int chunkZ, int sent) throws IOException {
+		if (previous != null && previous.contains(world, chunkX, chunkZ)) {
+			return sent;
+		}
+		if (sent == 0) {
+			ClientboundChunkBatchStartPacket chunkBatchStartPacket = new ClientboundChunkBatchStartPacket();
+			player.clientConnection.sendPacket(chunkBatchStartPacket);
+		}
+		player.clientConnection.sendPacket(world.getChunkPacketCache().getChunkPacket(chunkX, chunkZ));
+		return sent + 1;
+	}
+
+	private static final class ChunkView {
+
+		private final World world;
+		private final int x;
+		private final int z;
+		private final int radius;
+
+		private ChunkView(World world, int x, int z, int radius) {
+			this.world = world;
+			this.x = x;
+			this.z = z;
+			this.radius = radius;
+		}
+
+		private boolean contains(World world, int chunkX, int chunkZ) {
+			return this.world == world && Math.abs(chunkX - x) <= radius && Math.abs(chunkZ - z) <= radius;
 		}
-		ClientboundChunkBatchFinishedPacket chunkBatchFinishedPacket = new ClientboundChunkBatchFinishedPacket(counter);
-		player.clientConnection.sendPacket(chunkBatchFinishedPacket);
 
-		currentViewing = chunksInRange;
 	}
 
 }
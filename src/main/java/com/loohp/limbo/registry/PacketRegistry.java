@@ -23,13 +23,16 @@ import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
 import com.loohp.limbo.Limbo;
 import com.loohp.limbo.network.ClientConnection;
+import com.loohp.limbo.network.protocol.packets.ClientboundBlockUpdatePacket;
 import com.loohp.limbo.network.protocol.packets.ClientboundChunkBatchFinishedPacket;
 import com.loohp.limbo.network.protocol.packets.ClientboundChunkBatchStartPacket;
 import com.loohp.limbo.network.protocol.packets.ClientboundClearTitlesPacket;
 import com.loohp.limbo.network.protocol.packets.ClientboundFinishConfigurationPacket;
 import com.loohp.limbo.network.protocol.packets.ClientboundLevelChunkWithLightPacket;
+import com.loohp.limbo.network.protocol.packets.ClientboundLightUpdatePacket;
 import com.loohp.limbo.network.protocol.packets.ClientboundRegistryDataPacket;
 import com.loohp.limbo.network.protocol.packets.ClientboundResourcePackPushPacket;
+import com.loohp.limbo.network.protocol.packets.ClientboundSectionBlocksUpdatePacket;
 import com.loohp.limbo.network.protocol.packets.ClientboundSetActionBarTextPacket;
 import com.loohp.limbo.network.protocol.packets.ClientboundSetSubtitleTextPacket;
 import com.loohp.limbo.network.protocol.packets.ClientboundSetTitleTextPacket;
@@ -37,11 +40,13 @@ import com.loohp.limbo.network.protocol.packets.ClientboundSetTitlesAnimationPac
 import com.loohp.limbo.network.protocol.packets.ClientboundSystemChatPacket;
 import com.loohp.limbo.network.protocol.packets.Packet;
 import com.loohp.limbo.network.protocol.packets.PacketHandshakingIn;
+import com.loohp.limbo.network.protocol.packets.PacketIn;
 import com.loohp.limbo.network.protocol.packets.PacketLoginInLoginStart;
 import com.loohp.limbo.network.protocol.packets.PacketLoginInPluginMessaging;
 import com.loohp.limbo.network.protocol.packets.PacketLoginOutDisconnect;
 import com.loohp.limbo.network.protocol.packets.PacketLoginOutLoginSuccess;
 import com.loohp.limbo.network.protocol.packets.PacketLoginOutPluginMessaging;
+import com.loohp.limbo.network.protocol.packets.PacketLoginOutSetCompression;
 import com.loohp.limbo.network.protocol.packets.PacketPlayInBlockDig;
 import com.loohp.limbo.network.protocol.packets.PacketPlayInBlockPlace;
 import com.loohp.limbo.network.protocol.packets.PacketPlayInChat;
@@ -111,6 +116,18 @@ public class PacketRegistry {
 
     private static final Map<NetworkPhase, Map<PacketBound, BiMap<Key, Integer>>> ID_REGISTRY = new HashMap<>();
     private static final BiMap<Class<? extends Packet>, PacketClassInfo> CLASS_REGISTRY = HashBiMap.create();
+    private static final Map<Class<? extends Packet>, PacketDecoder> DECODER_REGISTRY = new HashMap<>();
+
+    private static final ClassValue<PacketClassInfo> CLASS_INFO = new ClassValue<PacketClassInfo>() {
+        @Override
+        protected PacketClassInfo computeValue(Class<?> type) {
+            return CLASS_REGISTRY.get(type);
+        }
+    };
+    private static final int[] PACKET_IDS;
+    @SuppressWarnings("unchecked")
+    private static final Class<? extends Packet>[][][] PACKET_CLASSES = new Class[NetworkPhase.values().length][PacketBound.values().length][];
+    private static final PacketDecoder[][][] DECODERS = new PacketDecoder[NetworkPhase.values().length][PacketBound.values().length][];
 
     static {
         String name = "reports/packets.json";
@@ -143,45 +160,46 @@ public class PacketRegistry {
             e.printStackTrace();
         }
 
-        registerClass(PacketHandshakingIn.class, "minecraft:intention", NetworkPhase.HANDSHAKE, PacketBound.SERVERBOUND);
+        registerClass(PacketHandshakingIn.class, "minecraft:intention", NetworkPhase.HANDSHAKE, PacketBound.SERVERBOUND, (in, length, id) -> new PacketHandshakingIn(in));
 
-        registerClass(PacketStatusInRequest.class, "minecraft:status_request", NetworkPhase.STATUS, PacketBound.SERVERBOUND);
-        registerClass(PacketStatusInPing.class, "minecraft:ping_request", NetworkPhase.STATUS, PacketBound.SERVERBOUND);
+        registerClass(PacketStatusInRequest.class, "minecraft:status_request", NetworkPhase.STATUS, PacketBound.SERVERBOUND, (in, length, id) -> new PacketStatusInRequest(in));
+        registerClass(PacketStatusInPing.class, "minecraft:ping_request", NetworkPhase.STATUS, PacketBound.SERVERBOUND, (in, length, id) -> new PacketStatusInPing(in));
 
         registerClass(PacketStatusOutResponse.class, "minecraft:status_response", NetworkPhase.STATUS, PacketBound.CLIENTBOUND);
         registerClass(PacketStatusOutPong.class, "minecraft:pong_response", NetworkPhase.STATUS, PacketBound.CLIENTBOUND);
 
-        registerClass(PacketLoginInLoginStart.class, "minecraft:hello", NetworkPhase.LOGIN, PacketBound.SERVERBOUND);
-        registerClass(PacketLoginInPluginMessaging.class, "minecraft:custom_query_answer", NetworkPhase.LOGIN, PacketBound.SERVERBOUND);
-        registerClass(ServerboundLoginAcknowledgedPacket.class, "minecraft:login_acknowledged", NetworkPhase.LOGIN, PacketBound.SERVERBOUND);
+        registerClass(PacketLoginInLoginStart.class, "minecraft:hello", NetworkPhase.LOGIN, PacketBound.SERVERBOUND, (in, length, id) -> new PacketLoginInLoginStart(in));
+        registerClass(PacketLoginInPluginMessaging.class, "minecraft:custom_query_answer", NetworkPhase.LOGIN, PacketBound.SERVERBOUND, PacketLoginInPluginMessaging::new);
+        registerClass(ServerboundLoginAcknowledgedPacket.class, "minecraft:login_acknowledged", NetworkPhase.LOGIN, PacketBound.SERVERBOUND, (in, length, id) -> new ServerboundLoginAcknowledgedPacket(in));
 
         registerClass(PacketLoginOutLoginSuccess.class, "minecraft:login_finished", NetworkPhase.LOGIN, PacketBound.CLIENTBOUND);
         registerClass(PacketLoginOutDisconnect.class, "minecraft:login_disconnect", NetworkPhase.LOGIN, PacketBound.CLIENTBOUND);
         registerClass(PacketLoginOutPluginMessaging.class, "minecraft:custom_query", NetworkPhase.LOGIN, PacketBound.CLIENTBOUND);
+        registerClass(PacketLoginOutSetCompression.class, "minecraft:login_compression", NetworkPhase.LOGIN, PacketBound.CLIENTBOUND);
 
-        registerClass(ServerboundFinishConfigurationPacket.class, "minecraft:finish_configuration", NetworkPhase.CONFIGURATION, PacketBound.SERVERBOUND);
+        registerClass(ServerboundFinishConfigurationPacket.class, "minecraft:finish_configuration", NetworkPhase.CONFIGURATION, PacketBound.SERVERBOUND, (in, length, id) -> new ServerboundFinishConfigurationPacket(in));
 
         registerClass(ClientboundRegistryDataPacket.class, "minecraft:registry_data", NetworkPhase.CONFIGURATION, PacketBound.CLIENTBOUND);
         registerClass(ClientboundFinishConfigurationPacket.class, "minecraft:finish_configuration", NetworkPhase.CONFIGURATION, PacketBound.CLIENTBOUND);
 
-        registerClass(PacketPlayInKeepAlive.class, "minecraft:keep_alive", NetworkPhase.PLAY, PacketBound.SERVERBOUND);
-        registerClass(ServerboundChatCommandPacket.class, "minecraft:chat_command", NetworkPhase.PLAY, PacketBound.SERVERBOUND);
-        registerClass(PacketPlayInChat.class, "minecraft:chat", NetworkPhase.PLAY, PacketBound.SERVERBOUND);
-        registerClass(PacketPlayInPosition.class, "minecraft:move_player_pos", NetworkPhase.PLAY, PacketBound.SERVERBOUND);
-        registerClass(PacketPlayInPositionAndLook.class, "minecraft:move_player_pos_rot", NetworkPhase.PLAY, PacketBound.SERVERBOUND);
-        registerClass(PacketPlayInRotation.class, "minecraft:move_player_rot", NetworkPhase.PLAY, PacketBound.SERVERBOUND);
-        registerClass(PacketPlayInPluginMessaging.class, "minecraft:custom_payload", NetworkPhase.PLAY, PacketBound.SERVERBOUND);
-        registerClass(PacketPlayInTabComplete.class, "minecraft:command_suggestion", NetworkPhase.PLAY, PacketBound.SERVERBOUND);
-        registerClass(PacketPlayInHeldItemChange.class, "minecraft:set_carried_item", NetworkPhase.PLAY, PacketBound.SERVERBOUND);
-        registerClass(ServerboundResourcePackPacket.class, "minecraft:resource_pack", NetworkPhase.PLAY, PacketBound.SERVERBOUND);
-        registerClass(PacketPlayInUseItem.class, "minecraft:use_item_on", NetworkPhase.PLAY, PacketBound.SERVERBOUND);
-        registerClass(PacketPlayInBlockPlace.class, "minecraft:use_item", NetworkPhase.PLAY, PacketBound.SERVERBOUND);
-        registerClass(PacketPlayInSetCreativeSlot.class, "minecraft:set_creative_mode_slot", NetworkPhase.PLAY, PacketBound.SERVERBOUND);
-        registerClass(PacketPlayInWindowClick.class, "minecraft:container_click", NetworkPhase.PLAY, PacketBound.SERVERBOUND);
-        registerClass(PacketPlayInCloseWindow.class, "minecraft:container_close", NetworkPhase.PLAY, PacketBound.SERVERBOUND);
-        registerClass(PacketPlayInPickItem.class, "minecraft:pick_item", NetworkPhase.PLAY, PacketBound.SERVERBOUND);
-        registerClass(PacketPlayInBlockDig.class, "minecraft:player_action", NetworkPhase.PLAY, PacketBound.SERVERBOUND);
-        registerClass(PacketPlayInItemName.class, "minecraft:rename_item", NetworkPhase.PLAY, PacketBound.SERVERBOUND);
+        registerClass(PacketPlayInKeepAlive.class, "minecraft:keep_alive", NetworkPhase.PLAY, PacketBound.SERVERBOUND, (in, length, id) -> new PacketPlayInKeepAlive(in));
+        registerClass(ServerboundChatCommandPacket.class, "minecraft:chat_command", NetworkPhase.PLAY, PacketBound.SERVERBOUND, (in, length, id) -> new ServerboundChatCommandPacket(in));
+        registerClass(PacketPlayInChat.class, "minecraft:chat", NetworkPhase.PLAY, PacketBound.SERVERBOUND, (in, length, id) -> new PacketPlayInChat(in));
+        registerClass(PacketPlayInPosition.class, "minecraft:move_player_pos", NetworkPhase.PLAY, PacketBound.SERVERBOUND, (in, length, id) -> new PacketPlayInPosition(in));
+        registerClass(PacketPlayInPositionAndLook.class, "minecraft:move_player_pos_rot", NetworkPhase.PLAY, PacketBound.SERVERBOUND, (in, length, id) -> new PacketPlayInPositionAndLook(in));
+        registerClass(PacketPlayInRotation.class, "minecraft:move_player_rot", NetworkPhase.PLAY, PacketBound.SERVERBOUND, (in, length, id) -> new PacketPlayInRotation(in));
+        registerClass(PacketPlayInPluginMessaging.class, "minecraft:custom_payload", NetworkPhase.PLAY, PacketBound.SERVERBOUND, PacketPlayInPluginMessaging::new);
+        registerClass(PacketPlayInTabComplete.class, "minecraft:command_suggestion", NetworkPhase.PLAY, PacketBound.SERVERBOUND, (in, length, id) -> new PacketPlayInTabComplete(in));
+        registerClass(PacketPlayInHeldItemChange.class, "minecraft:set_carried_item", NetworkPhase.PLAY, PacketBound.SERVERBOUND, (in, length, id) -> new PacketPlayInHeldItemChange(in));
+        registerClass(ServerboundResourcePackPacket.class, "minecraft:resource_pack", NetworkPhase.PLAY, PacketBound.SERVERBOUND, (in, length, id) -> new ServerboundResourcePackPacket(in));
+        registerClass(PacketPlayInUseItem.class, "minecraft:use_item_on", NetworkPhase.PLAY, PacketBound.SERVERBOUND, (in, length, id) -> new PacketPlayInUseItem(in));
+        registerClass(PacketPlayInBlockPlace.class, "minecraft:use_item", NetworkPhase.PLAY, PacketBound.SERVERBOUND, (in, length, id) -> new PacketPlayInBlockPlace(in));
+        registerClass(PacketPlayInSetCreativeSlot.class, "minecraft:set_creative_mode_slot", NetworkPhase.PLAY, PacketBound.SERVERBOUND, (in, length, id) -> new PacketPlayInSetCreativeSlot(in));
+        registerClass(PacketPlayInWindowClick.class, "minecraft:container_click", NetworkPhase.PLAY, PacketBound.SERVERBOUND, (in, length, id) -> new PacketPlayInWindowClick(in));
+        registerClass(PacketPlayInCloseWindow.class, "minecraft:container_close", NetworkPhase.PLAY, PacketBound.SERVERBOUND, (in, length, id) -> new PacketPlayInCloseWindow(in));
+        registerClass(PacketPlayInPickItem.class, "minecraft:pick_item", NetworkPhase.PLAY, PacketBound.SERVERBOUND, (in, length, id) -> new PacketPlayInPickItem(in));
+        registerClass(PacketPlayInBlockDig.class, "minecraft:player_action", NetworkPhase.PLAY, PacketBound.SERVERBOUND, (in, length, id) -> new PacketPlayInBlockDig(in));
+        registerClass(PacketPlayInItemName.class, "minecraft:rename_item", NetworkPhase.PLAY, PacketBound.SERVERBOUND, (in, length, id) -> new PacketPlayInItemName(in));
 
         registerClass(PacketPlayOutLogin.class, "minecraft:login", NetworkPhase.PLAY, PacketBound.CLIENTBOUND);
         registerClass(PacketPlayOutPositionAndLook.class, "minecraft:player_position", NetworkPhase.PLAY, PacketBound.CLIENTBOUND);
@@ -189,6 +207,9 @@ public class PacketRegistry {
         registerClass(ClientboundSystemChatPacket.class, "minecraft:system_chat", NetworkPhase.PLAY, PacketBound.CLIENTBOUND);
         registerClass(PacketPlayOutPlayerAbilities.class, "minecraft:player_abilities", NetworkPhase.PLAY, PacketBound.CLIENTBOUND);
         registerClass(ClientboundLevelChunkWithLightPacket.class, "minecraft:level_chunk_with_light", NetworkPhase.PLAY, PacketBound.CLIENTBOUND);
+        registerClass(ClientboundLightUpdatePacket.class, "minecraft:light_update", NetworkPhase.PLAY, PacketBound.CLIENTBOUND);
+        registerClass(ClientboundBlockUpdatePacket.class, "minecraft:block_update", NetworkPhase.PLAY, PacketBound.CLIENTBOUND);
+        registerClass(ClientboundSectionBlocksUpdatePacket.class, "minecraft:section_blocks_update", NetworkPhase.PLAY, PacketBound.CLIENTBOUND);
         registerClass(PacketPlayOutUnloadChunk.class, "minecraft:forget_level_chunk", NetworkPhase.PLAY, PacketBound.CLIENTBOUND);
         registerClass(PacketPlayOutKeepAlive.class, "minecraft:keep_alive", NetworkPhase.PLAY, PacketBound.CLIENTBOUND);
         registerClass(PacketPlayOutGameStateChange.class, "minecraft:game_event", NetworkPhase.PLAY, PacketBound.CLIENTBOUND);
@@ -220,25 +241,63 @@ public class PacketRegistry {
         registerClass(PacketPlayOutWindowData.class, "minecraft:container_set_data", NetworkPhase.PLAY, PacketBound.CLIENTBOUND);
         registerClass(ClientboundChunkBatchFinishedPacket.class, "minecraft:chunk_batch_finished", NetworkPhase.PLAY, PacketBound.CLIENTBOUND);
         registerClass(ClientboundChunkBatchStartPacket.class, "minecraft:chunk_batch_start", NetworkPhase.PLAY, PacketBound.CLIENTBOUND);
+
+        for (NetworkPhase networkPhase : NetworkPhase.values()) {
+            for (PacketBound packetBound : PacketBound.values()) {
+                Map<PacketBound, BiMap<Key, Integer>> mappings = ID_REGISTRY.get(networkPhase);
+                BiMap<Key, Integer> idMapping = mappings == null ? null : mappings.get(packetBound);
+                int size = idMapping == null || idMapping.isEmpty() ? 0 : idMapping.values().stream().mapToInt(i -> i).max().getAsInt() + 1;
+                PACKET_CLASSES[networkPhase.ordinal()][packetBound.ordinal()] = new Class[size];
+                DECODERS[networkPhase.ordinal()][packetBound.ordinal()] = new PacketDecoder[size];
+            }
+        }
+        PACKET_IDS = new int[CLASS_REGISTRY.size()];
+        for (Map.Entry<Class<? extends Packet>, PacketClassInfo> entry : CLASS_REGISTRY.entrySet()) {
+            PacketClassInfo info = entry.getValue();
+            Integer packetId = ID_REGISTRY.get(info.getNetworkPhase()).get(info.getPacketBound()).get(info.getKey());
+            if (packetId == null) {
+                PACKET_IDS[info.ordinal] = -1;
+                continue;
+            }
+            PACKET_IDS[info.ordinal] = packetId;
+            PACKET_CLASSES[info.getNetworkPhase().ordinal()][info.getPacketBound().ordinal()][packetId] = entry.getKey();
+            DECODERS[info.getNetworkPhase().ordinal()][info.getPacketBound().ordinal()][packetId] = DECODER_REGISTRY.get(entry.getKey());
+        }
     }
 
     private static void registerClass(Class<? extends Packet> packetClass, String key, NetworkPhase networkPhase, PacketBound packetBound) {
-        CLASS_REGISTRY.put(packetClass, new PacketClassInfo(Key.key(key), networkPhase, packetBound));
+        CLASS_REGISTRY.put(packetClass, new PacketClassInfo(Key.key(key), networkPhase, packetBound, CLASS_REGISTRY.size()));
+    }
+
+    private static void registerClass(Class<? extends PacketIn> packetClass, String key, NetworkPhase networkPhase, PacketBound packetBound, PacketDecoder decoder) {
+        registerClass(packetClass, key, networkPhase, packetBound);
+        DECODER_REGISTRY.put(packetClass, decoder);
     }
 
     public static PacketClassInfo getPacketInfo(Class<? extends Packet> packetClass) {
-        return CLASS_REGISTRY.get(packetClass);
+        return CLASS_INFO.get(packetClass);
     }
 
     public static int getPacketId(Class<? extends Packet> packetClass) {
-        PacketClassInfo info = getPacketInfo(packetClass);
-        return ID_REGISTRY.get(info.getNetworkPhase()).get(info.getPacketBound()).get(info.getKey());
+        int packetId = PACKET_IDS[CLASS_INFO.get(packetClass).ordinal];
+        if (packetId < 0) {
+            throw new IllegalStateException(packetClass.getName() + " has no packet id in this protocol version");
+        }
+        return packetId;
     }
 
     @SuppressWarnings("unchecked")
     public static <T extends Packet> Class<? extends T> getPacketClass(int packetId, NetworkPhase networkPhase, PacketBound packetBound) {
-        Key key = ID_REGISTRY.get(networkPhase).get(packetBound).inverse().get(packetId);
-        return (Class<? extends T>) CLASS_REGISTRY.inverse().get(new PacketClassInfo(key, networkPhase, packetBound));
+        Class<? extends Packet>[] classes = PACKET_CLASSES[networkPhase.ordinal()][packetBound.ordinal()];
+        return packetId >= 0 && packetId < classes.length ? (Class<? extends T>) classes[packetId] : null;
+    }
+
+    /**
+     * Returns the decoder for the given packet id, or null if the id is unknown or has no packet class registered to it.
+     */
+    public static PacketDecoder getPacketDecoder(int packetId, NetworkPhase networkPhase, PacketBound packetBound) {
+        PacketDecoder[] decoders = DECODERS[networkPhase.ordinal()][packetBound.ordinal()];
+        return packetId >= 0 && packetId < decoders.length ? decoders[packetId] : null;
     }
 
     public enum NetworkPhase {
@@ -258,13 +317,16 @@ public class PacketRegistry {
             return null;
         }
 
-        public static NetworkPhase fromClientState(ClientConnection.ClientState clientState) {
+        private static final NetworkPhase[] BY_CLIENT_STATE = new NetworkPhase[ClientConnection.ClientState.values().length];
+
+        static {
             for (NetworkPhase phase : values()) {
-                if (phase.getClientState().equals(clientState)) {
-                    return phase;
-                }
+                BY_CLIENT_STATE[phase.getClientState().ordinal()] = phase;
             }
-            return null;
+        }
+
+        public static NetworkPhase fromClientState(ClientConnection.ClientState clientState) {
+            return BY_CLIENT_STATE[clientState.ordinal()];
         }
 
         private final String name;
@@ -313,11 +375,17 @@ public class PacketRegistry {
         private final Key key;
         private final NetworkPhase networkPhase;
         private final PacketBound packetBound;
+        private final int ordinal;
 
         public PacketClassInfo(Key key, NetworkPhase networkPhase, PacketBound packetBound) {
+            this(key, networkPhase, packetBound, -1);
+        }
+
+        private PacketClassInfo(Key key, NetworkPhase networkPhase, PacketBound packetBound, int ordinal) {
             this.key = key;
             this.networkPhase = networkPhase;
             this.packetBound = packetBound;
+            this.ordinal = ordinal;
         }
 
         public Key getKey() {
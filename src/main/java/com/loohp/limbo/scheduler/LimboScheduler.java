@@ -23,23 +23,39 @@ import com.loohp.limbo.Limbo;
 import com.loohp.limbo.plugins.LimboPlugin;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
 
+/**
+ * Schedules tasks by tick in a hierarchical timing wheel. Every level has 64 slots, a slot of the lowest level covers
+ * one tick and a slot of every level above covers a whole turn of the level below it. Tasks are moved down a level
+ * whenever their slot comes up, so scheduling and cancelling take constant time no matter how long the delay is.
+ * Tasks may be scheduled and cancelled from any thread, both take the lock of the wheel so the task map and the wheel
+ * always agree.
+ */
 public class LimboScheduler {
 	
-	private AtomicInteger idProvider = new AtomicInteger(0);
-	private Map<Long, List<LimboSchedulerTask>> registeredTasks = new HashMap<>();
-	private Map<Integer, LimboSchedulerTask> tasksById = new HashMap<>();
-	private Set<Integer> cancelledTasks = new HashSet<>();
+	private static final int SLOT_BITS = 6;
+	private static final int SLOTS = 1 << SLOT_BITS;
+	private static final int SLOT_MASK = SLOTS - 1;
+	private static final int LEVELS = 4;
+	private static final long MAX_DELAY = (1L << (SLOT_BITS * LEVELS)) - 1;
+	
+	private final AtomicInteger idProvider = new AtomicInteger(0);
+	private final Map<Integer, LimboSchedulerTask> tasksById = new ConcurrentHashMap<>();
+	private final LimboSchedulerTask[][] wheel = new LimboSchedulerTask[LEVELS][SLOTS];
+	private final LongSupplier currentTick;
+	private long wheelTick = 0;
 	
 	public LimboScheduler() {
-		
+		this(() -> Limbo.getInstance().getHeartBeat().getCurrentTick());
+	}
+	
+	LimboScheduler(LongSupplier currentTick) {
+		this.currentTick = currentTick;
 	}
 	
 	protected int nextId() {
@@ -47,15 +63,18 @@ public class LimboScheduler {
 	}
 	
 	public void cancelTask(int taskId) {
-		if (tasksById.containsKey(taskId)) {
-			cancelledTasks.add(taskId);
+		synchronized (wheel) {
+			LimboSchedulerTask task = tasksById.remove(taskId);
+			if (task != null) {
+				unlink(task);
+			}
 		}
 	}
 	
 	public void cancelTask(LimboPlugin plugin) {
 		for (LimboSchedulerTask task : tasksById.values()) {
 			if (task.getPlugin().getName().equals(plugin.getName())) {
-				cancelledTasks.add(task.getTaskId());
+				cancelTask(task.getTaskId());
 			}
 		}
 	}
@@ -69,19 +88,7 @@ public class LimboScheduler {
 	}
 	
 	protected int runTaskLater(int taskId, LimboPlugin plugin, LimboTask task, long delay) {
-		LimboSchedulerTask st = new LimboSchedulerTask(plugin, task, taskId, LimboSchedulerTaskType.SYNC, 0);
-		if (delay <= 0) {
-			delay = 1;
-		}
-		long tick = Limbo.getInstance().getHeartBeat().getCurrentTick() + delay;
-		tasksById.put(taskId, st);
-		List<LimboSchedulerTask> list = registeredTasks.get(tick);
-		if (list == null) {
-			list = new ArrayList<>();
-			registeredTasks.put(tick, list);
-		}
-		list.add(st);
-		return taskId;
+		return schedule(new LimboSchedulerTask(plugin, task, taskId, LimboSchedulerTaskType.SYNC, 0), delay);
 	}
 	
 	public int runTaskLater(LimboPlugin plugin, LimboTask task, long delay) {
@@ -97,19 +104,7 @@ public class LimboScheduler {
 	}
 	
 	protected int runTaskLaterAsync(int taskId, LimboPlugin plugin, LimboTask task, long delay) {
-		LimboSchedulerTask st = new LimboSchedulerTask(plugin, task, taskId, LimboSchedulerTaskType.ASYNC, 0);
-		if (delay <= 0) {
-			delay = 1;
-		}
-		long tick = Limbo.getInstance().getHeartBeat().getCurrentTick() + delay;
-		tasksById.put(taskId, st);
-		List<LimboSchedulerTask> list = registeredTasks.get(tick);
-		if (list == null) {
-			list = new ArrayList<>();
-			registeredTasks.put(tick, list);
-		}
-		list.add(st);
-		return taskId;
+		return schedule(new LimboSchedulerTask(plugin, task, taskId, LimboSchedulerTaskType.ASYNC, 0), delay);
 	}
 	
 	public int runTaskLaterAsync(LimboPlugin plugin, LimboTask task, long delay) {
@@ -117,22 +112,10 @@ public class LimboScheduler {
 	}
 	
 	protected int runTaskTimer(int taskId, LimboPlugin plugin, LimboTask task, long delay, long period) {
-		LimboSchedulerTask st = new LimboSchedulerTask(plugin, task, taskId, LimboSchedulerTaskType.TIMER_SYNC, period);
-		if (delay <= 0) {
-			delay = 1;
-		}
 		if (period <= 0) {
 			period = 1;
 		}
-		long tick = Limbo.getInstance().getHeartBeat().getCurrentTick() + delay;
-		tasksById.put(taskId, st);
-		List<LimboSchedulerTask> list = registeredTasks.get(tick);
-		if (list == null) {
-			list = new ArrayList<>();
-			registeredTasks.put(tick, list);
-		}
-		list.add(st);
-		return taskId;
+		return schedule(new LimboSchedulerTask(plugin, task, taskId, LimboSchedulerTaskType.TIMER_SYNC, period), delay);
 	}
 	
 	public int runTaskTimer(LimboPlugin plugin, LimboTask task, long delay, long period) {
@@ -140,63 +123,143 @@ public class LimboScheduler {
 	}
 	
 	protected int runTaskTimerAsync(int taskId, LimboPlugin plugin, LimboTask task, long delay, long period) {
-		LimboSchedulerTask st = new LimboSchedulerTask(plugin, task, taskId, LimboSchedulerTaskType.TIMER_ASYNC, period);
-		if (delay <= 0) {
-			delay = 1;
-		}
 		if (period <= 0) {
 			period = 1;
 		}
-		long tick = Limbo.getInstance().getHeartBeat().getCurrentTick() + delay;
-		tasksById.put(taskId, st);
-		List<LimboSchedulerTask> list = registeredTasks.get(tick);
-		if (list == null) {
-			list = new ArrayList<>();
-			registeredTasks.put(tick, list);
-		}
-		list.add(st);
-		return taskId;
+		return schedule(new LimboSchedulerTask(plugin, task, taskId, LimboSchedulerTaskType.TIMER_ASYNC, period), delay);
 	}
 	
 	public int runTaskTimerAsync(LimboPlugin plugin, LimboTask task, long delay, long period) {
 		return runTaskTimerAsync(nextId(), plugin, task, delay, period);
 	}
 	
-	protected CurrentSchedulerTask collectTasks(long currentTick) {
-		List<LimboSchedulerTask> tasks = registeredTasks.remove(currentTick);
-		if (tasks == null) {
-			return null;
+	private int schedule(LimboSchedulerTask task, long delay) {
+		if (delay <= 0) {
+			delay = 1;
 		}
-		
-		List<LimboSchedulerTask> asyncTasks = new LinkedList<>();
-		List<LimboSchedulerTask> syncedTasks = new LinkedList<>();
-		
-		for (LimboSchedulerTask task : tasks) {
-			int taskId = task.getTaskId();
-			if (cancelledTasks.contains(taskId)) {
-				cancelledTasks.remove(taskId);
-				continue;
+		task.tick = currentTick.getAsLong() + delay;
+		synchronized (wheel) {
+			LimboSchedulerTask replaced = tasksById.put(task.getTaskId(), task);
+			if (replaced != null) {
+				unlink(replaced);
 			}
-			
-			switch (task.getType()) {
-			case ASYNC:
-				asyncTasks.add(task);
-				break;
-			case SYNC:
-				syncedTasks.add(task);
-				break;
-			case TIMER_ASYNC:
-				asyncTasks.add(task);
-				runTaskTimerAsync(task.getTaskId(), task.getPlugin(), task.getTask(), task.getPeriod(), task.getPeriod());
-				break;
-			case TIMER_SYNC:
-				syncedTasks.add(task);
-				runTaskTimer(task.getTaskId(), task.getPlugin(), task.getTask(), task.getPeriod(), task.getPeriod());
-				break;
+			task.tick = Math.max(task.tick, wheelTick + 1);
+			insert(task);
+		}
+		return task.getTaskId();
+	}
+	
+	protected CurrentSchedulerTask collectTasks(long currentTick) {
+		List<LimboSchedulerTask> asyncTasks = null;
+		List<LimboSchedulerTask> syncedTasks = null;
+		
+		synchronized (wheel) {
+			while (wheelTick < currentTick) {
+				long tick = ++wheelTick;
+				for (int level = LEVELS - 1; level > 0; level--) {
+					int shift = level * SLOT_BITS;
+					if ((tick & ((1L << shift) - 1)) == 0) {
+						LimboSchedulerTask task = detach(level, (int) (tick >>> shift) & SLOT_MASK);
+						while (task != null) {
+							LimboSchedulerTask next = task.next;
+							task.next = null;
+							insert(task);
+							task = next;
+						}
+					}
+				}
+				
+				LimboSchedulerTask task = detach(0, (int) tick & SLOT_MASK);
+				while (task != null) {
+					LimboSchedulerTask next = task.next;
+					task.next = null;
+					switch (task.getType()) {
+					case ASYNC:
+					case TIMER_ASYNC:
+						if (asyncTasks == null) {
+							asyncTasks = new ArrayList<>();
+						}
+						asyncTasks.add(task);
+						break;
+					case SYNC:
+					case TIMER_SYNC:
+						if (syncedTasks == null) {
+							syncedTasks = new ArrayList<>();
+						}
+						syncedTasks.add(task);
+						break;
+					}
+					if (task.getPeriod() > 0) {
+						task.tick = tick + task.getPeriod();
+						insert(task);
+					} else {
+						tasksById.remove(task.getTaskId(), task);
+					}
+					task = next;
+				}
 			}
 		}
 		
-		return new CurrentSchedulerTask(syncedTasks, asyncTasks);
+		if (asyncTasks == null && syncedTasks == null) {
+			return null;
+		}
+		return new CurrentSchedulerTask(syncedTasks == null ? new ArrayList<>() : syncedTasks, asyncTasks == null ? new ArrayList<>() : asyncTasks);
+	}
+	
+	/**
+	 * Puts a task into the slot its tick falls into, relative to the tick the wheel is at. Tasks due at that tick are
+	 * only put back while the wheel moves tasks down during {@link #collectTasks(long)}, before the lowest slot is taken.
+	 */
+	private void insert(LimboSchedulerTask task) {
+		long tick = Math.max(task.tick, wheelTick);
+		long delay = Math.min(tick - wheelTick, MAX_DELAY);
+		if (delay == MAX_DELAY) {
+			tick = wheelTick + MAX_DELAY;
+		}
+		int level = 0;
+		while (delay >= 1L << ((level + 1) * SLOT_BITS)) {
+			level++;
+		}
+		int slot = (int) (tick >>> (level * SLOT_BITS)) & SLOT_MASK;
+		LimboSchedulerTask head = wheel[level][slot];
+		task.level = level;
+		task.slot = slot;
+		task.previous = null;
+		task.next = head;
+		if (head != null) {
+			head.previous = task;
+		}
+		wheel[level][slot] = task;
+	}
+	
+	private void unlink(LimboSchedulerTask task) {
+		if (task.level < 0) {
+			return;
+		}
+		if (task.previous == null) {
+			wheel[task.level][task.slot] = task.next;
+		} else {
+			task.previous.next = task.next;
+		}
+		if (task.next != null) {
+			task.next.previous = task.previous;
+		}
+		task.level = -1;
+		task.previous = null;
+		task.next = null;
+	}
+	
+	/**
+	 * Empties a slot and returns its tasks as a list linked through {@code next}.
+	 */
+	private LimboSchedulerTask detach(int level, int slot) {
+		LimboSchedulerTask head = wheel[level][slot];
+		wheel[level][slot] = null;
+		for (LimboSchedulerTask task = head; task != null; task = task.next) {
+			task.level = -1;
+			task.previous = null;
+		}
+		return head;
 	}
 	
 	public static class CurrentSchedulerTask {
@@ -227,6 +290,12 @@ public class LimboScheduler {
 		private LimboSchedulerTaskType type;
 		private long period;
 		
+		private long tick;
+		private int level = -1;
+		private int slot;
+		private LimboSchedulerTask previous;
+		private LimboSchedulerTask next;
+		
 		private LimboSchedulerTask(LimboPlugin plugin, LimboTask task, int taskId, LimboSchedulerTaskType type, long period) {
 			this.plugin = plugin;
 			this.task = task;
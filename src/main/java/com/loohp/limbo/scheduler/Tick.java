@@ -20,73 +20,88 @@
 package com.loohp.limbo.scheduler;
 
 import com.loohp.limbo.Limbo;
+import com.loohp.limbo.file.ServerProperties;
+import com.loohp.limbo.network.ClientConnection;
+import com.loohp.limbo.network.ConnectionThreads;
+import com.loohp.limbo.player.Player;
 import com.loohp.limbo.scheduler.LimboScheduler.CurrentSchedulerTask;
 import com.loohp.limbo.scheduler.LimboScheduler.LimboSchedulerTask;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class Tick {
 	
-	private int tickingInterval;
+	private static final long WARNING_INTERVAL = TimeUnit.SECONDS.toNanos(15);
+	
+	private final long tickingInterval;
+	private final int maxCatchUpTicks;
+	private final TickStatistics statistics;
+	private final TickProfiler profiler = new TickProfiler();
 	private AtomicLong tick = new AtomicLong(0);
+	private AtomicLong skippedTicks = new AtomicLong(0);
 	
-	private List<Thread> threads = new ArrayList<>();
-	private Queue<LimboSchedulerTask> asyncTasksQueue = new ConcurrentLinkedQueue<>();
+	private final ThreadPoolExecutor asyncExecutor;
+	private final ForkJoinPool playerUpdatePool;
 	
 	public Tick(Limbo instance) {
+		ServerProperties properties = instance.getServerProperties();
+		tickingInterval = Math.round(TimeUnit.SECONDS.toNanos(1) / properties.getDefinedTicksPerSecond());
+		maxCatchUpTicks = properties.getMaxCatchUpTicks();
+		statistics = new TickStatistics(properties.getDefinedTicksPerSecond());
+		
+		boolean virtual = properties.isAsyncTaskVirtualThreads();
+		if (virtual && !ConnectionThreads.isVirtualThreadsSupported()) {
+			instance.getConsole().sendMessage("Virtual threads require Java 21 or above, falling back to platform threads for async tasks");
+			virtual = false;
+		}
+		if (virtual) {
+			asyncExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 0, TimeUnit.MILLISECONDS, new SynchronousQueue<>(), ConnectionThreads.newThreadFactory("Limbo-Async-Virtual-", true));
+		} else {
+			int threads = properties.getAsyncTaskThreads();
+			asyncExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), ConnectionThreads.newThreadFactory("Limbo-Async-", false));
+		}
+		
+		if (properties.isParallelPlayerUpdates()) {
+			AtomicInteger threadId = new AtomicInteger(0);
+			playerUpdatePool = new ForkJoinPool(properties.getPlayerUpdateThreads(), pool -> {
+				ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+				thread.setName("Limbo-Player-Update-" + threadId.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}, null, false);
+		} else {
+			playerUpdatePool = null;
+		}
+		
 		new Thread(() -> {
-			tickingInterval = (int) Math.round(1000.0 / Limbo.getInstance().getServerProperties().getDefinedTicksPerSecond());
-
-			for (int i = 0; i < 4; i++) {
-				Thread thread = new Thread(() -> {
-					while (instance.isRunning()) {
-						LimboSchedulerTask task = asyncTasksQueue.poll();
-						if (task == null) {
-							try {
-								TimeUnit.NANOSECONDS.sleep(10000);
-							} catch (InterruptedException e) {
-								e.printStackTrace();
-							}
-						} else {
-							LimboTask limboTask = task.getTask();
-							try {
-								limboTask.run();
-							} catch (Throwable e) {
-								System.err.println("Task " + task.getTaskId() + " threw an exception: " + e.getLocalizedMessage());
-								e.printStackTrace();
-							}
-						}
-					}
-				});
-				thread.start();
-				threads.add(thread);
-			}
+			long nextTick = System.nanoTime();
+			long lastWarning = nextTick - WARNING_INTERVAL;
 
 			while (instance.isRunning()) {
-				long start = System.currentTimeMillis();
+				long start = System.nanoTime();
+				boolean profiling = profiler.isEnabled();
+				long phase = start;
 				tick.incrementAndGet();
-				instance.getPlayers().forEach(each -> {
-					if (each.clientConnection.isReady()) {
-						try {
-							each.playerInteractManager.update();
-						} catch (IOException e) {
-							e.printStackTrace();
-						}
-						/*
-						try {
-							each.getDataWatcher().update();
-						} catch (IllegalArgumentException | IllegalAccessException e) {
-							e.printStackTrace();
-						}
-						*/
-					}
-				});
+				if (playerUpdatePool == null) {
+					instance.getPlayers().forEach(Tick::updatePlayer);
+				} else {
+					Player[] players = instance.getPlayers().toArray(new Player[0]);
+					playerUpdatePool.invoke(new PlayerUpdateAction(players, 0, players.length));
+				}
+				if (profiling) {
+					phase = profiler.record(TickProfiler.Category.PHASE, null, "player updates", phase);
+				}
 				instance.getWorlds().forEach(each -> {
 					try {
 						each.update();
@@ -94,49 +109,200 @@ public class Tick {
 						e.printStackTrace();
 					}
 				});
+				if (profiling) {
+					phase = profiler.record(TickProfiler.Category.PHASE, null, "world updates", phase);
+				}
 
 				CurrentSchedulerTask tasks = instance.getScheduler().collectTasks(getCurrentTick());
 				if (tasks != null) {
-					asyncTasksQueue.addAll(tasks.getAsyncTasks());
+					for (LimboSchedulerTask task : tasks.getAsyncTasks()) {
+						runAsync(task);
+					}
 
-					tasks.getSyncedTasks().forEach(task -> {
+					for (LimboSchedulerTask task : tasks.getSyncedTasks()) {
 						LimboTask limboTask = task.getTask();
+						long taskStart = profiling ? System.nanoTime() : 0;
 						try {
 							limboTask.run();
 						} catch (Throwable e) {
 							System.err.println("Task " + task.getTaskId() + " threw an exception: " + e.getLocalizedMessage());
 							e.printStackTrace();
 						}
-					});
+						if (profiling) {
+							profiler.record(TickProfiler.Category.TASK, task.getPlugin().getName(), limboTask.getClass().getName(), taskStart);
+						}
+					}
+				}
+				if (profiling) {
+					phase = profiler.record(TickProfiler.Category.PHASE, null, "scheduled tasks", phase);
+				}
+
+				for (ClientConnection client : instance.getServerConnection().getClients()) {
+					try {
+						client.flush();
+					} catch (IOException ignore) {
+					}
+				}
+
+				long end = System.nanoTime();
+				statistics.record(start, end - start);
+				if (profiling) {
+					profiler.record(TickProfiler.Category.PHASE, null, "network flush", phase);
+					profiler.recordTick(end - start);
 				}
 
-				long end = System.currentTimeMillis();
+				nextTick += tickingInterval;
+				long behind = end - nextTick;
+				if (behind > (long) maxCatchUpTicks * tickingInterval) {
+					long skipped = behind / tickingInterval;
+					skippedTicks.addAndGet(skipped);
+					nextTick = end;
+					if (end - lastWarning >= WARNING_INTERVAL) {
+						lastWarning = end;
+						instance.getConsole().sendMessage("Can't keep up! Is the server overloaded? Running " + TimeUnit.NANOSECONDS.toMillis(behind) + "ms or " + skipped + " ticks behind");
+					}
+				} else if (behind < 0) {
+					try {
+						TimeUnit.NANOSECONDS.sleep(-behind);
+					} catch (InterruptedException e) {
+						e.printStackTrace();
+					}
+				}
+			}
+		}, "Limbo-Tick").start();
+	}
+	
+	private static void updatePlayer(Player player) {
+		if (player.clientConnection.isReady()) {
+			try {
+				player.playerInteractManager.update();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			/*
+			try {
+				player.getDataWatcher().update();
+			} catch (IllegalArgumentException | IllegalAccessException e) {
+				e.printStackTrace();
+			}
+			*/
+		}
+	}
+	
+	private void runAsync(LimboSchedulerTask task) {
+		try {
+			asyncExecutor.execute(() -> {
+				boolean profiling = profiler.isEnabled();
+				long start = profiling ? System.nanoTime() : 0;
 				try {
-					TimeUnit.MILLISECONDS.sleep(tickingInterval - (end - start));
-				} catch (InterruptedException e) {
+					task.getTask().run();
+				} catch (Throwable e) {
+					System.err.println("Task " + task.getTaskId() + " threw an exception: " + e.getLocalizedMessage());
 					e.printStackTrace();
 				}
-			}
-		}).start();
+				if (profiling) {
+					profiler.record(TickProfiler.Category.TASK, task.getPlugin().getName(), task.getTask().getClass().getName() + " (async)", start);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			System.err.println("Task " + task.getTaskId() + " was not run as the server is shutting down");
+		}
 	}
 	
 	public long getCurrentTick() {
 		return tick.get();
 	}
 	
-	@SuppressWarnings("deprecation")
+	public TickStatistics getStatistics() {
+		return statistics;
+	}
+	
+	public TickProfiler getProfiler() {
+		return profiler;
+	}
+	
+	public double getTps(TickStatistics.Window window) {
+		return statistics.getTps(window);
+	}
+	
+	/**
+	 * The number of ticks dropped because the server fell more than max-catch-up-ticks behind.
+	 */
+	public long getSkippedTicks() {
+		return skippedTicks.get();
+	}
+	
+	/**
+	 * The number of async tasks waiting for a free thread.
+	 */
+	public int getAsyncQueueSize() {
+		return asyncExecutor.getQueue().size();
+	}
+	
+	/**
+	 * The approximate number of async tasks that are running right now.
+	 */
+	public int getActiveAsyncTasks() {
+		return asyncExecutor.getActiveCount();
+	}
+	
+	/**
+	 * The approximate number of async tasks that have finished running.
+	 */
+	public long getCompletedAsyncTasks() {
+		return asyncExecutor.getCompletedTaskCount();
+	}
+	
+	/**
+	 * Stops accepting async tasks and waits for the queued and running ones to finish. Tasks still running after the
+	 * given time are interrupted and the ones still queued are dropped.
+	 */
 	public void waitAndKillThreads(long waitTime) {
-		long end = System.currentTimeMillis() + waitTime;
-		for (Thread thread : threads) {
-			try {
-				thread.join(Math.max(end - System.currentTimeMillis(), 1));
-			} catch (InterruptedException e) {
-				e.printStackTrace();
+		if (playerUpdatePool != null) {
+			playerUpdatePool.shutdown();
+		}
+		asyncExecutor.shutdown();
+		try {
+			if (asyncExecutor.awaitTermination(waitTime, TimeUnit.MILLISECONDS)) {
+				return;
 			}
-			if (thread.isAlive()) {
-				thread.stop();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		List<Runnable> dropped = asyncExecutor.shutdownNow();
+		System.err.println("Async tasks did not finish in time, interrupted " + asyncExecutor.getActiveCount() + " running and dropped " + dropped.size() + " queued task(s)");
+	}
+	
+	/**
+	 * Updates a range of players, splitting it in half until it is small enough that forking costs more than it saves.
+	 * Each player is updated by exactly one thread, so the packets of a player still go out in order.
+	 */
+	private static class PlayerUpdateAction extends RecursiveAction {
+		
+		private static final int THRESHOLD = 8;
+		
+		private final Player[] players;
+		private final int from;
+		private final int to;
+		
+		private PlayerUpdateAction(Player[] players, int from, int to) {
+			this.players = players;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if (to - from <= THRESHOLD) {
+				for (int i = from; i < to; i++) {
+					updatePlayer(players[i]);
+				}
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new PlayerUpdateAction(players, from, middle), new PlayerUpdateAction(players, middle, to));
 			}
 		}
+		
 	}
 	
 }
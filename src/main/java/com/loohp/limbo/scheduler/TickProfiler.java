@@ -0,0 +1,250 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.scheduler;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Times each tick phase, and the sync tasks and event handlers of every plugin, while it is enabled.
+ * When disabled, callers only pay for one volatile read per tick or event.
+ */
+public class TickProfiler {
+
+	public enum Category {
+
+		PHASE,
+		TASK,
+		EVENT;
+
+	}
+
+	private volatile boolean enabled;
+	private volatile long startedAt;
+	private volatile long stoppedAt;
+	private final Map<Section, Record> records = new ConcurrentHashMap<>();
+	private final Record ticks = new Record(null);
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Clears previous results and starts profiling.
+	 */
+	public synchronized void start() {
+		records.clear();
+		ticks.reset();
+		startedAt = System.nanoTime();
+		enabled = true;
+	}
+
+	public synchronized void stop() {
+		if (enabled) {
+			enabled = false;
+			stoppedAt = System.nanoTime();
+		}
+	}
+
+	/**
+	 * The time profiled so far in nanoseconds.
+	 */
+	public long getDuration() {
+		return (enabled ? System.nanoTime() : stoppedAt) - startedAt;
+	}
+
+	public void recordTick(long nanos) {
+		if (enabled) {
+			ticks.add(nanos);
+		}
+	}
+
+	/**
+	 * Records a section that started at the given time and returns the current time, so consecutive phases can be
+	 * chained.
+	 */
+	public long record(Category category, String owner, String name, long start) {
+		long now = System.nanoTime();
+		if (enabled) {
+			records.computeIfAbsent(new Section(category, owner, name), Record::new).add(now - start);
+		}
+		return now;
+	}
+
+	public Record getTicks() {
+		return ticks;
+	}
+
+	/**
+	 * Every record of the given category sorted by total time, the most expensive first.
+	 */
+	public List<Record> getRecords(Category category) {
+		List<Record> list = new ArrayList<>();
+		for (Record record : records.values()) {
+			if (record.getSection().getCategory().equals(category)) {
+				list.add(record);
+			}
+		}
+		list.sort(Comparator.comparingLong(Record::getTotalNanos).reversed());
+		return list;
+	}
+
+	/**
+	 * Report lines for the console, listing the phases and the given number of most expensive plugin tasks and event
+	 * handlers.
+	 */
+	public List<String> report(int top) {
+		List<String> lines = new ArrayList<>();
+		double seconds = getDuration() / (double) TimeUnit.SECONDS.toNanos(1);
+		lines.add(String.format("Profiled %d ticks over %.1fs, %.2fms per tick on average, %.2fms at most", ticks.getCount(), seconds, ticks.getAverageMillis(), ticks.getMaxMillis()));
+		lines.add("Tick phases:");
+		for (Record record : getRecords(Category.PHASE)) {
+			lines.add("  " + record.getSection().getName() + ": " + record);
+		}
+
+		Map<String, Long> plugins = new HashMap<>();
+		List<Record> offenders = new ArrayList<>();
+		for (Category category : new Category[] {Category.TASK, Category.EVENT}) {
+			for (Record record : getRecords(category)) {
+				plugins.merge(record.getSection().getOwner(), record.getTotalNanos(), Long::sum);
+				offenders.add(record);
+			}
+		}
+		if (!plugins.isEmpty()) {
+			lines.add("Plugins:");
+			plugins.entrySet().stream().sorted((a, b) -> Long.compare(b.getValue(), a.getValue())).forEach(entry -> {
+				lines.add(String.format("  %s: %.2fms total", entry.getKey(), entry.getValue() / 1000000.0));
+			});
+			offenders.sort(Comparator.comparingLong(Record::getTotalNanos).reversed());
+			lines.add("Top " + Math.min(top, offenders.size()) + " plugin tasks and event handlers:");
+			for (int i = 0; i < top && i < offenders.size(); i++) {
+				Section section = offenders.get(i).getSection();
+				lines.add("  [" + section.getOwner() + "] " + section.getCategory().name().toLowerCase() + " " + section.getName() + ": " + offenders.get(i));
+			}
+		}
+		return lines;
+	}
+
+	public static class Section {
+
+		private final Category category;
+		private final String owner;
+		private final String name;
+
+		public Section(Category category, String owner, String name) {
+			this.category = category;
+			this.owner = owner;
+			this.name = name;
+		}
+
+		public Category getCategory() {
+			return category;
+		}
+
+		/**
+		 * The owning plugin name, or null for tick phases.
+		 */
+		public String getOwner() {
+			return owner;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (o == null || getClass() != o.getClass()) {
+				return false;
+			}
+			Section section = (Section) o;
+			return category == section.category && Objects.equals(owner, section.owner) && name.equals(section.name);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(category, owner, name);
+		}
+
+	}
+
+	public static class Record {
+
+		private final Section section;
+		private final LongAdder count = new LongAdder();
+		private final LongAdder total = new LongAdder();
+		private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+		private Record(Section section) {
+			this.section = section;
+		}
+
+		private void add(long nanos) {
+			count.increment();
+			total.add(nanos);
+			max.accumulate(nanos);
+		}
+
+		private void reset() {
+			count.reset();
+			total.reset();
+			max.reset();
+		}
+
+		public Section getSection() {
+			return section;
+		}
+
+		public long getCount() {
+			return count.sum();
+		}
+
+		public long getTotalNanos() {
+			return total.sum();
+		}
+
+		public double getAverageMillis() {
+			long count = getCount();
+			return count == 0 ? 0 : getTotalNanos() / 1000000.0 / count;
+		}
+
+		public double getMaxMillis() {
+			return max.get() / 1000000.0;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d calls, %.2fms total, %.3fms average, %.3fms max", getCount(), getTotalNanos() / 1000000.0, getAverageMillis(), getMaxMillis());
+		}
+
+	}
+
+}
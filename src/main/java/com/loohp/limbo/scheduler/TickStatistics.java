@@ -0,0 +1,146 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.scheduler;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rolling record of how long each tick took, kept for the longest {@link Window}.
+ */
+public class TickStatistics {
+
+	public enum Window {
+
+		ONE_SECOND(1),
+		ONE_MINUTE(60),
+		FIVE_MINUTES(300);
+
+		private final long nanos;
+
+		Window(long seconds) {
+			this.nanos = TimeUnit.SECONDS.toNanos(seconds);
+		}
+
+		public long getNanos() {
+			return nanos;
+		}
+
+	}
+
+	private final double targetTps;
+	private final long[] starts;
+	private final long[] durations;
+	private int head;
+	private int size;
+
+	public TickStatistics(double targetTps) {
+		this.targetTps = targetTps;
+		//room for twice the target rate so catching up does not push samples out of the window early
+		int capacity = (int) Math.ceil(targetTps * TimeUnit.NANOSECONDS.toSeconds(Window.FIVE_MINUTES.getNanos()) * 2) + 1;
+		this.starts = new long[capacity];
+		this.durations = new long[capacity];
+	}
+
+	public synchronized void record(long start, long duration) {
+		starts[head] = start;
+		durations[head] = duration;
+		head = (head + 1) % starts.length;
+		if (size < starts.length) {
+			size++;
+		}
+	}
+
+	public double getTargetTps() {
+		return targetTps;
+	}
+
+	/**
+	 * The number of ticks per second over the given window, measured between the tick start times in it. A tick that
+	 * is taking longer than the average interval so far counts as the server having stalled until now.
+	 */
+	public synchronized double getTps(Window window) {
+		long now = System.nanoTime();
+		int count = countSince(now - window.getNanos());
+		if (count == 0) {
+			return 0;
+		}
+		long oldest = starts[index(size - count)];
+		long newest = starts[index(size - 1)];
+		long span = newest - oldest;
+		if (now == oldest) {
+			return 0;
+		}
+		if ((now - newest) * (count - 1) >= span) {
+			return count * (double) TimeUnit.SECONDS.toNanos(1) / (now - oldest);
+		}
+		return (count - 1) * (double) TimeUnit.SECONDS.toNanos(1) / span;
+	}
+
+	/**
+	 * The given percentile (0 to 100) of tick durations in milliseconds over the given window, or 0 if no tick has
+	 * finished in it.
+	 */
+	public double getMspt(Window window, double percentile) {
+		return getMspt(window, new double[] {percentile})[0];
+	}
+
+	/**
+	 * Same as {@link #getMspt(Window, double)} for several percentiles, sorting the window only once.
+	 */
+	public double[] getMspt(Window window, double... percentiles) {
+		long[] sorted;
+		synchronized (this) {
+			int count = countSince(System.nanoTime() - window.getNanos());
+			sorted = new long[count];
+			for (int i = 0; i < count; i++) {
+				sorted[i] = durations[index(size - count + i)];
+			}
+		}
+		double[] result = new double[percentiles.length];
+		if (sorted.length == 0) {
+			return result;
+		}
+		Arrays.sort(sorted);
+		for (int i = 0; i < percentiles.length; i++) {
+			int rank = (int) Math.ceil(percentiles[i] / 100.0 * sorted.length) - 1;
+			rank = Math.max(0, Math.min(sorted.length - 1, rank));
+			result[i] = sorted[rank] / 1000000.0;
+		}
+		return result;
+	}
+
+	private int countSince(long since) {
+		int count = 0;
+		for (int i = size - 1; i >= 0; i--) {
+			if (starts[index(i)] - since < 0) {
+				break;
+			}
+			count++;
+		}
+		return count;
+	}
+
+	//i is 0 for the oldest sample
+	private int index(int i) {
+		return (head - size + i + starts.length) % starts.length;
+	}
+
+}
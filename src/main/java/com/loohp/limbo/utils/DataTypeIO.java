@@ -35,7 +35,6 @@ import net.querz.nbt.io.NBTOutputStream;
 import net.querz.nbt.tag.EndTag;
 import net.querz.nbt.tag.Tag;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -57,21 +56,22 @@ public class DataTypeIO {
 			DataTypeIO.writeVarInt(out, itemstack.amount());
 			writeVarInt(out, BuiltInRegistries.ITEM_REGISTRY.getId(itemstack.type()));
 			Map<Key, Tag<?>> components = itemstack.components();
-			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-			DataOutputStream componentOut = new DataOutputStream(buffer);
 			int componentSize = 0;
+			for (Key componentKey : components.keySet()) {
+				if (BuiltInRegistries.DATA_COMPONENT_TYPE.getId(componentKey) >= 0 && DataComponentType.isKnownType(componentKey)) {
+					componentSize++;
+				}
+			}
+			DataTypeIO.writeVarInt(out, componentSize);
+			DataTypeIO.writeVarInt(out, 0);
 			for (Map.Entry<Key, Tag<?>> entry : components.entrySet()) {
 				Key componentKey = entry.getKey();
 				int typeId = BuiltInRegistries.DATA_COMPONENT_TYPE.getId(componentKey);
 				if (typeId >= 0 && DataComponentType.isKnownType(componentKey)) {
-					DataTypeIO.writeVarInt(componentOut, typeId);
-					DataTypeIO.writeTag(componentOut, entry.getValue());
-					componentSize++;
+					DataTypeIO.writeVarInt(out, typeId);
+					DataTypeIO.writeTag(out, entry.getValue());
 				}
 			}
-			DataTypeIO.writeVarInt(out, componentSize);
-			DataTypeIO.writeVarInt(out, 0);
-			out.write(buffer.toByteArray());
 		}
 	}
 
@@ -256,18 +256,8 @@ public class DataTypeIO {
 	}
 	
 	public static int getVarIntLength(int value) throws IOException {
-		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-		DataOutputStream out = new DataOutputStream(buffer);
-	    do {
-	        byte temp = (byte)(value & 0b01111111);
-	        // Note: >>> means that the sign bit is shifted with the rest of the number rather than being left alone
-	        value >>>= 7;
-	        if (value != 0) {
-	            temp |= 0b10000000;
-	        }
-	        out.writeByte(temp);
-	    } while (value != 0);
-	    return buffer.toByteArray().length;
+		// 7 bits per byte, negative values always take 5 bytes
+	    return (31 - Integer.numberOfLeadingZeros(value | 1)) / 7 + 1;
 	}
 	
 	public static long readVarLong(DataInputStream in) throws IOException {
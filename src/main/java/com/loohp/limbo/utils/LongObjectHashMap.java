@@ -0,0 +1,203 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An open addressing hash map from primitive long keys to objects, without boxing the keys. Null values are not allowed.
+ * <p>
+ * Writes must be externally synchronized. {@link #get(long)} may run concurrently with {@link #put(long, Object)}, in
+ * which case it may not see an entry that is being added at the same time: a value is published with a volatile
+ * write after its key, so a reader that sees the value also sees its key and everything written before the put.
+ * {@link #remove(long)} moves entries around and must not run concurrently with reads.
+ */
+public class LongObjectHashMap<V> {
+
+	private static final int INITIAL_CAPACITY = 16;
+	private static final float LOAD_FACTOR = 0.5F;
+
+	@FunctionalInterface
+	public interface EntryConsumer<V> {
+
+		void accept(long key, V value);
+
+	}
+
+	private static final class Table {
+
+		private final long[] keys;
+		private final AtomicReferenceArray<Object> values;
+		private final int mask;
+
+		private Table(int capacity) {
+			this.keys = new long[capacity];
+			this.values = new AtomicReferenceArray<>(capacity);
+			this.mask = capacity - 1;
+		}
+
+	}
+
+	private volatile Table table;
+	private int size;
+
+	public LongObjectHashMap() {
+		this.table = new Table(INITIAL_CAPACITY);
+		this.size = 0;
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		Table table = this.table;
+		for (int i = hash(key) & table.mask; ; i = (i + 1) & table.mask) {
+			Object value = table.values.get(i);
+			if (value == null) {
+				return null;
+			}
+			if (table.keys[i] == key) {
+				return (V) value;
+			}
+		}
+	}
+
+	public boolean containsKey(long key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * Associates the value with the key and returns the previous value, if any.
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		if (value == null) {
+			throw new NullPointerException("Null values are not allowed");
+		}
+		Table table = this.table;
+		for (int i = hash(key) & table.mask; ; i = (i + 1) & table.mask) {
+			Object existing = table.values.get(i);
+			if (existing == null) {
+				table.keys[i] = key;
+				table.values.set(i, value);
+				if (++size > table.keys.length * LOAD_FACTOR) {
+					resize(table.keys.length << 1);
+				}
+				return null;
+			}
+			if (table.keys[i] == key) {
+				table.values.set(i, value);
+				return (V) existing;
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+		Table table = this.table;
+		int i = hash(key) & table.mask;
+		while (true) {
+			Object existing = table.values.get(i);
+			if (existing == null) {
+				return null;
+			}
+			if (table.keys[i] == key) {
+				break;
+			}
+			i = (i + 1) & table.mask;
+		}
+		V removed = (V) table.values.get(i);
+		// shift the following entries of the probe sequence back so lookups do not stop at the hole
+		int hole = i;
+		for (int j = (hole + 1) & table.mask; table.values.get(j) != null; j = (j + 1) & table.mask) {
+			int home = hash(table.keys[j]) & table.mask;
+			if (((j - home) & table.mask) >= ((j - hole) & table.mask)) {
+				table.keys[hole] = table.keys[j];
+				table.values.set(hole, table.values.get(j));
+				hole = j;
+			}
+		}
+		table.values.set(hole, null);
+		size--;
+		return removed;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		this.table = new Table(INITIAL_CAPACITY);
+		this.size = 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	public void forEach(EntryConsumer<? super V> consumer) {
+		Table table = this.table;
+		for (int i = 0; i < table.values.length(); i++) {
+			Object value = table.values.get(i);
+			if (value != null) {
+				consumer.accept(table.keys[i], (V) value);
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public List<V> values() {
+		Table table = this.table;
+		List<V> values = new ArrayList<>(size);
+		for (int i = 0; i < table.values.length(); i++) {
+			Object value = table.values.get(i);
+			if (value != null) {
+				values.add((V) value);
+			}
+		}
+		return values;
+	}
+
+	private void resize(int capacity) {
+		Table old = this.table;
+		Table resized = new Table(capacity);
+		for (int i = 0; i < old.values.length(); i++) {
+			Object value = old.values.get(i);
+			if (value != null) {
+				long key = old.keys[i];
+				int j = hash(key) & resized.mask;
+				while (resized.values.get(j) != null) {
+					j = (j + 1) & resized.mask;
+				}
+				resized.keys[j] = key;
+				// not visible to readers until the table is published below
+				resized.values.lazySet(j, value);
+			}
+		}
+		this.table = resized;
+	}
+
+}
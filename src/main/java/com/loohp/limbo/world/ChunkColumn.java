@@ -0,0 +1,117 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.world;
+
+import net.querz.mca.Chunk;
+import net.querz.nbt.tag.CompoundTag;
+import net.querz.nbt.tag.ListTag;
+
+import java.util.Arrays;
+
+/**
+ * A chunk of a world together with its position. The blocks are kept in 16 {@link ChunkSection}s from the bottom of
+ * the world up, the Querz {@link Chunk} only holds the height maps, biomes and tile entities.
+ */
+public class ChunkColumn {
+
+	public static final int SECTION_COUNT = 16;
+
+	static final ChunkSection[] EMPTY_SECTIONS = new ChunkSection[SECTION_COUNT];
+
+	static {
+		Arrays.fill(EMPTY_SECTIONS, ChunkSection.AIR);
+	}
+
+	public static long toKey(int chunkX, int chunkZ) {
+		return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+	}
+
+	public static int getKeyX(long key) {
+		return (int) (key >> 32);
+	}
+
+	public static int getKeyZ(long key) {
+		return (int) key;
+	}
+
+	private final World world;
+	private final int x;
+	private final int z;
+	private final Chunk chunk;
+	private final ChunkSection[] sections;
+
+	ChunkColumn(World world, int x, int z) {
+		this.world = world;
+		this.x = x;
+		this.z = z;
+		this.chunk = Chunk.newChunk();
+		this.chunk.cleanupPalettesAndBlockStates();
+		this.chunk.setHeightMaps(World.HEIGHT_MAP.clone());
+		this.chunk.setBiomes(new int[256]);
+		this.chunk.setTileEntities(new ListTag<>(CompoundTag.class));
+		this.sections = EMPTY_SECTIONS.clone();
+	}
+
+	public World getWorld() {
+		return world;
+	}
+
+	public int getX() {
+		return x;
+	}
+
+	public int getZ() {
+		return z;
+	}
+
+	public long getKey() {
+		return toKey(x, z);
+	}
+
+	public ChunkPosition getPosition() {
+		return new ChunkPosition(world, x, z);
+	}
+
+	public Chunk getChunk() {
+		return chunk;
+	}
+
+	/**
+	 * The sections of this chunk from the bottom of the world up. Sections that are still all air are the shared
+	 * {@link ChunkSection#AIR} instance, use {@link World#setBlockStateId(int, int, int, int)} to change blocks.
+	 */
+	public ChunkSection[] getSections() {
+		return sections;
+	}
+
+	void setSection(int sectionY, ChunkSection section) {
+		sections[sectionY] = section;
+	}
+
+	ChunkSection getWritableSection(int sectionY) {
+		ChunkSection section = sections[sectionY];
+		if (section.isShared()) {
+			section = new ChunkSection();
+			sections[sectionY] = section;
+		}
+		return section;
+	}
+
+}
@@ -0,0 +1,139 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.world;
+
+import com.loohp.limbo.network.PreparedPacket;
+import com.loohp.limbo.network.protocol.packets.ClientboundLevelChunkWithLightPacket;
+import net.querz.mca.Chunk;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the chunk data packet of every chunk of a world, so that a chunk is serialized and compressed once
+ * instead of once per player that loads it. Entries are dropped when a block in the chunk changes or the
+ * light of the world is recalculated.
+ */
+public class ChunkPacketCache {
+
+	private static final ChunkSection[] EMPTY_SECTIONS = new ChunkSection[16];
+	private static final int MAX_OUTSIDE_PACKETS = 4096;
+
+	static {
+		Arrays.fill(EMPTY_SECTIONS, ChunkSection.AIR);
+	}
+
+	private final World world;
+	private final Map<Long, PreparedPacket> packets;
+	private final Map<Long, PreparedPacket> outsidePackets;
+
+	public ChunkPacketCache(World world) {
+		this.world = world;
+		this.packets = new ConcurrentHashMap<>();
+		// chunks outside the world are empty and only depend on their position, the least recently used are dropped
+		// so players walking away from the world do not grow the cache without bound
+		this.outsidePackets = Collections.synchronizedMap(new LinkedHashMap<Long, PreparedPacket>(256, 0.75F, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, PreparedPacket> eldest) {
+				return size() > MAX_OUTSIDE_PACKETS;
+			}
+		});
+	}
+
+	public PreparedPacket getChunkPacket(int chunkX, int chunkZ) {
+		Chunk chunk = world.getChunkForReading(chunkX, chunkZ);
+		if (chunk == null) {
+			return outsidePackets.computeIfAbsent(toKey(chunkX, chunkZ), key -> new PreparedPacket(new ClientboundLevelChunkWithLightPacket(chunkX, chunkZ, World.EMPTY_CHUNK, EMPTY_SECTIONS, world.getEnvironment(), new byte[0][], new byte[0][])));
+		}
+		return packets.computeIfAbsent(toKey(chunkX, chunkZ), key -> new PreparedPacket(createPacket(chunkX, chunkZ, chunk)));
+	}
+
+	private ClientboundLevelChunkWithLightPacket createPacket(int chunkX, int chunkZ, Chunk chunk) {
+		byte[][] blockChunk = world.getLightEngineBlock().getBlockLightSections(chunkX, chunkZ);
+		byte[][] skyChunk;
+		if (world.hasSkyLight()) {
+			skyChunk = world.getLightEngineSky().getSkyLightSections(chunkX, chunkZ);
+		} else {
+			skyChunk = new byte[0][];
+		}
+		return new ClientboundLevelChunkWithLightPacket(chunkX, chunkZ, chunk, world.getChunkSections(chunkX, chunkZ), world.getEnvironment(), skyChunk, blockChunk);
+	}
+
+	/**
+	 * Caches a chunk packet that was serialized earlier, the blocks and light of the chunk must not have changed since.
+	 */
+	void put(int chunkX, int chunkZ, byte[] serialized) {
+		Chunk chunk = world.getChunkForReading(chunkX, chunkZ);
+		if (chunk != null) {
+			packets.put(toKey(chunkX, chunkZ), new PreparedPacket(createPacket(chunkX, chunkZ, chunk), serialized));
+		}
+	}
+
+	public void invalidate(int chunkX, int chunkZ) {
+		long key = toKey(chunkX, chunkZ);
+		packets.remove(key);
+		outsidePackets.remove(key);
+	}
+
+	public void invalidateAll() {
+		packets.clear();
+		outsidePackets.clear();
+	}
+
+	/**
+	 * Serializes the packets of all chunks of the world in the background.
+	 */
+	public void prewarm() {
+		int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		AtomicInteger threadId = new AtomicInteger(0);
+		ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "Limbo-ChunkPacketCache-" + threadId.getAndIncrement());
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		});
+		for (int x = world.getMinChunkX(); x <= world.getMaxChunkX(); x++) {
+			for (int z = world.getMinChunkZ(); z <= world.getMaxChunkZ(); z++) {
+				int chunkX = x;
+				int chunkZ = z;
+				executor.execute(() -> {
+					try {
+						getChunkPacket(chunkX, chunkZ).getSerialized();
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				});
+			}
+		}
+		executor.shutdown();
+	}
+
+	private static long toKey(int chunkX, int chunkZ) {
+		return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+	}
+
+}
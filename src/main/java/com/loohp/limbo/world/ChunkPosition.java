@@ -35,7 +35,7 @@ public class ChunkPosition {
 	}
 	
 	public ChunkPosition(Location location) {
-		this(location.getWorld(), (int) location.getX() >> 4, (int) location.getZ() >> 4);
+		this(location.getWorld(), (int) Math.floor(location.getX()) >> 4, (int) Math.floor(location.getZ()) >> 4);
 	}
 	
 	public ChunkPosition(World world, Chunk chunk) {
@@ -54,6 +54,10 @@ public class ChunkPosition {
 		return z;
 	}
 	
+	/**
+	 * @deprecated the returned chunk holds no blocks, see {@link World#getChunkAt(int, int)}
+	 */
+	@Deprecated
 	public Chunk getChunk() {
 		return getWorld().getChunkAt(x, z);
 	}
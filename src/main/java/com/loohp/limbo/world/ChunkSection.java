@@ -0,0 +1,310 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.world;
+
+import com.loohp.limbo.utils.DataTypeIO;
+import net.querz.mca.Section;
+import net.querz.nbt.tag.CompoundTag;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A 16x16x16 section of blocks stored as global palette IDs, packed the same way the client expects them in
+ * the chunk data packet. Small sections use a local palette of at most 256 entries, larger ones store the
+ * global IDs directly. The number of non-air blocks is kept up to date on every change.
+ */
+public class ChunkSection {
+
+	public static final int SIZE = 4096;
+	public static final int AIR_ID;
+	public static final ChunkSection AIR;
+
+	private static final int MIN_INDIRECT_BITS = 4;
+	private static final int MAX_INDIRECT_BITS = 8;
+	private static final int GLOBAL_BITS;
+
+	static {
+		CompoundTag air = new CompoundTag();
+		air.putString("Name", "minecraft:air");
+		AIR_ID = GeneratedBlockDataMappings.getGlobalPaletteIDFromState(air);
+		GLOBAL_BITS = Math.max(1, 32 - Integer.numberOfLeadingZeros(GeneratedBlockDataMappings.getGlobalPaletteSize() - 1));
+		AIR = new ChunkSection(AIR_ID, true);
+	}
+
+	public static ChunkSection fromSection(Section section) {
+		if (section == null) {
+			return AIR;
+		}
+		Map<CompoundTag, Integer> ids = new IdentityHashMap<>();
+		ChunkSection chunkSection = new ChunkSection();
+		for (int y = 0; y < 16; y++) {
+			for (int z = 0; z < 16; z++) {
+				for (int x = 0; x < 16; x++) {
+					CompoundTag tag = section.getBlockStateAt(x, y, z);
+					if (tag != null) {
+						chunkSection.set(x, y, z, ids.computeIfAbsent(tag, GeneratedBlockDataMappings::getGlobalPaletteIDFromState));
+					}
+				}
+			}
+		}
+		return chunkSection;
+	}
+
+	/**
+	 * Reads a section in the format written by {@link #write(DataOutputStream)}.
+	 */
+	public static ChunkSection read(ByteBuffer buffer) throws IOException {
+		try {
+			int nonAirCount = buffer.getShort();
+			int bits = buffer.get();
+			Storage storage;
+			if (bits == 0) {
+				storage = new Storage(0, new int[] {readVarInt(buffer)}, 1);
+			} else if (bits >= MIN_INDIRECT_BITS && bits <= MAX_INDIRECT_BITS) {
+				int paletteSize = readVarInt(buffer);
+				if (paletteSize < 1 || paletteSize > 1 << bits) {
+					throw new IOException("Invalid palette size " + paletteSize + " for " + bits + " bits per block");
+				}
+				int[] palette = new int[1 << bits];
+				for (int i = 0; i < paletteSize; i++) {
+					palette[i] = readVarInt(buffer);
+				}
+				storage = new Storage(bits, palette, paletteSize);
+			} else if (bits == GLOBAL_BITS) {
+				storage = new Storage(bits, null, 0);
+			} else {
+				throw new IOException("Invalid number of bits per block " + bits);
+			}
+			int dataLength = readVarInt(buffer);
+			if (dataLength != storage.data.length) {
+				throw new IOException("Invalid data length " + dataLength + " for " + bits + " bits per block");
+			}
+			for (int i = 0; i < dataLength; i++) {
+				storage.data[i] = buffer.getLong();
+			}
+			return new ChunkSection(storage, nonAirCount);
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Premature end of section data", e);
+		}
+	}
+
+	private static int readVarInt(ByteBuffer buffer) throws IOException {
+		int value = 0;
+		for (int i = 0; i < 5; i++) {
+			byte b = buffer.get();
+			value |= (b & 127) << (i * 7);
+			if ((b & 128) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("VarInt too big");
+	}
+
+	private static int index(int x, int y, int z) {
+		return ((y & 15) << 8) | ((z & 15) << 4) | (x & 15);
+	}
+
+	private final boolean immutable;
+	private volatile Storage storage;
+	private int nonAirCount;
+
+	public ChunkSection() {
+		this(AIR_ID, false);
+	}
+
+	private ChunkSection(int fill, boolean immutable) {
+		this.immutable = immutable;
+		this.storage = new Storage(0, new int[] {fill}, 1);
+		this.nonAirCount = GeneratedBlockDataMappings.isAir(fill) ? 0 : SIZE;
+	}
+
+	private ChunkSection(Storage storage, int nonAirCount) {
+		this.immutable = false;
+		this.storage = storage;
+		this.nonAirCount = nonAirCount;
+	}
+
+	public int get(int x, int y, int z) {
+		return storage.get(index(x, y, z));
+	}
+
+	/**
+	 * Sets the global palette ID of a block and returns the previous one.
+	 */
+	public synchronized int set(int x, int y, int z, int id) {
+		if (immutable) {
+			throw new UnsupportedOperationException("This section is shared and cannot be modified");
+		}
+		int index = index(x, y, z);
+		Storage storage = this.storage;
+		int old = storage.get(index);
+		if (old == id) {
+			return old;
+		}
+		int value = storage.valueOf(id);
+		if (value < 0) {
+			storage = grow(storage, id);
+			value = storage.valueOf(id);
+		}
+		storage.set(index, value);
+		if (GeneratedBlockDataMappings.isAir(old)) {
+			nonAirCount++;
+		}
+		if (GeneratedBlockDataMappings.isAir(id)) {
+			nonAirCount--;
+		}
+		return old;
+	}
+
+	public int getNonAirCount() {
+		return nonAirCount;
+	}
+
+	public boolean isEmpty() {
+		return nonAirCount == 0;
+	}
+
+	public boolean isShared() {
+		return immutable;
+	}
+
+	/**
+	 * Writes this section in the block states format of the chunk data packet.
+	 */
+	public synchronized void write(DataOutputStream output) throws IOException {
+		Storage storage = this.storage;
+		output.writeShort(nonAirCount);
+		output.writeByte(storage.bits);
+		if (storage.bits == 0) {
+			DataTypeIO.writeVarInt(output, storage.palette[0]);
+		} else if (storage.palette != null) {
+			DataTypeIO.writeVarInt(output, storage.paletteSize);
+			for (int i = 0; i < storage.paletteSize; i++) {
+				DataTypeIO.writeVarInt(output, storage.palette[i]);
+			}
+		}
+		DataTypeIO.writeVarInt(output, storage.data.length);
+		for (long l : storage.data) {
+			output.writeLong(l);
+		}
+	}
+
+	/**
+	 * The number of bytes {@link #write(DataOutputStream)} produces.
+	 */
+	public int getSerializedSize() {
+		Storage storage = this.storage;
+		int size = 3;
+		if (storage.bits == 0) {
+			size += varIntLength(storage.palette[0]);
+		} else if (storage.palette != null) {
+			size += varIntLength(storage.paletteSize);
+			for (int i = 0; i < storage.paletteSize; i++) {
+				size += varIntLength(storage.palette[i]);
+			}
+		}
+		return size + varIntLength(storage.data.length) + storage.data.length * 8;
+	}
+
+	private static int varIntLength(int value) {
+		return (31 - Integer.numberOfLeadingZeros(value | 1)) / 7 + 1;
+	}
+
+	private Storage grow(Storage storage, int id) {
+		if (storage.paletteSize < storage.palette.length) {
+			storage.palette[storage.paletteSize++] = id;
+			return storage;
+		}
+		Storage grown;
+		if (storage.bits < MAX_INDIRECT_BITS) {
+			int bits = storage.bits == 0 ? MIN_INDIRECT_BITS : storage.bits + 1;
+			int[] palette = new int[1 << bits];
+			System.arraycopy(storage.palette, 0, palette, 0, storage.paletteSize);
+			palette[storage.paletteSize] = id;
+			grown = new Storage(bits, palette, storage.paletteSize + 1);
+		} else {
+			grown = new Storage(GLOBAL_BITS, null, 0);
+		}
+		for (int i = 0; i < SIZE; i++) {
+			int value = storage.get(i);
+			grown.set(i, grown.valueOf(value));
+		}
+		this.storage = grown;
+		return grown;
+	}
+
+	private static final class Storage {
+
+		private final int bits;
+		private final int[] palette;
+		private int paletteSize;
+		private final long[] data;
+		private final int valuesPerLong;
+		private final long mask;
+
+		private Storage(int bits, int[] palette, int paletteSize) {
+			this.bits = bits;
+			this.palette = palette;
+			this.paletteSize = paletteSize;
+			if (bits == 0) {
+				this.valuesPerLong = 0;
+				this.data = new long[0];
+			} else {
+				this.valuesPerLong = 64 / bits;
+				this.data = new long[(SIZE + valuesPerLong - 1) / valuesPerLong];
+			}
+			this.mask = (1L << bits) - 1;
+		}
+
+		private int get(int index) {
+			if (bits == 0) {
+				return palette[0];
+			}
+			int shift = (index % valuesPerLong) * bits;
+			int value = (int) ((data[index / valuesPerLong] >>> shift) & mask);
+			return palette == null ? value : palette[value];
+		}
+
+		private void set(int index, int value) {
+			int cell = index / valuesPerLong;
+			int shift = (index % valuesPerLong) * bits;
+			data[cell] = (data[cell] & ~(mask << shift)) | ((long) value << shift);
+		}
+
+		private int valueOf(int id) {
+			if (palette == null) {
+				return id;
+			}
+			for (int i = 0; i < paletteSize; i++) {
+				if (palette[i] == id) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+	}
+
+}
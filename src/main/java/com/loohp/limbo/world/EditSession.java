@@ -0,0 +1,104 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.world;
+
+import java.util.Arrays;
+
+/**
+ * Collects block changes and applies them to a world in one pass. Relighting and chunk packet cache invalidation
+ * happen once for the whole session when it is applied instead of once per block, and players are sent the changes
+ * with the next tick's block updates.
+ */
+public class EditSession implements AutoCloseable {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final World world;
+	private int size;
+	private int[] xs;
+	private int[] ys;
+	private int[] zs;
+	private int[] stateIds;
+
+	EditSession(World world) {
+		this.world = world;
+		this.size = 0;
+		this.xs = new int[INITIAL_CAPACITY];
+		this.ys = new int[INITIAL_CAPACITY];
+		this.zs = new int[INITIAL_CAPACITY];
+		this.stateIds = new int[INITIAL_CAPACITY];
+	}
+
+	public World getWorld() {
+		return world;
+	}
+
+	public EditSession setBlock(BlockPosition blockPosition, BlockState state) {
+		return setBlock(blockPosition.getX(), blockPosition.getY(), blockPosition.getZ(), state);
+	}
+
+	public EditSession setBlock(int x, int y, int z, BlockState state) {
+		return setBlockStateId(x, y, z, GeneratedBlockDataMappings.getGlobalPaletteIDFromState(state.toCompoundTag()));
+	}
+
+	public EditSession setBlock(int x, int y, int z, String blockdata) {
+		return setBlockStateId(x, y, z, World.toBlockStateId(blockdata));
+	}
+
+	public EditSession setBlockStateId(int x, int y, int z, int id) {
+		if (size == xs.length) {
+			int capacity = size << 1;
+			xs = Arrays.copyOf(xs, capacity);
+			ys = Arrays.copyOf(ys, capacity);
+			zs = Arrays.copyOf(zs, capacity);
+			stateIds = Arrays.copyOf(stateIds, capacity);
+		}
+		xs[size] = x;
+		ys[size] = y;
+		zs[size] = z;
+		stateIds[size] = id;
+		size++;
+		return this;
+	}
+
+	/**
+	 * The number of block changes queued since the session was last applied.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Applies the queued block changes to the world, the session can be reused afterwards.
+	 */
+	public void apply() {
+		if (size == 0) {
+			return;
+		}
+		world.applyEdits(size, xs, ys, zs, stateIds);
+		size = 0;
+	}
+
+	@Override
+	public void close() {
+		apply();
+	}
+
+}
@@ -26,20 +26,22 @@ import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.TreeMap;
 
 public class GeneratedBlockDataMappings {
 	
-	private static JSONObject globalPalette = new JSONObject();
+	private static Map<String, BlockStates> blocks = new HashMap<>();
+	private static Map<String, Integer> stateIds = new HashMap<>();
+	private static CompoundTag[] statesById = new CompoundTag[0];
+	private static boolean[] airById = new boolean[0];
 	
 	static {
 		String block = "reports/blocks.json";
@@ -47,46 +49,158 @@ public class GeneratedBlockDataMappings {
 		if (inputStream == null) {
 			throw new RuntimeException("Failed to load " + block + " from jar!");
 		}
+		JSONObject globalPalette = new JSONObject();
         try (InputStreamReader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8)) {
         	globalPalette = (JSONObject) new JSONParser().parse(reader);
 		} catch (IOException | ParseException e) {
 			e.printStackTrace();
-		}		
+		}
+		int size = 0;
+		for (Object value : globalPalette.values()) {
+			for (Object state : (JSONArray) ((JSONObject) value).get("states")) {
+				size = Math.max(size, (int) (long) ((JSONObject) state).get("id") + 1);
+			}
+		}
+		statesById = new CompoundTag[size];
+		airById = new boolean[size];
+		for (Object entry : globalPalette.entrySet()) {
+			String blockname = (String) ((Map.Entry<?, ?>) entry).getKey();
+			JSONObject data = (JSONObject) ((Map.Entry<?, ?>) entry).getValue();
+			boolean air = blockname.equals("minecraft:air") || blockname.equals("minecraft:cave_air") || blockname.equals("minecraft:void_air");
+			BlockStates blockStates = new BlockStates((JSONObject) data.get("properties"));
+			for (Object state : (JSONArray) data.get("states")) {
+				JSONObject stateJson = (JSONObject) state;
+				int id = (int) (long) stateJson.get("id");
+				CompoundTag tag = new CompoundTag();
+				tag.putString("Name", blockname);
+				JSONObject properties = (JSONObject) stateJson.get("properties");
+				Map<String, String> sortedProperties = new TreeMap<>();
+				if (properties != null) {
+					CompoundTag propertiesTag = new CompoundTag();
+					for (Object property : properties.entrySet()) {
+						String key = (String) ((Map.Entry<?, ?>) property).getKey();
+						String value = (String) ((Map.Entry<?, ?>) property).getValue();
+						propertiesTag.putString(key, value);
+						sortedProperties.put(key, value);
+					}
+					tag.put("Properties", propertiesTag);
+				}
+				statesById[id] = tag;
+				airById[id] = air;
+				stateIds.put(toStateString(blockname, sortedProperties), id);
+				blockStates.add(id, sortedProperties, stateJson.containsKey("default") && (boolean) stateJson.get("default"));
+			}
+			blocks.put(blockname, blockStates);
+		}
+	}
+
+	private static String toStateString(String blockname, Map<String, String> sortedProperties) {
+		if (sortedProperties.isEmpty()) {
+			return blockname;
+		}
+		StringBuilder sb = new StringBuilder(blockname).append('[');
+		boolean first = true;
+		for (Map.Entry<String, String> property : sortedProperties.entrySet()) {
+			if (!first) {
+				sb.append(',');
+			}
+			sb.append(property.getKey()).append('=').append(property.getValue());
+			first = false;
+		}
+		return sb.append(']').toString();
+	}
+
+	/**
+	 * The number of block states in the global palette.
+	 */
+	public static int getGlobalPaletteSize() {
+		return statesById.length;
+	}
+
+	/**
+	 * The block state of the given global palette ID. The returned tag is shared and must not be modified.
+	 */
+	public static CompoundTag getStateFromGlobalPaletteID(int id) {
+		return id >= 0 && id < statesById.length ? statesById[id] : null;
+	}
+
+	public static boolean isAir(int id) {
+		return id >= 0 && id < airById.length && airById[id];
+	}
+
+	/**
+	 * Looks up a block state written as <code>minecraft:name[key=value,...]</code> with its properties sorted by key,
+	 * returns -1 if there is no such state.
+	 */
+	public static int getGlobalPaletteIDFromStateString(String state) {
+		Integer id = stateIds.get(state);
+		return id == null ? -1 : id;
 	}
 	
-	@SuppressWarnings("unchecked")
 	public static int getGlobalPaletteIDFromState(CompoundTag tag) {
-		String blockname = tag.getString("Name");
-		
-		JSONObject data = (JSONObject) globalPalette.get(blockname);
-		Object obj = data.get("properties");
-		if (obj == null) {
-			return (int) (long) ((JSONObject) ((JSONArray) data.get("states")).get(0)).get("id");
+		BlockStates blockStates = blocks.get(tag.getString("Name"));
+		return blockStates.getId(tag.containsKey("Properties") ? tag.get("Properties", CompoundTag.class) : null);
+	}
+
+	/**
+	 * The states of a block, indexed by the position of each property value in the block definition.
+	 */
+	private static class BlockStates {
+
+		private final String[] keys;
+		private final List<Map<String, Integer>> values;
+		private final int[] strides;
+		private final int[] ids;
+		private int defaultId;
+
+		private BlockStates(JSONObject properties) {
+			int count = properties == null ? 0 : properties.size();
+			this.keys = new String[count];
+			this.values = new ArrayList<>(count);
+			this.strides = new int[count];
+			int combinations = 1;
+			int i = 0;
+			if (properties != null) {
+				for (Object entry : properties.entrySet()) {
+					keys[i] = (String) ((Map.Entry<?, ?>) entry).getKey();
+					Map<String, Integer> valueIndexes = new HashMap<>();
+					for (Object value : (JSONArray) ((Map.Entry<?, ?>) entry).getValue()) {
+						valueIndexes.put((String) value, valueIndexes.size());
+					}
+					values.add(valueIndexes);
+					strides[i++] = combinations;
+					combinations *= valueIndexes.size();
+				}
+			}
+			this.ids = new int[combinations];
 		}
-		
-		//JSONObject properties = (JSONObject) obj;
-		
-		if (tag.containsKey("Properties")) {
-			CompoundTag blockProp = tag.get("Properties", CompoundTag.class);
-			Map<String, String> blockstate = new HashMap<>();
-			for (String key : blockProp.keySet()) {
-				blockstate.put(key, blockProp.getString(key));
+
+		private void add(int id, Map<String, String> properties, boolean isDefault) {
+			int index = 0;
+			for (int i = 0; i < keys.length; i++) {
+				index += values.get(i).get(properties.get(keys[i])) * strides[i];
 			}
-			
-			for (Object entry : (JSONArray) data.get("states")) {
-				JSONObject jsonobj = (JSONObject) entry;
-				if (((JSONObject) jsonobj.get("properties")).keySet().stream().allMatch(key -> Objects.equals(blockstate.get(key), ((JSONObject) jsonobj.get("properties")).get(key)))) {
-					return (int) (long) jsonobj.get("id");
-				}
+			ids[index] = id;
+			if (isDefault || keys.length == 0) {
+				defaultId = id;
 			}
 		}
-		
-		for (Object entry : (JSONArray) data.get("states")) {
-			if (((JSONObject) entry).containsKey("default") && ((boolean) ((JSONObject) entry).get("default"))) {
-				return (int) (long) ((JSONObject) entry).get("id");
+
+		private int getId(CompoundTag properties) {
+			if (keys.length == 0 || properties == null) {
+				return defaultId;
 			}
+			int index = 0;
+			for (int i = 0; i < keys.length; i++) {
+				Integer value = properties.containsKey(keys[i]) ? values.get(i).get(properties.getString(keys[i])) : null;
+				if (value == null) {
+					return defaultId;
+				}
+				index += value * strides[i];
+			}
+			return ids[index];
 		}
-		return 0;
+
 	}
 
 }
@@ -19,11 +19,32 @@
 
 package com.loohp.limbo.world;
 
+import com.loohp.limbo.utils.LongObjectHashMap;
+import net.querz.nbt.tag.CompoundTag;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public abstract class LightEngine {
 	
+	/**
+	 * The number of light sections in a chunk column, one below and one above the 16 block sections.
+	 */
+	public static final int SECTION_COUNT = 18;
+	public static final int SECTION_SIZE = 2048;
+	
+	protected static final byte[] FULL_SECTION = new byte[SECTION_SIZE];
+	private static final int ALL_SECTIONS = (1 << SECTION_COUNT) - 1;
+	
+	static {
+		Arrays.fill(FULL_SECTION, (byte) 0xFF);
+	}
+	
 	private static Map<String, Byte> blockLightLevelMapping = new HashMap<>();
 	
 	static {
@@ -55,8 +76,478 @@ public abstract class LightEngine {
 		
 	}
 	
+	private static volatile byte[] blockLightById;
+	
+	protected final World world;
+	private final boolean downwards;
+	private final byte[][] defaultSections;
+	private final LongObjectHashMap<LightColumn> columns;
+	private final List<LightColumn> changedColumns;
+	private LightColumn cachedColumn;
+	private LongQueue queue;
+	private LongQueue removalQueue;
+	
+	/**
+	 * @param downwards whether light spreads to the block below
+	 * @param defaultSections the light of chunks without any blocks, it is never modified
+	 */
+	protected LightEngine(World world, boolean downwards, byte[][] defaultSections) {
+		this.world = world;
+		this.downwards = downwards;
+		this.defaultSections = defaultSections;
+		this.columns = new LongObjectHashMap<>();
+		this.changedColumns = new ArrayList<>();
+		this.cachedColumn = null;
+		this.queue = new LongQueue();
+		this.removalQueue = new LongQueue();
+	}
+	
 	public static int getBlockLight(BlockState block) {
 		return blockLightLevelMapping.getOrDefault(block.getType().toString(), (byte) 0);
 	}
+	
+	public static int getBlockLight(int stateId) {
+		byte[] levels = blockLightById;
+		if (levels == null) {
+			levels = new byte[GeneratedBlockDataMappings.getGlobalPaletteSize()];
+			for (int id = 0; id < levels.length; id++) {
+				CompoundTag state = GeneratedBlockDataMappings.getStateFromGlobalPaletteID(id);
+				if (state != null) {
+					levels[id] = blockLightLevelMapping.getOrDefault(state.getString("Name"), (byte) 0);
+				}
+			}
+			blockLightById = levels;
+		}
+		return stateId >= 0 && stateId < levels.length ? levels[stateId] : 0;
+	}
+	
+	public abstract void updateWorld();
+	
+	/**
+	 * Relights the area around a block after it changed from one state to another.
+	 */
+	public synchronized void updateBlock(int x, int y, int z, int oldStateId, int newStateId) {
+		queueBlockUpdate(x, y, z, oldStateId, newStateId);
+		propagateRemoval();
+		propagate();
+	}
+	
+	/**
+	 * Relights after many block changes at once, spreading the light of all of them in a single pass.
+	 */
+	synchronized void updateBlocks(int size, int[] xs, int[] ys, int[] zs, int[] oldStateIds, int[] newStateIds) {
+		for (int i = 0; i < size; i++) {
+			queueBlockUpdate(xs[i], ys[i], zs[i], oldStateIds[i], newStateIds[i]);
+		}
+		propagateRemoval();
+		propagate();
+	}
+	
+	/**
+	 * Queues the light changes caused by a block change, they are spread by {@link #propagateRemoval()} and
+	 * {@link #propagate()}.
+	 */
+	protected abstract void queueBlockUpdate(int x, int y, int z, int oldStateId, int newStateId);
+	
+	/**
+	 * The level of light the given position emits on its own, y is counted from the bottom of the lowest light section.
+	 */
+	protected abstract int getSourceLevel(int x, int lightY, int z);
+	
+	/**
+	 * Returns the nibble arrays of the light sections of a chunk from the bottom up, a null entry is a section
+	 * without any light. The arrays may be shared and must not be modified, later light updates copy a section
+	 * before changing it so the returned arrays never change.
+	 */
+	public synchronized byte[][] getLightSections(int chunkX, int chunkZ) {
+		if (!world.isChunkInWorld(chunkX, chunkZ)) {
+			return new byte[SECTION_COUNT][];
+		}
+		LightColumn column = columns.get(ChunkColumn.toKey(chunkX, chunkZ));
+		if (column == null) {
+			return defaultSections.clone();
+		}
+		column.shared = ALL_SECTIONS;
+		return column.sections.clone();
+	}
+	
+	/**
+	 * Returns the light sections changed by block updates since the last call, keyed by {@link ChunkColumn#toKey(int, int)}
+	 * and with a bit set per section from the bottom up.
+	 */
+	public synchronized Map<Long, BitSet> pollChangedSections() {
+		if (changedColumns.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		Map<Long, BitSet> changed = new HashMap<>();
+		for (LightColumn column : changedColumns) {
+			changed.put(column.key, BitSet.valueOf(new long[] {column.changed}));
+			column.changed = 0;
+		}
+		changedColumns.clear();
+		return changed;
+	}
+	
+	/**
+	 * Returns a copy of the light of every chunk that differs from the default, keyed by {@link ChunkColumn#toKey(int, int)}.
+	 */
+	synchronized Map<Long, byte[][]> getColumns() {
+		Map<Long, byte[][]> copy = new HashMap<>();
+		columns.forEach((key, column) -> {
+			column.shared = ALL_SECTIONS;
+			copy.put(key, column.sections.clone());
+		});
+		return copy;
+	}
+	
+	/**
+	 * Replaces all light with previously saved columns as returned by {@link #getColumns()}, the blocks of the world
+	 * must already be in place.
+	 */
+	synchronized void loadColumns(Map<Long, byte[][]> loaded) {
+		clear();
+		for (Map.Entry<Long, byte[][]> entry : loaded.entrySet()) {
+			setSections(ChunkColumn.getKeyX(entry.getKey()), ChunkColumn.getKeyZ(entry.getKey()), entry.getValue());
+		}
+	}
+	
+	protected void clear() {
+		columns.clear();
+		changedColumns.clear();
+		cachedColumn = null;
+		queue = new LongQueue();
+		removalQueue = new LongQueue();
+	}
+	
+	/**
+	 * Replaces the light of a whole chunk without queueing anything for propagation.
+	 */
+	protected void setSections(int chunkX, int chunkZ, byte[][] sections) {
+		LightColumn column = getOrCreateColumn(chunkX, chunkZ);
+		System.arraycopy(sections, 0, column.sections, 0, SECTION_COUNT);
+		column.shared = ALL_SECTIONS;
+	}
+	
+	/**
+	 * Raises the light at the given position and queues it for propagation, y is counted from the bottom of the
+	 * lowest light section.
+	 */
+	protected void addSource(int x, int lightY, int z, int level) {
+		if (getLevel(x, lightY, z) < level) {
+			setLevel(x, lightY, z, level);
+			queue.add(pack(x, lightY, z));
+		}
+	}
+	
+	/**
+	 * Queues a position to spread the light it already has.
+	 */
+	protected void queuePropagation(int x, int lightY, int z) {
+		queue.add(pack(x, lightY, z));
+	}
+	
+	/**
+	 * Darkens the given position and queues it, {@link #propagateRemoval()} then darkens everything that was lit by it.
+	 */
+	protected void removeSource(int x, int lightY, int z) {
+		int level = getLevel(x, lightY, z);
+		if (level > 0) {
+			setLevel(x, lightY, z, 0);
+			removalQueue.add(pack(x, lightY, z, level));
+		}
+	}
+	
+	/**
+	 * Spreads all queued removals breadth first. Neighbours that are at least as bright as the removed light were lit
+	 * from elsewhere and are queued to spread their light back, sources that got darkened are lit again.
+	 */
+	protected void propagateRemoval() {
+		LongQueue removalQueue = this.removalQueue;
+		LongQueue sources = new LongQueue();
+		while (!removalQueue.isEmpty()) {
+			long entry = removalQueue.poll();
+			int level = unpackLevel(entry);
+			int x = unpackX(entry);
+			int z = unpackZ(entry);
+			int lightY = unpackY(entry);
+			if (isInWorld(x + 1, z)) {
+				darken(x + 1, lightY, z, level, true, sources);
+			}
+			if (isInWorld(x - 1, z)) {
+				darken(x - 1, lightY, z, level, true, sources);
+			}
+			if (lightY + 1 < SECTION_COUNT * 16) {
+				darken(x, lightY + 1, z, level, true, sources);
+			}
+			if (lightY > 0) {
+				darken(x, lightY - 1, z, level, downwards, sources);
+			}
+			if (isInWorld(x, z + 1)) {
+				darken(x, lightY, z + 1, level, true, sources);
+			}
+			if (isInWorld(x, z - 1)) {
+				darken(x, lightY, z - 1, level, true, sources);
+			}
+		}
+		removalQueue.trim();
+		while (!sources.isEmpty()) {
+			long position = sources.poll();
+			int x = unpackX(position);
+			int z = unpackZ(position);
+			int lightY = unpackY(position);
+			addSource(x, lightY, z, getSourceLevel(x, lightY, z));
+		}
+	}
+	
+	private void darken(int x, int lightY, int z, int removedLevel, boolean reachable, LongQueue sources) {
+		int level = getLevel(x, lightY, z);
+		if (level == 0) {
+			return;
+		}
+		if (reachable && level < removedLevel) {
+			setLevel(x, lightY, z, 0);
+			removalQueue.add(pack(x, lightY, z, level));
+			if (getSourceLevel(x, lightY, z) > 0) {
+				sources.add(pack(x, lightY, z));
+			}
+		} else {
+			queue.add(pack(x, lightY, z));
+		}
+	}
+	
+	/**
+	 * Spreads all queued light breadth first, losing one level per block.
+	 */
+	protected void propagate() {
+		LongQueue queue = this.queue;
+		while (!queue.isEmpty()) {
+			long position = queue.poll();
+			int x = unpackX(position);
+			int z = unpackZ(position);
+			int lightY = unpackY(position);
+			int level = getLevel(x, lightY, z) - 1;
+			if (level <= 0) {
+				continue;
+			}
+			if (isInWorld(x + 1, z)) {
+				spread(x + 1, lightY, z, level);
+			}
+			if (isInWorld(x - 1, z)) {
+				spread(x - 1, lightY, z, level);
+			}
+			if (lightY + 1 < SECTION_COUNT * 16) {
+				spread(x, lightY + 1, z, level);
+			}
+			if (downwards && lightY > 0) {
+				spread(x, lightY - 1, z, level);
+			}
+			if (isInWorld(x, z + 1)) {
+				spread(x, lightY, z + 1, level);
+			}
+			if (isInWorld(x, z - 1)) {
+				spread(x, lightY, z - 1, level);
+			}
+		}
+		queue.trim();
+	}
+	
+	private void spread(int x, int lightY, int z, int level) {
+		if (getLevel(x, lightY, z) < level) {
+			setLevel(x, lightY, z, level);
+			queue.add(pack(x, lightY, z));
+		}
+	}
+	
+	protected boolean isInWorld(int x, int z) {
+		return world.isChunkInWorld(x >> 4, z >> 4);
+	}
+	
+	/**
+	 * Replaces sections that ended up completely dark or completely lit by the shared instances, and drops chunks whose
+	 * light is the same as the default.
+	 */
+	protected void compact() {
+		List<Long> defaultColumns = new ArrayList<>();
+		columns.forEach((key, column) -> {
+			byte[][] sections = column.sections;
+			boolean isDefault = true;
+			for (int i = 0; i < sections.length; i++) {
+				byte[] section = sections[i];
+				if (section != null && section != FULL_SECTION) {
+					byte first = section[0];
+					if (first == 0 || first == (byte) 0xFF) {
+						boolean uniform = true;
+						for (byte b : section) {
+							if (b != first) {
+								uniform = false;
+								break;
+							}
+						}
+						if (uniform) {
+							sections[i] = first == 0 ? null : FULL_SECTION;
+						}
+					}
+				}
+				if (sections[i] != defaultSections[i]) {
+					isDefault = false;
+				}
+			}
+			column.changed = 0;
+			if (isDefault) {
+				defaultColumns.add(key);
+			}
+		});
+		for (long key : defaultColumns) {
+			columns.remove(key);
+		}
+		changedColumns.clear();
+		cachedColumn = null;
+	}
+	
+	private LightColumn getColumn(int chunkX, int chunkZ) {
+		LightColumn column = cachedColumn;
+		if (column != null && column.x == chunkX && column.z == chunkZ) {
+			return column;
+		}
+		column = columns.get(ChunkColumn.toKey(chunkX, chunkZ));
+		if (column != null) {
+			cachedColumn = column;
+		}
+		return column;
+	}
+	
+	private LightColumn getOrCreateColumn(int chunkX, int chunkZ) {
+		LightColumn column = getColumn(chunkX, chunkZ);
+		if (column == null) {
+			column = new LightColumn(chunkX, chunkZ, defaultSections.clone());
+			columns.put(column.key, column);
+			cachedColumn = column;
+		}
+		return column;
+	}
+	
+	protected int getLevel(int x, int lightY, int z) {
+		LightColumn column = getColumn(x >> 4, z >> 4);
+		byte[] section = (column == null ? defaultSections : column.sections)[lightY >> 4];
+		if (section == null) {
+			return 0;
+		}
+		int index = nibbleIndex(x, lightY, z);
+		return (section[index >> 1] >> ((index & 1) << 2)) & 15;
+	}
+	
+	protected void setLevel(int x, int lightY, int z, int level) {
+		LightColumn column = getOrCreateColumn(x >> 4, z >> 4);
+		int sectionY = lightY >> 4;
+		byte[] section = column.sections[sectionY];
+		if (section == null) {
+			section = new byte[SECTION_SIZE];
+			column.sections[sectionY] = section;
+		} else if (section == FULL_SECTION || (column.shared & (1 << sectionY)) != 0) {
+			section = section.clone();
+			column.sections[sectionY] = section;
+			column.shared &= ~(1 << sectionY);
+		}
+		int index = nibbleIndex(x, lightY, z);
+		int shift = (index & 1) << 2;
+		section[index >> 1] = (byte) ((section[index >> 1] & ~(15 << shift)) | (level << shift));
+		if (column.changed == 0) {
+			changedColumns.add(column);
+		}
+		column.changed |= 1 << sectionY;
+	}
+	
+	private static int nibbleIndex(int x, int lightY, int z) {
+		return ((lightY & 15) << 8) | ((z & 15) << 4) | (x & 15);
+	}
+	
+	private static long pack(int x, int lightY, int z) {
+		return ((x & 0x3FFFFFL) << 38) | ((z & 0x3FFFFFL) << 16) | lightY;
+	}
+	
+	private static long pack(int x, int lightY, int z, int level) {
+		return ((long) level << 60) | pack(x, lightY, z);
+	}
+	
+	private static int unpackX(long packed) {
+		return (int) ((packed << 4) >> 42);
+	}
+	
+	private static int unpackZ(long packed) {
+		return (int) ((packed << 26) >> 42);
+	}
+	
+	private static int unpackY(long packed) {
+		return (int) (packed & 0xFFFF);
+	}
+	
+	private static int unpackLevel(long packed) {
+		return (int) (packed >>> 60);
+	}
+	
+	private static final class LightColumn {
+		
+		private final int x;
+		private final int z;
+		private final long key;
+		private final byte[][] sections;
+		private int changed;
+		private int shared;
+		
+		private LightColumn(int x, int z, byte[][] sections) {
+			this.x = x;
+			this.z = z;
+			this.key = ChunkColumn.toKey(x, z);
+			this.sections = sections;
+			this.changed = 0;
+			this.shared = 0;
+		}
+		
+	}
+	
+	private static final class LongQueue {
+		
+		private static final int INITIAL_CAPACITY = 4096;
+		
+		private long[] elements = new long[INITIAL_CAPACITY];
+		private int head;
+		private int tail;
+		private int size;
+		
+		private void add(long value) {
+			if (size == elements.length) {
+				long[] grown = new long[elements.length << 1];
+				int firstPart = elements.length - head;
+				System.arraycopy(elements, head, grown, 0, firstPart);
+				System.arraycopy(elements, 0, grown, firstPart, head);
+				elements = grown;
+				head = 0;
+				tail = size;
+			}
+			elements[tail] = value;
+			tail = (tail + 1) & (elements.length - 1);
+			size++;
+		}
+		
+		private long poll() {
+			long value = elements[head];
+			head = (head + 1) & (elements.length - 1);
+			size--;
+			return value;
+		}
+		
+		private boolean isEmpty() {
+			return size == 0;
+		}
+		
+		private void trim() {
+			if (elements.length > INITIAL_CAPACITY) {
+				elements = new long[INITIAL_CAPACITY];
+				head = 0;
+				tail = 0;
+			}
+		}
+		
+	}
 
 }
@@ -19,88 +19,167 @@
 
 package com.loohp.limbo.world;
 
-import java.util.ArrayList;
-import java.util.List;
+import com.loohp.limbo.utils.LongObjectHashMap;
+
+import java.util.Arrays;
+import java.util.Map;
 
 public class LightEngineSky extends LightEngine {
 	
-	private World world;
-	private byte[][][] skyLightArray;
+	private static final byte[][] DEFAULT_SECTIONS = new byte[SECTION_COUNT][];
+	
+	static {
+		Arrays.fill(DEFAULT_SECTIONS, 1, SECTION_COUNT, FULL_SECTION);
+	}
+	
+	private final LongObjectHashMap<int[]> heights;
 	
 	public LightEngineSky(World world) {
-		skyLightArray = new byte[world.getChunkWidth() * 16][16 * 18][world.getChunkLength() * 16];
-		/*
-		for (byte[][] arrayarray : skyLightArray) {
-			for (byte[] array : arrayarray) {
-				Arrays.fill(array, (byte) 0); 
-			}
-		}
-		*/
-		this.world = world;
+		super(world, false, DEFAULT_SECTIONS);
+		this.heights = new LongObjectHashMap<>();
 		updateWorld();
 	}
 	
-	public void updateWorld() {
-		skyLightArray = new byte[world.getChunkWidth() * 16][16 * 18][world.getChunkLength() * 16];
-		for (int x = 0; x < world.getWidth(); x++) {
-			for (int z = 0; z < world.getLength(); z++) {
-				updateColumn(x, z);
+	@Override
+	public synchronized void updateWorld() {
+		clear();
+		heights.clear();
+		for (ChunkColumn chunk : world.getChunkColumns()) {
+			int[] chunkHeights = computeHeights(chunk);
+			int maxHeight = -1;
+			for (int height : chunkHeights) {
+				maxHeight = Math.max(maxHeight, height);
+			}
+			heights.put(chunk.getKey(), chunkHeights);
+			byte[][] sections = new byte[SECTION_COUNT][];
+			for (int sectionY = 1; sectionY < SECTION_COUNT; sectionY++) {
+				if (((sectionY - 1) << 4) > maxHeight) {
+					sections[sectionY] = FULL_SECTION;
+				}
+			}
+			setSections(chunk.getX(), chunk.getZ(), sections);
+			int baseX = chunk.getX() << 4;
+			int baseZ = chunk.getZ() << 4;
+			int partialTop = maxHeight | 15;
+			for (int z = 0; z < 16; z++) {
+				for (int x = 0; x < 16; x++) {
+					for (int y = chunkHeights[(z << 4) | x] + 1; y <= partialTop; y++) {
+						setLevel(baseX + x, y + 16, baseZ + z, 15);
+					}
+				}
+			}
+		}
+		for (ChunkColumn chunk : world.getChunkColumns()) {
+			int baseX = chunk.getX() << 4;
+			int baseZ = chunk.getZ() << 4;
+			for (int z = 0; z < 16; z++) {
+				for (int x = 0; x < 16; x++) {
+					int height = getHeight(baseX + x, baseZ + z);
+					queueEdge(baseX + x + 1, baseZ + z, height);
+					queueEdge(baseX + x - 1, baseZ + z, height);
+					queueEdge(baseX + x, baseZ + z + 1, height);
+					queueEdge(baseX + x, baseZ + z - 1, height);
+				}
 			}
 		}
+		propagate();
+		compact();
+		world.getChunkPacketCache().invalidateAll();
 	}
 	
-	private void updateColumn(int x, int z) {
-		for (int y = 272; y >= 256; y--) {
-			propergate(15, x, y, z);
+	@Override
+	synchronized void loadColumns(Map<Long, byte[][]> loaded) {
+		super.loadColumns(loaded);
+		heights.clear();
+		for (ChunkColumn chunk : world.getChunkColumns()) {
+			heights.put(chunk.getKey(), computeHeights(chunk));
 		}
-		for (int y = 255; y >= 0; y--) {
-			BlockState block = world.getBlock(x, y, z);
-			//System.out.println("X:" + x + " Y: " + y + " Z: " + z + " Block: " + block.getType().toString());
-			if (!block.getType().toString().equals("minecraft:air")) {
-				break;
+	}
+	
+	private static int[] computeHeights(ChunkColumn chunk) {
+		int[] chunkHeights = new int[256];
+		for (int z = 0; z < 16; z++) {
+			for (int x = 0; x < 16; x++) {
+				chunkHeights[(z << 4) | x] = findHeight(chunk.getSections(), x, 255, z);
 			}
-			propergate(15, x, y, z);
 		}
+		return chunkHeights;
 	}
 	
-	private void propergate(int level, int x, int y, int z) {
-		try {
-			if (skyLightArray[x][y + 16][z] < level) {
-				skyLightArray[x][y + 16][z] = (byte) level;
-				if (level > 1) {
-					try {propergate(level - 1, x + 1, y, z);} catch (ArrayIndexOutOfBoundsException e) {}
-					try {propergate(level - 1, x - 1, y, z);} catch (ArrayIndexOutOfBoundsException e) {}
-					try {propergate(level - 1, x, y + 1, z);} catch (ArrayIndexOutOfBoundsException e) {}
-					try {propergate(level - 1, x, y, z + 1);} catch (ArrayIndexOutOfBoundsException e) {}
-					try {propergate(level - 1, x, y, z - 1);} catch (ArrayIndexOutOfBoundsException e) {}
-				}
+	/**
+	 * Queues the sky lit blocks of a column that are next to blocks below the height of a neighbouring column.
+	 */
+	private void queueEdge(int x, int z, int neighbourHeight) {
+		if (!isInWorld(x, z)) {
+			return;
+		}
+		for (int y = getHeight(x, z) + 1; y <= neighbourHeight; y++) {
+			queuePropagation(x, y + 16, z);
+		}
+	}
+	
+	/**
+	 * Returns the y of the highest block that is not air at or below the given y, or -1 if there is none.
+	 */
+	private static int findHeight(ChunkSection[] sections, int x, int fromY, int z) {
+		for (int y = fromY; y >= 0; y--) {
+			ChunkSection section = sections[y >> 4];
+			if (section.isEmpty()) {
+				y &= ~15;
+			} else if (section.get(x, y, z) != ChunkSection.AIR_ID) {
+				return y;
 			}
-		} catch (ArrayIndexOutOfBoundsException e) {}
+		}
+		return -1;
 	}
 	
-	public List<Byte[]> getSkyLightBitMask(int chunkX, int chunkZ) {
-		List<Byte[]> subchunks = new ArrayList<>(18);
-		int startX = chunkX * 16;
-		int endingX = startX + 16;
-		int startZ = chunkZ * 16;
-		int endingZ = startZ + 16;
-		
-		for (int sub = 17; sub >= 0; sub--) {
-			List<Byte> array = new ArrayList<>();
-			for (int y = sub * 16; y < (sub * 16) + 16; y++) {
-				for (int z = startZ; z < endingZ; z++) {
-					for (int x = startX; x < endingX; x += 2) {
-						int bit = skyLightArray[x][y][z];
-						bit = bit << 4;
-						bit |= skyLightArray[x + 1][y][z];
-						array.add((byte) bit);
-					}
-				}
+	private int getHeight(int x, int z) {
+		int[] chunkHeights = heights.get(ChunkColumn.toKey(x >> 4, z >> 4));
+		return chunkHeights == null ? -1 : chunkHeights[((z & 15) << 4) | (x & 15)];
+	}
+	
+	@Override
+	protected void queueBlockUpdate(int x, int y, int z, int oldStateId, int newStateId) {
+		if ((oldStateId == ChunkSection.AIR_ID) == (newStateId == ChunkSection.AIR_ID)) {
+			return;
+		}
+		long key = ChunkColumn.toKey(x >> 4, z >> 4);
+		int[] chunkHeights = heights.get(key);
+		if (chunkHeights == null) {
+			chunkHeights = new int[256];
+			Arrays.fill(chunkHeights, -1);
+			heights.put(key, chunkHeights);
+		}
+		int index = ((z & 15) << 4) | (x & 15);
+		int oldHeight = chunkHeights[index];
+		int newHeight;
+		if (newStateId != ChunkSection.AIR_ID) {
+			newHeight = Math.max(oldHeight, y);
+		} else if (y == oldHeight) {
+			ChunkSection[] sections = world.getChunkSections(x >> 4, z >> 4);
+			newHeight = sections == null ? -1 : findHeight(sections, x & 15, y - 1, z & 15);
+		} else {
+			newHeight = oldHeight;
+		}
+		chunkHeights[index] = newHeight;
+		if (newHeight > oldHeight) {
+			for (int lightY = newHeight + 16; lightY > oldHeight + 16; lightY--) {
+				removeSource(x, lightY, z);
+			}
+		} else {
+			for (int lightY = oldHeight + 16; lightY > newHeight + 16; lightY--) {
+				addSource(x, lightY, z, 15);
 			}
-			subchunks.add(array.toArray(new Byte[2048]));
 		}
-		
-		return subchunks;
+	}
+	
+	@Override
+	protected int getSourceLevel(int x, int lightY, int z) {
+		return lightY - 16 > getHeight(x, z) ? 15 : 0;
+	}
+	
+	public byte[][] getSkyLightSections(int chunkX, int chunkZ) {
+		return getLightSections(chunkX, chunkZ);
 	}
 
 }
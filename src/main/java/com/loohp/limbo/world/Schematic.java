@@ -19,15 +19,20 @@
 
 package com.loohp.limbo.world;
 
+import com.loohp.limbo.utils.LongObjectHashMap;
 import com.loohp.limbo.utils.SchematicConversionUtils;
 import net.querz.mca.Chunk;
 import net.querz.nbt.tag.CompoundTag;
 import net.querz.nbt.tag.ListTag;
 
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
-
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Schematic {
 	
@@ -38,75 +43,135 @@ public class Schematic {
 		byte[] blockdata = nbt.getByteArray("BlockData");
 		CompoundTag palette = nbt.getCompoundTag("Palette");
 		ListTag<CompoundTag> blockEntities = nbt.containsKey("BlockEntities") ? nbt.getListTag("BlockEntities").asTypedList(CompoundTag.class) : null;
-		Map<Integer, String> mapping = new HashMap<>();
+		int paletteSize = 0;
+		for (String key : palette.keySet()) {
+			paletteSize = Math.max(paletteSize, palette.getInt(key) + 1);
+		}
+		int[] mapping = new int[paletteSize];
+		Arrays.fill(mapping, ChunkSection.AIR_ID);
 		for (String key : palette.keySet()) {
-			mapping.put(palette.getInt(key), key);
+			mapping[palette.getInt(key)] = World.toBlockStateId(key);
 		}
 		
 		World world = new World(name, width, length, environment);
 		
+		// index = (y * length + z) * width + x, so every row along x starts at a multiple of width
+		int[] rowOffsets = new int[blockdata.length / width + 1];
+		int rows = 0;
 		int index = 0;
-        int i = 0;
-        int value = 0;
-        int varint_length = 0;
-        while (i < blockdata.length) {
-            value = 0;
-            varint_length = 0;
-
-            while (true) {
-                value |= (blockdata[i] & 127) << (varint_length++ * 7);
-                if (varint_length > 5) {
-                    throw new RuntimeException("VarInt too big (probably corrupted data)");
-                }
-                if ((blockdata[i] & 128) != 128) {
-                    i++;
-                    break;
-                }
-                i++;
-            }
-            // index = (y * length + z) * width + x
-            int y = index / (width * length);
-            int z = (index % (width * length)) / width;
-            int x = (index % (width * length)) % width;
-            world.setBlock(x, y, z, mapping.get(value));
-
-            Chunk chunk = world.getChunkAtWorldPos(x, z);
-			
-            if (blockEntities != null) {
-				Iterator<CompoundTag> itr = blockEntities.iterator();
-				while (itr.hasNext()) {
-					CompoundTag tag = itr.next();
-					int[] pos = tag.getIntArray("Pos");
-					
-					if (pos[0] == x && pos[1] == y && pos[2] == z) {
-						ListTag<CompoundTag> newTag = chunk.getTileEntities();
-						newTag.add(SchematicConversionUtils.toTileEntityTag(tag));
-						chunk.setTileEntities(newTag);
-						itr.remove();
-						break;
+		for (int i = 0; i < blockdata.length; i++) {
+			if ((blockdata[i] & 128) == 0) {
+				index++;
+				if (index % width == 0) {
+					rows++;
+					if (rows < rowOffsets.length) {
+						rowOffsets[rows] = i + 1;
+					}
+				}
+			}
+		}
+		int height = Math.min(rows / length, 256);
+		
+		// rows with the same z belong to the same chunks, so every chunk column is filled by one task only
+		// the tasks fill columns of their own and only the calling thread adds them to the world
+		int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+		AtomicInteger threadId = new AtomicInteger(0);
+		ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "Limbo-Schematic-Loader-" + threadId.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+		List<Future<ChunkColumn[]>> futures = new ArrayList<>();
+		for (int chunkZ = 0; chunkZ << 4 < length; chunkZ++) {
+			int fromZ = chunkZ << 4;
+			int toZ = Math.min(fromZ + 16, length);
+			int stripeZ = chunkZ;
+			futures.add(executor.submit(() -> {
+				ChunkColumn[] columns = new ChunkColumn[(width + 15) >> 4];
+				for (int y = 0; y < height; y++) {
+					for (int z = fromZ; z < toZ; z++) {
+						int i = rowOffsets[y * length + z];
+						for (int x = 0; x < width; x++) {
+							int value = 0;
+							int varintLength = 0;
+							while (true) {
+								value |= (blockdata[i] & 127) << (varintLength++ * 7);
+								if (varintLength > 5) {
+									throw new RuntimeException("VarInt too big (probably corrupted data)");
+								}
+								if ((blockdata[i++] & 128) != 128) {
+									break;
+								}
+							}
+							int id = value < mapping.length ? mapping[value] : ChunkSection.AIR_ID;
+							if (id == ChunkSection.AIR_ID) {
+								continue;
+							}
+							ChunkColumn column = columns[x >> 4];
+							if (column == null) {
+								column = new ChunkColumn(world, x >> 4, stripeZ);
+								columns[x >> 4] = column;
+							}
+							column.getWritableSection(y >> 4).set(x, y, z, id);
+						}
 					}
 				}
-            }
-            
-            index++;
-        }
+				return columns;
+			}));
+		}
+		executor.shutdown();
+		try {
+			for (Future<ChunkColumn[]> future : futures) {
+				for (ChunkColumn column : future.get()) {
+					if (column != null) {
+						world.addChunkColumn(column);
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while loading schematic", e);
+		} catch (ExecutionException e) {
+			executor.shutdownNow();
+			throw new RuntimeException("Unable to load schematic", e.getCause());
+		}
 		
-		for (Chunk[] chunkarray : world.getChunks()) {
-			for (Chunk chunk : chunkarray) {
-				if (chunk != null) {
-					CompoundTag heightMap = new CompoundTag();
-					heightMap.putLongArray("MOTION_BLOCKING", new long[] {1371773531765642314L,1389823183635651148L,1371738278539598925L,1389823183635388492L,1353688558756731469L,1389823114781694027L,1317765589597723213L,1371773531899860042L,1389823183635651149L,1371773462911685197L,1389823183635650636L,1353688626805119565L,1371773531900123211L,1335639250618849869L,1371738278674077258L,1389823114781694028L,1353723811310638154L,1371738278674077259L,1335674228429068364L,1335674228429067338L,1335674228698027594L,1317624576693539402L,1335709481520370249L,1299610178184057417L,1335638906349064264L,1299574993811968586L,1299574924958011464L,1299610178184056904L,1299574924958011464L,1299610109330100296L,1299574924958011464L,1299574924823793736L,1299574924958011465L,1281525273222484040L,1299574924958011464L,1281525273222484040L,9548107335L});
-					chunk.setHeightMaps(heightMap);
-					chunk.setBiomes(new int[256]);
-					chunk.cleanupPalettesAndBlockStates();
+		if (blockEntities != null) {
+			LongObjectHashMap<CompoundTag> blockEntitiesByPosition = new LongObjectHashMap<>();
+			for (CompoundTag tag : blockEntities) {
+				int[] pos = tag.getIntArray("Pos");
+				if (pos[0] < 0 || pos[0] >= width || pos[1] < 0 || pos[1] >= height || pos[2] < 0 || pos[2] >= length) {
+					continue;
+				}
+				long key = ((long) pos[1] << 32) | ((long) pos[2] << 16) | pos[0];
+				if (!blockEntitiesByPosition.containsKey(key)) {
+					blockEntitiesByPosition.put(key, tag);
 				}
 			}
+			blockEntitiesByPosition.forEach((key, tag) -> {
+				int[] pos = tag.getIntArray("Pos");
+				Chunk chunk = world.getOrCreateChunkColumn(pos[0] >> 4, pos[2] >> 4).getChunk();
+				ListTag<CompoundTag> tileEntities = chunk.getTileEntities();
+				tileEntities.add(SchematicConversionUtils.toTileEntityTag(tag));
+				chunk.setTileEntities(tileEntities);
+			});
+		}
+		
+		for (ChunkColumn column : world.getChunkColumns()) {
+			Chunk chunk = column.getChunk();
+			CompoundTag heightMap = new CompoundTag();
+			heightMap.putLongArray("MOTION_BLOCKING", new long[] {1371773531765642314L,1389823183635651148L,1371738278539598925L,1389823183635388492L,1353688558756731469L,1389823114781694027L,1317765589597723213L,1371773531899860042L,1389823183635651149L,1371773462911685197L,1389823183635650636L,1353688626805119565L,1371773531900123211L,1335639250618849869L,1371738278674077258L,1389823114781694028L,1353723811310638154L,1371738278674077259L,1335674228429068364L,1335674228429067338L,1335674228698027594L,1317624576693539402L,1335709481520370249L,1299610178184057417L,1335638906349064264L,1299574993811968586L,1299574924958011464L,1299610178184056904L,1299574924958011464L,1299610109330100296L,1299574924958011464L,1299574924823793736L,1299574924958011465L,1281525273222484040L,1299574924958011464L,1281525273222484040L,9548107335L});
+			chunk.setHeightMaps(heightMap);
+			chunk.setBiomes(new int[256]);
+			chunk.cleanupPalettesAndBlockStates();
 		}
 		
 		world.getLightEngineBlock().updateWorld();
 		if (world.hasSkyLight()) {
 			world.getLightEngineSky().updateWorld();
 		}
+		world.getChunkPacketCache().prewarm();
 		
 		return world;
 	}
@@ -26,18 +26,26 @@ import com.loohp.limbo.entity.DataWatcher.WatchableObject;
 import com.loohp.limbo.entity.Entity;
 import com.loohp.limbo.entity.EntityType;
 import com.loohp.limbo.location.Location;
+import com.loohp.limbo.network.PacketBroadcaster;
+import com.loohp.limbo.network.protocol.packets.ClientboundBlockUpdatePacket;
+import com.loohp.limbo.network.protocol.packets.ClientboundLightUpdatePacket;
+import com.loohp.limbo.network.protocol.packets.ClientboundSectionBlocksUpdatePacket;
 import com.loohp.limbo.network.protocol.packets.PacketPlayOutEntityDestroy;
 import com.loohp.limbo.network.protocol.packets.PacketPlayOutEntityMetadata;
 import com.loohp.limbo.player.Player;
+import com.loohp.limbo.utils.LongObjectHashMap;
 import com.loohp.limbo.utils.SchematicConversionUtils;
 import net.querz.mca.Chunk;
 import net.querz.nbt.tag.CompoundTag;
 import net.querz.nbt.tag.ListTag;
 
-import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -45,9 +53,22 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+/**
+ * Worlds are not thread-safe and are only modified on the tick thread, by the server and by sync tasks.
+ * <p>
+ * While the player update phase of a tick runs, which is in parallel with parallel-player-updates, nothing writes to
+ * the world, and the reads done by player updates may run on several threads at once: {@link #getEntities()},
+ * {@link #getChunkColumn(int, int)}, {@link #getChunkSections(int, int)} and {@link #getChunkPacketCache()}. The packet
+ * cache is a concurrent map and the light engines synchronize their reads, so cache misses are safe too. Async tasks
+ * that modify a world can race with any of these.
+ */
 public class World {
 	
 	public static final CompoundTag HEIGHT_MAP = new CompoundTag();
+	/**
+	 * The height maps, biomes and tile entities sent for chunks without any blocks. It is shared by every such chunk
+	 * and must not be modified, {@link #getChunkAt(int, int)} never returns it.
+	 */
 	public static final Chunk EMPTY_CHUNK = Chunk.newChunk();
 	
 	static {
@@ -71,37 +92,40 @@ public class World {
 	
 	private String name;
 	private Environment environment;
-	private Chunk[][] chunks;
+	private final LongObjectHashMap<ChunkColumn> chunks;
+	private final Map<Chunk, ChunkColumn> chunkColumns;
+	private volatile int minChunkX;
+	private volatile int minChunkZ;
+	private volatile int maxChunkX;
+	private volatile int maxChunkZ;
 	private int width;
 	private int length;
 	private LightEngineBlock lightEngineBlock;
 	private LightEngineSky lightEngineSky;
+	private ChunkPacketCache chunkPacketCache;
 	private Map<Entity, DataWatcher> entities;
+	private Map<Long, BitSet> pendingBlockChanges;
 
 	public World(String name, int width, int length, Environment environment) {
 		this.name = name;
 		this.environment = environment;
-		this.chunks = new Chunk[(width >> 4) + 1][(length >> 4) + 1];
+		this.chunks = new LongObjectHashMap<>();
+		this.chunkColumns = new IdentityHashMap<>();
 		this.width = width;
 		this.length = length;
-
-		for (int x = 0; x < chunks.length; x++) {
-			for (int z = 0; z < chunks[x].length; z++) {
-				chunks[x][z] = Chunk.newChunk();
-				Chunk chunk = chunks[x][z];
-				chunk.cleanupPalettesAndBlockStates();
-				chunk.setHeightMaps(HEIGHT_MAP.clone());
-				chunk.setBiomes(new int[256]);
-				chunk.setTileEntities(new ListTag<>(CompoundTag.class));
-			}
-		}
+		this.minChunkX = 0;
+		this.minChunkZ = 0;
+		this.maxChunkX = width >> 4;
+		this.maxChunkZ = length >> 4;
 		
+		this.chunkPacketCache = new ChunkPacketCache(this);
 		this.lightEngineBlock = new LightEngineBlock(this);
 		if (environment.hasSkyLight()) {
 			this.lightEngineSky = new LightEngineSky(this);
 		}
 		
 		this.entities = new LinkedHashMap<>();
+		this.pendingBlockChanges = new HashMap<>();
 	}
 
 	public LightEngineBlock getLightEngineBlock() {
@@ -116,14 +140,227 @@ public class World {
 		return lightEngineSky != null;
 	}
 
+	public ChunkPacketCache getChunkPacketCache() {
+		return chunkPacketCache;
+	}
+
 	protected void setBlock(int x, int y, int z, String blockdata) {
-		Chunk chunk = this.chunks[(x >> 4)][(z >> 4)];
-		if (chunk == null) {
-			chunk = Chunk.newChunk();
-			this.chunks[(x >> 4)][(z >> 4)] = chunk;
+		setBlockStateId(x, y, z, toBlockStateId(blockdata));
+	}
+
+	static int toBlockStateId(String blockdata) {
+		int id = GeneratedBlockDataMappings.getGlobalPaletteIDFromStateString(blockdata);
+		if (id < 0) {
+			id = GeneratedBlockDataMappings.getGlobalPaletteIDFromState(SchematicConversionUtils.toBlockTag(blockdata));
+		}
+		return id;
+	}
+
+	/**
+	 * Starts collecting block changes to apply to this world in one pass, see {@link EditSession}.
+	 */
+	public EditSession newEditSession() {
+		return new EditSession(this);
+	}
+
+	/**
+	 * Returns the global palette ID of the block at the given position, blocks outside of the build height are air.
+	 */
+	public int getBlockStateId(int x, int y, int z) {
+		if (y < 0 || y > 255) {
+			return ChunkSection.AIR_ID;
+		}
+		ChunkColumn column = chunks.get(ChunkColumn.toKey(x >> 4, z >> 4));
+		if (column == null) {
+			return ChunkSection.AIR_ID;
+		}
+		return column.getSections()[y >> 4].get(x, y, z);
+	}
+
+	public void setBlockStateId(int x, int y, int z, int id) {
+		setBlockStateId(x, y, z, id, true);
+	}
+
+	/**
+	 * Sets a block without relighting, for bulk changes that are followed by a full {@link LightEngine#updateWorld()}.
+	 */
+	void setBlockStateId(int x, int y, int z, int id, boolean updateLight) {
+		if (y < 0 || y > 255) {
+			return;
+		}
+		ChunkSection section = getWritableSection(x, y, z, id);
+		if (section == null) {
+			return;
+		}
+		int old = section.set(x, y, z, id);
+		if (old != id) {
+			chunkPacketCache.invalidate(x >> 4, z >> 4);
+			if (updateLight) {
+				lightEngineBlock.updateBlock(x, y, z, old, id);
+				if (lightEngineSky != null) {
+					lightEngineSky.updateBlock(x, y, z, old, id);
+				}
+				synchronized (pendingBlockChanges) {
+					markBlockChanged(x, y, z);
+				}
+			}
+		}
+	}
+
+	void applyEdits(int size, int[] xs, int[] ys, int[] zs, int[] stateIds) {
+		int[] oldStateIds = new int[size];
+		int changed = 0;
+		Set<Long> changedChunks = new HashSet<>();
+		for (int i = 0; i < size; i++) {
+			int x = xs[i];
+			int y = ys[i];
+			int z = zs[i];
+			int id = stateIds[i];
+			if (y < 0 || y > 255) {
+				continue;
+			}
+			ChunkSection section = getWritableSection(x, y, z, id);
+			if (section == null) {
+				continue;
+			}
+			int old = section.set(x, y, z, id);
+			if (old != id) {
+				xs[changed] = x;
+				ys[changed] = y;
+				zs[changed] = z;
+				stateIds[changed] = id;
+				oldStateIds[changed] = old;
+				changed++;
+				changedChunks.add(ChunkColumn.toKey(x >> 4, z >> 4));
+			}
+		}
+		if (changed == 0) {
+			return;
 		}
-		CompoundTag block = SchematicConversionUtils.toBlockTag(blockdata);
-		chunk.setBlockStateAt(x, y, z, block, false);
+		for (long key : changedChunks) {
+			chunkPacketCache.invalidate(ChunkColumn.getKeyX(key), ChunkColumn.getKeyZ(key));
+		}
+		lightEngineBlock.updateBlocks(changed, xs, ys, zs, oldStateIds, stateIds);
+		if (lightEngineSky != null) {
+			lightEngineSky.updateBlocks(changed, xs, ys, zs, oldStateIds, stateIds);
+		}
+		synchronized (pendingBlockChanges) {
+			for (int i = 0; i < changed; i++) {
+				markBlockChanged(xs[i], ys[i], zs[i]);
+			}
+		}
+	}
+
+	/**
+	 * Returns the section a block is about to be written to, creating the chunk and copying a shared section first.
+	 * Returns null if the block already has the given state.
+	 */
+	private ChunkSection getWritableSection(int x, int y, int z, int id) {
+		ChunkColumn column = chunks.get(ChunkColumn.toKey(x >> 4, z >> 4));
+		if (column == null) {
+			if (id == ChunkSection.AIR_ID) {
+				return null;
+			}
+			column = getOrCreateChunkColumn(x >> 4, z >> 4);
+		}
+		ChunkSection section = column.getSections()[y >> 4];
+		if (section.isShared() && section.get(x, y, z) == id) {
+			return null;
+		}
+		return column.getWritableSection(y >> 4);
+	}
+
+	private void markBlockChanged(int x, int y, int z) {
+		pendingBlockChanges.computeIfAbsent(ChunkColumn.toKey(x >> 4, z >> 4), k -> new BitSet()).set((y << 8) | ((z & 15) << 4) | (x & 15));
+	}
+
+	/**
+	 * Returns the 16 block sections of a chunk, from the bottom to the top of the world. Chunks without any blocks
+	 * share a single array of air sections, it must not be modified.
+	 */
+	public ChunkSection[] getChunkSections(int chunkX, int chunkZ) {
+		ChunkColumn column = chunks.get(ChunkColumn.toKey(chunkX, chunkZ));
+		if (column != null) {
+			return column.getSections();
+		}
+		return isChunkInWorld(chunkX, chunkZ) ? ChunkColumn.EMPTY_SECTIONS : null;
+	}
+
+	/**
+	 * Returns the chunk at the given chunk coordinates, or null if nothing was ever placed in it.
+	 */
+	public ChunkColumn getChunkColumn(int chunkX, int chunkZ) {
+		return chunks.get(ChunkColumn.toKey(chunkX, chunkZ));
+	}
+
+	/**
+	 * Returns the chunk at the given chunk coordinates, creating it if it does not exist yet. The world grows to include
+	 * chunks created outside of its bounds.
+	 */
+	public ChunkColumn getOrCreateChunkColumn(int chunkX, int chunkZ) {
+		long key = ChunkColumn.toKey(chunkX, chunkZ);
+		ChunkColumn column = chunks.get(key);
+		if (column != null) {
+			return column;
+		}
+		synchronized (chunks) {
+			column = chunks.get(key);
+			if (column == null) {
+				column = new ChunkColumn(this, chunkX, chunkZ);
+				addChunkColumn(column);
+			}
+			return column;
+		}
+	}
+
+	/**
+	 * Adds a chunk that was filled in before being added to the world, replacing the chunk at its position if any.
+	 */
+	void addChunkColumn(ChunkColumn column) {
+		synchronized (chunks) {
+			ChunkColumn previous = chunks.put(column.getKey(), column);
+			if (previous != null) {
+				chunkColumns.remove(previous.getChunk());
+			}
+			chunkColumns.put(column.getChunk(), column);
+			if (!isChunkInWorld(column.getX(), column.getZ())) {
+				minChunkX = Math.min(minChunkX, column.getX());
+				minChunkZ = Math.min(minChunkZ, column.getZ());
+				maxChunkX = Math.max(maxChunkX, column.getX());
+				maxChunkZ = Math.max(maxChunkZ, column.getZ());
+			}
+		}
+	}
+
+	/**
+	 * Returns all chunks that had blocks placed in them.
+	 */
+	public List<ChunkColumn> getChunkColumns() {
+		return chunks.values();
+	}
+
+	/**
+	 * Whether the chunk is within the bounds of this world. Chunks inside the bounds are sent to players as lit air
+	 * even if nothing was placed in them, chunks outside are sent as void.
+	 */
+	public boolean isChunkInWorld(int chunkX, int chunkZ) {
+		return chunkX >= minChunkX && chunkX <= maxChunkX && chunkZ >= minChunkZ && chunkZ <= maxChunkZ;
+	}
+
+	public int getMinChunkX() {
+		return minChunkX;
+	}
+
+	public int getMinChunkZ() {
+		return minChunkZ;
+	}
+
+	public int getMaxChunkX() {
+		return maxChunkX;
+	}
+
+	public int getMaxChunkZ() {
+		return maxChunkZ;
 	}
 
 	public BlockState getBlock(BlockPosition blockPosition) {
@@ -131,18 +368,13 @@ public class World {
 	}
 	
 	public BlockState getBlock(int x, int y, int z) {
-		Chunk chunk = this.chunks[(x >> 4)][(z >> 4)];
-		if (chunk == null) {
-			chunk = Chunk.newChunk();
-			this.chunks[(x >> 4)][(z >> 4)] = chunk;
-		}
-		
-		CompoundTag tag = chunk.getBlockStateAt(x, y, z);
+		CompoundTag tag = GeneratedBlockDataMappings.getStateFromGlobalPaletteID(getBlockStateId(x, y, z));
 		if (tag == null) {
 			tag = new CompoundTag();
 			tag.putString("Name", "minecraft:air");
+			return new BlockState(tag);
 		}
-		return new BlockState(tag);
+		return new BlockState(tag.clone());
 	}
 
 	public void setBlock(BlockPosition blockPosition, BlockState state) {
@@ -150,63 +382,86 @@ public class World {
 	}
 	
 	public void setBlock(int x, int y, int z, BlockState state) {
-		Chunk chunk = this.chunks[(x >> 4)][(z >> 4)];
-		if (chunk == null) {
-			chunk = Chunk.newChunk();
-			this.chunks[(x >> 4)][(z >> 4)] = chunk;
-		}
-		chunk.setBlockStateAt(x % 16, y % 16, z % 16, state.toCompoundTag(), false);
+		setBlockStateId(x, y, z, GeneratedBlockDataMappings.getGlobalPaletteIDFromState(state.toCompoundTag()));
 	}
 
+	/**
+	 * Returns the chunks within the bounds of this world indexed from {@link #getMinChunkX()} and {@link #getMinChunkZ()},
+	 * creating every chunk that does not exist yet. The chunks of this world only hold height maps, biomes and tile
+	 * entities, their block methods always see air, the blocks are kept in {@link #getChunkSections(int, int)}.
+	 *
+	 * @deprecated use {@link #getChunkColumns()} instead
+	 */
+	@Deprecated
 	public Chunk[][] getChunks() {
-		return this.chunks;
+		int minChunkX = this.minChunkX;
+		int minChunkZ = this.minChunkZ;
+		Chunk[][] chunks = new Chunk[maxChunkX - minChunkX + 1][maxChunkZ - minChunkZ + 1];
+		for (int x = 0; x < chunks.length; x++) {
+			for (int z = 0; z < chunks[x].length; z++) {
+				chunks[x][z] = getChunkAt(minChunkX + x, minChunkZ + z);
+			}
+		}
+		return chunks;
 	}
 
+	/**
+	 * @deprecated the returned chunk holds no blocks, see {@link #getChunkAt(int, int)}
+	 */
+	@Deprecated
 	public Chunk getChunkAtWorldPos(int x, int z) {
-		return this.chunks[(x >> 4)][(z >> 4)];
+		return getChunkAt(x >> 4, z >> 4);
 	}
 	
+	/**
+	 * Returns the chunk at the given chunk coordinates, creating it if nothing was placed in it yet so it can be
+	 * modified, or null if it is outside of the bounds of this world.
+	 * <p>
+	 * The chunk only holds height maps, biomes and tile entities. Its block methods always see air and blocks set
+	 * through it are never sent to players, blocks are read and written with {@link #getBlock(int, int, int)} and
+	 * {@link #setBlock(int, int, int, BlockState)}.
+	 *
+	 * @deprecated use {@link #getChunkColumn(int, int)} or {@link #getOrCreateChunkColumn(int, int)} instead
+	 */
+	@Deprecated
 	public Chunk getChunkAt(int x, int z) {
-		if (x < 0 || z < 0 || x >= chunks.length || z >= chunks[x].length) {
+		if (!isChunkInWorld(x, z)) {
 			return null;
 		}
-		return this.chunks[x][z];
+		return getOrCreateChunkColumn(x, z).getChunk();
+	}
+
+	/**
+	 * Returns the chunk at the given chunk coordinates without creating it, the shared {@link #EMPTY_CHUNK} if nothing
+	 * was placed in it, or null if it is outside of the bounds of this world. The result is only read.
+	 */
+	Chunk getChunkForReading(int x, int z) {
+		ChunkColumn column = chunks.get(ChunkColumn.toKey(x, z));
+		if (column != null) {
+			return column.getChunk();
+		}
+		return isChunkInWorld(x, z) ? EMPTY_CHUNK : null;
 	}
 	
 	public int getChunkX(Chunk chunk) {
-		for (int x = 0; x < chunks.length; x++) {
-			for (int z = 0; z < chunks[x].length; z++) {
-				Chunk c = getChunkAt(x, z);
-				if (c.equals(chunk)) {
-					return x;
-				}
-			}
-		}
-		return Integer.MIN_VALUE;
+		ChunkColumn column = getChunkColumn(chunk);
+		return column == null ? Integer.MIN_VALUE : column.getX();
 	}
 	
 	public int getChunkZ(Chunk chunk) {
-		for (int x = 0; x < chunks.length; x++) {
-			for (int z = 0; z < chunks[x].length; z++) {
-				Chunk c = getChunkAt(x, z);
-				if (c.equals(chunk)) {
-					return z;
-				}
-			}
-		}
-		return Integer.MIN_VALUE;
+		ChunkColumn column = getChunkColumn(chunk);
+		return column == null ? Integer.MIN_VALUE : column.getZ();
 	}
 	
 	public int[] getChunkXZ(Chunk chunk) {
-		for (int x = 0; x < chunks.length; x++) {
-			for (int z = 0; z < chunks[x].length; z++) {
-				Chunk c = getChunkAt(x, z);
-				if (c.equals(chunk)) {
-					return new int[] {x, z};
-				}
-			}
+		ChunkColumn column = getChunkColumn(chunk);
+		return column == null ? null : new int[] {column.getX(), column.getZ()};
+	}
+
+	private ChunkColumn getChunkColumn(Chunk chunk) {
+		synchronized (chunks) {
+			return chunkColumns.get(chunk);
 		}
-		return null;
 	}
 
 	public String getName() {
@@ -226,11 +481,11 @@ public class World {
 	}
 	
 	public int getChunkWidth() {
-		return (width >> 4) + 1;
+		return maxChunkX - minChunkX + 1;
 	}
 
 	public int getChunkLength() {
-		return (length >> 4) + 1;
+		return maxChunkZ - minChunkZ + 1;
 	}
 	
 	public Set<Entity> getEntities() {
@@ -269,13 +524,7 @@ public class World {
 	protected void removeEntity(Entity entity) {
 		entities.remove(entity);
 		PacketPlayOutEntityDestroy packet = new PacketPlayOutEntityDestroy(entity.getEntityId());
-		for (Player player : getPlayers()) {
-			try {
-				player.clientConnection.sendPacket(packet);
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-		}
+		PacketBroadcaster.broadcast(packet, getPlayers());
 	}
 	
 	protected DataWatcher getDataWatcher(Entity entity) {
@@ -283,29 +532,140 @@ public class World {
 	}
 	
 	public void update() throws IllegalArgumentException, IllegalAccessException {
+		List<Player> players = getPlayers();
 		for (DataWatcher watcher : entities.values()) {
 			if (watcher.getEntity().getWorld().equals(this)) {
 				Map<Field, WatchableObject> updated = watcher.update();
 				PacketPlayOutEntityMetadata packet = new PacketPlayOutEntityMetadata(watcher.getEntity(), false, updated.keySet().toArray(new Field[0]));
-				for (Player player : getPlayers()) {
-					try {
-						player.clientConnection.sendPacket(packet);
-					} catch (IOException e) {
-						e.printStackTrace();
-					}
-				}
+				PacketBroadcaster.broadcast(packet, players);
 			} else {
 				PacketPlayOutEntityDestroy packet = new PacketPlayOutEntityDestroy(watcher.getEntity().getEntityId());
-				for (Player player : getPlayers()) {
-					try {
-						player.clientConnection.sendPacket(packet);
-					} catch (IOException e) {
-						e.printStackTrace();
-					}
-				}
+				PacketBroadcaster.broadcast(packet, players);
 				entities.remove(watcher.getEntity());
 			}
 		}
+		sendBlockChanges(players);
+		sendLightUpdates(players);
+	}
+
+	/**
+	 * Sends the blocks changed since the last tick to the players viewing them. Each section gets a single block update
+	 * or a section update, unless resending the whole chunk is smaller.
+	 */
+	private void sendBlockChanges(List<Player> players) {
+		Map<Long, BitSet> changes;
+		synchronized (pendingBlockChanges) {
+			if (pendingBlockChanges.isEmpty()) {
+				return;
+			}
+			changes = pendingBlockChanges;
+			pendingBlockChanges = new HashMap<>();
+		}
+		for (Map.Entry<Long, BitSet> entry : changes.entrySet()) {
+			int chunkX = ChunkColumn.getKeyX(entry.getKey());
+			int chunkZ = ChunkColumn.getKeyZ(entry.getKey());
+			ChunkPosition chunkPosition = new ChunkPosition(this, chunkX, chunkZ);
+			List<Player> viewers = players.stream().filter(each -> each.playerInteractManager.isViewing(chunkPosition)).collect(Collectors.toList());
+			if (viewers.isEmpty()) {
+				continue;
+			}
+			BitSet changed = entry.getValue();
+			ChunkSection[] column = getChunkSections(chunkX, chunkZ);
+			if (getChunkResendSize(chunkX, chunkZ) < getBlockChangesSize(changed)) {
+				PacketBroadcaster.broadcast(chunkPacketCache.getChunkPacket(chunkX, chunkZ), viewers);
+				continue;
+			}
+			for (int sectionY = 0; sectionY < column.length; sectionY++) {
+				int from = sectionY << 12;
+				int to = from + ChunkSection.SIZE;
+				int count = changed.get(from, to).cardinality();
+				if (count == 0) {
+					continue;
+				}
+				ChunkSection section = column[sectionY];
+				if (count == 1) {
+					int index = changed.nextSetBit(from);
+					int x = (chunkX << 4) | (index & 15);
+					int y = index >> 8;
+					int z = (chunkZ << 4) | ((index >> 4) & 15);
+					PacketBroadcaster.broadcast(new ClientboundBlockUpdatePacket(new BlockPosition(x, y, z), section.get(x, y, z)), viewers);
+					continue;
+				}
+				short[] positions = new short[count];
+				int[] stateIds = new int[count];
+				int i = 0;
+				for (int index = changed.nextSetBit(from); index >= 0 && index < to; index = changed.nextSetBit(index + 1)) {
+					int x = index & 15;
+					int y = (index >> 8) & 15;
+					int z = (index >> 4) & 15;
+					positions[i] = (short) ((x << 8) | (z << 4) | y);
+					stateIds[i] = section.get(x, y, z);
+					i++;
+				}
+				PacketBroadcaster.broadcast(new ClientboundSectionBlocksUpdatePacket(chunkX, sectionY, chunkZ, positions, stateIds, count), viewers);
+			}
+		}
+	}
+
+	private int getChunkResendSize(int chunkX, int chunkZ) {
+		int size = 0;
+		for (ChunkSection section : getChunkSections(chunkX, chunkZ)) {
+			size += section.getSerializedSize() + 3;
+		}
+		for (byte[] lightSection : lightEngineBlock.getBlockLightSections(chunkX, chunkZ)) {
+			if (lightSection != null) {
+				size += LightEngine.SECTION_SIZE + 3;
+			}
+		}
+		if (lightEngineSky != null) {
+			for (byte[] lightSection : lightEngineSky.getSkyLightSections(chunkX, chunkZ)) {
+				if (lightSection != null) {
+					size += LightEngine.SECTION_SIZE + 3;
+				}
+			}
+		}
+		return size;
+	}
+
+	private static int getBlockChangesSize(BitSet changed) {
+		int size = 0;
+		for (int sectionY = 0; sectionY < 16; sectionY++) {
+			int count = changed.get(sectionY << 12, (sectionY + 1) << 12).cardinality();
+			if (count == 1) {
+				size += 13;
+			} else if (count > 1) {
+				size += 12 + count * 4;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Sends the light sections changed by block updates since the last tick to the players viewing them, one packet per chunk.
+	 */
+	private void sendLightUpdates(List<Player> players) {
+		Map<Long, BitSet> blockLightChanges = lightEngineBlock.pollChangedSections();
+		Map<Long, BitSet> skyLightChanges = lightEngineSky == null ? Collections.emptyMap() : lightEngineSky.pollChangedSections();
+		if (blockLightChanges.isEmpty() && skyLightChanges.isEmpty()) {
+			return;
+		}
+		Set<Long> changedChunks = new HashSet<>(blockLightChanges.keySet());
+		changedChunks.addAll(skyLightChanges.keySet());
+		for (long key : changedChunks) {
+			int chunkX = ChunkColumn.getKeyX(key);
+			int chunkZ = ChunkColumn.getKeyZ(key);
+			chunkPacketCache.invalidate(chunkX, chunkZ);
+			ChunkPosition chunkPosition = new ChunkPosition(this, chunkX, chunkZ);
+			List<Player> viewers = players.stream().filter(each -> each.playerInteractManager.isViewing(chunkPosition)).collect(Collectors.toList());
+			if (viewers.isEmpty()) {
+				continue;
+			}
+			BitSet skyLightUpdated = skyLightChanges.getOrDefault(key, new BitSet());
+			byte[][] skylightArrays = lightEngineSky == null ? new byte[0][] : lightEngineSky.getSkyLightSections(chunkX, chunkZ);
+			BitSet blockLightUpdated = blockLightChanges.getOrDefault(key, new BitSet());
+			byte[][] blocklightArrays = lightEngineBlock.getBlockLightSections(chunkX, chunkZ);
+			PacketBroadcaster.broadcast(new ClientboundLightUpdatePacket(chunkX, chunkZ, skyLightUpdated, skylightArrays, blockLightUpdated, blocklightArrays), viewers);
+		}
 	}
 
 	@Override
@@ -0,0 +1,292 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.world;
+
+import com.loohp.limbo.Limbo;
+import com.loohp.limbo.utils.DataTypeIO;
+import net.querz.mca.Chunk;
+import net.querz.nbt.tag.CompoundTag;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A binary snapshot of a loaded world in the limbo-world format. It stores the palette compressed sections, block
+ * entities and computed light of every chunk, and optionally the serialized chunk packets, so that the world can be
+ * loaded without reading its schematic and lighting it again. The hash of the source the world was created from is
+ * stored as well, a snapshot of an outdated source is not loaded.
+ */
+public class WorldSnapshot {
+
+	public static final String FILE_EXTENSION = ".limbo-world";
+
+	private static final int MAGIC = 0x4C4D4257;
+	private static final int FORMAT_VERSION = 1;
+
+	private static final byte LIGHT_EMPTY = 0;
+	private static final byte LIGHT_FULL = 1;
+	private static final byte LIGHT_DATA = 2;
+
+	/**
+	 * Returns the SHA-256 hash of the contents of a file, used to tell whether a snapshot is still up to date.
+	 */
+	public static byte[] hash(File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			for (long position = 0; position < size; position += Integer.MAX_VALUE) {
+				digest.update(channel.map(MapMode.READ_ONLY, position, Math.min(size - position, Integer.MAX_VALUE)));
+			}
+		}
+		return digest.digest();
+	}
+
+	/**
+	 * Writes a snapshot of a world, the file is replaced only once the snapshot is complete.
+	 *
+	 * @param sourceHash the hash of the file the world was loaded from, see {@link #hash(File)}
+	 * @param chunkPackets whether to store the serialized chunk packets as well
+	 */
+	public static void write(World world, byte[] sourceHash, File file, boolean chunkPackets) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeInt(Limbo.getInstance().SERVER_IMPLEMENTATION_PROTOCOL);
+			out.writeInt(sourceHash.length);
+			out.write(sourceHash);
+			byte[] environment = world.getEnvironment().getKey().asString().getBytes(StandardCharsets.UTF_8);
+			out.writeInt(environment.length);
+			out.write(environment);
+			out.writeInt(world.getWidth());
+			out.writeInt(world.getLength());
+
+			List<ChunkColumn> columns = world.getChunkColumns();
+			out.writeInt(columns.size());
+			for (ChunkColumn column : columns) {
+				out.writeInt(column.getX());
+				out.writeInt(column.getZ());
+				Chunk chunk = column.getChunk();
+				CompoundTag tag = new CompoundTag();
+				if (chunk.getHeightMaps() != null) {
+					tag.put("Heightmaps", chunk.getHeightMaps());
+				}
+				if (chunk.getBiomes() != null) {
+					tag.putIntArray("Biomes", chunk.getBiomes());
+				}
+				tag.put("TileEntities", chunk.getTileEntities());
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				DataTypeIO.writeTag(new DataOutputStream(bytes), tag);
+				out.writeInt(bytes.size());
+				bytes.writeTo(out);
+
+				ChunkSection[] sections = column.getSections();
+				int mask = 0;
+				for (int i = 0; i < sections.length; i++) {
+					if (!sections[i].isShared()) {
+						mask |= 1 << i;
+					}
+				}
+				out.writeShort(mask);
+				for (ChunkSection section : sections) {
+					if (!section.isShared()) {
+						section.write(out);
+					}
+				}
+			}
+
+			writeLight(out, world.getLightEngineBlock().getColumns());
+			writeLight(out, world.hasSkyLight() ? world.getLightEngineSky().getColumns() : null);
+
+			if (chunkPackets) {
+				ChunkPacketCache cache = world.getChunkPacketCache();
+				out.writeInt((world.getMaxChunkX() - world.getMinChunkX() + 1) * (world.getMaxChunkZ() - world.getMinChunkZ() + 1));
+				for (int x = world.getMinChunkX(); x <= world.getMaxChunkX(); x++) {
+					for (int z = world.getMinChunkZ(); z <= world.getMaxChunkZ(); z++) {
+						byte[] packet = cache.getChunkPacket(x, z).getSerialized();
+						out.writeInt(x);
+						out.writeInt(z);
+						out.writeInt(packet.length);
+						out.write(packet);
+					}
+				}
+			} else {
+				out.writeInt(0);
+			}
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static void writeLight(DataOutputStream out, Map<Long, byte[][]> columns) throws IOException {
+		if (columns == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(columns.size());
+		for (Map.Entry<Long, byte[][]> entry : columns.entrySet()) {
+			out.writeInt(ChunkColumn.getKeyX(entry.getKey()));
+			out.writeInt(ChunkColumn.getKeyZ(entry.getKey()));
+			for (byte[] section : entry.getValue()) {
+				if (section == null) {
+					out.writeByte(LIGHT_EMPTY);
+				} else if (section == LightEngine.FULL_SECTION) {
+					out.writeByte(LIGHT_FULL);
+				} else {
+					out.writeByte(LIGHT_DATA);
+					out.write(section);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Loads a world from a snapshot by memory mapping the file.
+	 *
+	 * @param sourceHash the hash of the file the world would otherwise be loaded from, see {@link #hash(File)}
+	 * @return the world, or null if the snapshot was made from a different source, environment or server version
+	 * @throws IOException if the file cannot be read or is not a valid snapshot
+	 */
+	public static World read(File file, byte[] sourceHash, String name, Environment environment) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.getInt() != MAGIC) {
+				throw new IOException(file.getName() + " is not a world snapshot");
+			}
+			if (buffer.getInt() != FORMAT_VERSION || buffer.getInt() != Limbo.getInstance().SERVER_IMPLEMENTATION_PROTOCOL) {
+				return null;
+			}
+			if (!Arrays.equals(readBytes(buffer), sourceHash)) {
+				return null;
+			}
+			if (!new String(readBytes(buffer), StandardCharsets.UTF_8).equals(environment.getKey().asString())) {
+				return null;
+			}
+			int width = buffer.getInt();
+			int length = buffer.getInt();
+			World world = new World(name, width, length, environment);
+
+			int chunkCount = buffer.getInt();
+			for (int i = 0; i < chunkCount; i++) {
+				ChunkColumn column = world.getOrCreateChunkColumn(buffer.getInt(), buffer.getInt());
+				CompoundTag tag = DataTypeIO.readTag(new DataInputStream(new ByteArrayInputStream(readBytes(buffer))), CompoundTag.class);
+				Chunk chunk = column.getChunk();
+				if (tag.containsKey("Heightmaps")) {
+					chunk.setHeightMaps(tag.getCompoundTag("Heightmaps"));
+				}
+				if (tag.containsKey("Biomes")) {
+					chunk.setBiomes(tag.getIntArray("Biomes"));
+				}
+				chunk.setTileEntities(tag.getListTag("TileEntities").asCompoundTagList());
+				int mask = buffer.getShort() & 0xFFFF;
+				for (int sectionY = 0; sectionY < ChunkColumn.SECTION_COUNT; sectionY++) {
+					if ((mask & (1 << sectionY)) != 0) {
+						column.setSection(sectionY, ChunkSection.read(buffer));
+					}
+				}
+			}
+
+			Map<Long, byte[][]> blockLight = readLight(buffer);
+			Map<Long, byte[][]> skyLight = readLight(buffer);
+			if (blockLight == null || (skyLight == null) == world.hasSkyLight()) {
+				throw new IOException("Missing light data in " + file.getName());
+			}
+			world.getLightEngineBlock().loadColumns(blockLight);
+			if (world.hasSkyLight()) {
+				world.getLightEngineSky().loadColumns(skyLight);
+			}
+
+			ChunkPacketCache cache = world.getChunkPacketCache();
+			int packetCount = buffer.getInt();
+			for (int i = 0; i < packetCount; i++) {
+				int x = buffer.getInt();
+				int z = buffer.getInt();
+				cache.put(x, z, readBytes(buffer));
+			}
+			if (packetCount == 0) {
+				cache.prewarm();
+			}
+			return world;
+		} catch (BufferUnderflowException | IllegalArgumentException | ClassCastException e) {
+			throw new IOException("Corrupted world snapshot " + file.getName(), e);
+		}
+	}
+
+	private static Map<Long, byte[][]> readLight(ByteBuffer buffer) throws IOException {
+		int count = buffer.getInt();
+		if (count < 0) {
+			return null;
+		}
+		Map<Long, byte[][]> columns = new HashMap<>();
+		for (int i = 0; i < count; i++) {
+			int x = buffer.getInt();
+			int z = buffer.getInt();
+			byte[][] sections = new byte[LightEngine.SECTION_COUNT][];
+			for (int sectionY = 0; sectionY < sections.length; sectionY++) {
+				byte type = buffer.get();
+				if (type == LIGHT_FULL) {
+					sections[sectionY] = LightEngine.FULL_SECTION;
+				} else if (type == LIGHT_DATA) {
+					sections[sectionY] = new byte[LightEngine.SECTION_SIZE];
+					buffer.get(sections[sectionY]);
+				} else if (type != LIGHT_EMPTY) {
+					throw new IOException("Invalid light section type " + type);
+				}
+			}
+			columns.put(ChunkColumn.toKey(x, z), sections);
+		}
+		return columns;
+	}
+
+	private static byte[] readBytes(ByteBuffer buffer) throws IOException {
+		int length = buffer.getInt();
+		if (length < 0 || length > buffer.remaining()) {
+			throw new IOException("Invalid length " + length);
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+}
@@ -0,0 +1,43 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.network;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the threads that run blocking client connections.
+ * This is the Java 21 variant of the class, packaged under META-INF/versions/21.
+ */
+public class ConnectionThreads {
+
+    public static boolean isVirtualThreadsSupported() {
+        return true;
+    }
+
+    public static ThreadFactory newThreadFactory(String prefix, boolean virtual) {
+        if (virtual) {
+            return Thread.ofVirtual().name(prefix, 0).factory();
+        }
+        AtomicInteger counter = new AtomicInteger(0);
+        return runnable -> new Thread(runnable, prefix + counter.getAndIncrement());
+    }
+
+}
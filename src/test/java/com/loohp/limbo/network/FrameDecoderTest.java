@@ -0,0 +1,163 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.network;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FrameDecoderTest {
+
+    private static byte[] varInt(int value) {
+        ByteBuffer buffer = ByteBuffer.allocate(5);
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+        byte[] bytes = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static byte[] frame(int length) {
+        byte[] body = new byte[length];
+        for (int i = 0; i < length; i++) {
+            body[i] = (byte) i;
+        }
+        byte[] prefix = varInt(length);
+        byte[] frame = new byte[prefix.length + length];
+        System.arraycopy(prefix, 0, frame, 0, prefix.length);
+        System.arraycopy(body, 0, frame, prefix.length, length);
+        return frame;
+    }
+
+    private static byte[] body(byte[] frame) {
+        int length = FrameDecoder.readVarInt(ByteBuffer.wrap(frame));
+        int prefixLength = varInt(length).length;
+        byte[] body = new byte[length];
+        System.arraycopy(frame, prefixLength, body, 0, length);
+        return body;
+    }
+
+    @Test
+    public void decodesConsecutiveFrames() {
+        byte[] first = frame(3);
+        byte[] second = frame(200);
+        ByteBuffer buffer = ByteBuffer.allocate(first.length + second.length);
+        buffer.put(first).put(second).flip();
+        List<byte[]> frames = new ArrayList<>();
+
+        assertEquals(FrameDecoder.Result.NEED_MORE, FrameDecoder.decode(buffer, false, frames::add));
+        assertEquals(2, frames.size());
+        assertArrayEquals(body(first), frames.get(0));
+        assertArrayEquals(body(second), frames.get(1));
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    public void waitsForTheRestOfASplitLength() {
+        byte[] frame = frame(300);
+        ByteBuffer buffer = ByteBuffer.allocate(frame.length);
+        List<byte[]> frames = new ArrayList<>();
+
+        // only the first byte of the two byte length
+        buffer.put(frame, 0, 1).flip();
+        assertEquals(FrameDecoder.Result.NEED_MORE, FrameDecoder.decode(buffer, false, frames::add));
+        assertTrue(frames.isEmpty());
+        assertEquals(0, buffer.position());
+
+        buffer.compact();
+        buffer.put(frame, 1, frame.length - 1).flip();
+        assertEquals(FrameDecoder.Result.NEED_MORE, FrameDecoder.decode(buffer, false, frames::add));
+        assertEquals(1, frames.size());
+        assertArrayEquals(body(frame), frames.get(0));
+    }
+
+    @Test
+    public void waitsForTheRestOfASplitBody() {
+        byte[] frame = frame(50);
+        ByteBuffer buffer = ByteBuffer.allocate(frame.length);
+        List<byte[]> frames = new ArrayList<>();
+
+        buffer.put(frame, 0, 20).flip();
+        assertEquals(FrameDecoder.Result.NEED_MORE, FrameDecoder.decode(buffer, false, frames::add));
+        assertTrue(frames.isEmpty());
+        assertEquals(0, buffer.position());
+
+        buffer.compact();
+        buffer.put(frame, 20, frame.length - 20).flip();
+        assertEquals(FrameDecoder.Result.NEED_MORE, FrameDecoder.decode(buffer, false, frames::add));
+        assertArrayEquals(body(frame), frames.get(0));
+    }
+
+    @Test
+    public void acceptsTheMaximumFrameLength() {
+        byte[] frame = frame(NioChannel.MAX_FRAME_LENGTH);
+        List<byte[]> frames = new ArrayList<>();
+
+        assertEquals(FrameDecoder.Result.NEED_MORE, FrameDecoder.decode(ByteBuffer.wrap(frame), false, frames::add));
+        assertEquals(1, frames.size());
+        assertEquals(NioChannel.MAX_FRAME_LENGTH, frames.get(0).length);
+    }
+
+    @Test
+    public void rejectsFramesOverTheMaximumLength() {
+        ByteBuffer buffer = ByteBuffer.wrap(varInt(NioChannel.MAX_FRAME_LENGTH + 1));
+        assertEquals(FrameDecoder.Result.INVALID, FrameDecoder.decode(buffer, false, frame -> {}));
+    }
+
+    @Test
+    public void rejectsEmptyFramesAndOverlongLengths() {
+        assertEquals(FrameDecoder.Result.INVALID, FrameDecoder.decode(ByteBuffer.wrap(new byte[] {0}), false, frame -> {}));
+        byte[] overlong = {(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 1};
+        assertEquals(FrameDecoder.Result.INVALID, FrameDecoder.decode(ByteBuffer.wrap(overlong), false, frame -> {}));
+    }
+
+    @Test
+    public void detectsALegacyPingAsTheFirstFrame() {
+        byte[] ping = {(byte) 0xFE, 0x01, (byte) 0xFA};
+        List<byte[]> frames = new ArrayList<>();
+
+        assertEquals(FrameDecoder.Result.LEGACY_PING, FrameDecoder.decode(ByteBuffer.wrap(ping), true, frames::add));
+        assertTrue(frames.isEmpty());
+    }
+
+    @Test
+    public void treatsTheLegacyPingLengthAsAFrameAfterTheFirst() {
+        byte[] first = frame(4);
+        byte[] second = frame(FrameDecoder.LEGACY_PING_LENGTH);
+        ByteBuffer buffer = ByteBuffer.allocate(first.length + second.length);
+        buffer.put(first).put(second).flip();
+        List<byte[]> frames = new ArrayList<>();
+
+        assertEquals(FrameDecoder.Result.NEED_MORE, FrameDecoder.decode(buffer, true, frames::add));
+        assertEquals(2, frames.size());
+        assertEquals(FrameDecoder.LEGACY_PING_LENGTH, frames.get(1).length);
+    }
+
+}
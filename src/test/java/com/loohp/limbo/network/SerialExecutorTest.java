@@ -0,0 +1,139 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.network;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SerialExecutorTest {
+
+    private ExecutorService workers;
+    private ScheduledExecutorService timer;
+
+    @BeforeEach
+    public void setUp() {
+        workers = Executors.newFixedThreadPool(8);
+        timer = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        workers.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    @Test
+    public void runsTasksOneAtATimeInSubmissionOrder() throws InterruptedException {
+        int executors = 16;
+        int tasksPerExecutor = 10000;
+        List<List<Integer>> runs = new ArrayList<>();
+        AtomicBoolean overlapped = new AtomicBoolean(false);
+        CountDownLatch done = new CountDownLatch(executors * tasksPerExecutor);
+
+        for (int e = 0; e < executors; e++) {
+            SerialExecutor executor = new SerialExecutor(workers, timer);
+            List<Integer> run = Collections.synchronizedList(new ArrayList<>());
+            runs.add(run);
+            AtomicInteger running = new AtomicInteger(0);
+            // submit from another thread each time so the shared pool interleaves the executors
+            new Thread(() -> {
+                for (int i = 0; i < tasksPerExecutor; i++) {
+                    int index = i;
+                    executor.execute(() -> {
+                        if (running.incrementAndGet() != 1) {
+                            overlapped.set(true);
+                        }
+                        run.add(index);
+                        running.decrementAndGet();
+                        done.countDown();
+                    });
+                }
+            }).start();
+        }
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertFalse(overlapped.get());
+        for (List<Integer> run : runs) {
+            assertEquals(tasksPerExecutor, run.size());
+            for (int i = 0; i < tasksPerExecutor; i++) {
+                assertEquals(i, run.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void keepsRunningAfterATaskThrows() throws InterruptedException {
+        SerialExecutor executor = new SerialExecutor(workers, timer);
+        CountDownLatch done = new CountDownLatch(1);
+
+        executor.execute(() -> {
+            throw new IllegalStateException("expected by the test");
+        });
+        executor.execute(done::countDown);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void runsDelayedTaskAheadOfTasksQueuedMeanwhile() throws InterruptedException {
+        SerialExecutor executor = new SerialExecutor(workers, timer);
+        List<String> run = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch before = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(3);
+
+        executor.execute(() -> {
+            run.add("before");
+            before.countDown();
+            done.countDown();
+        });
+        assertTrue(before.await(5, TimeUnit.SECONDS));
+        executor.executeLater(100, () -> {
+            run.add("delayed");
+            done.countDown();
+        });
+        executor.execute(() -> {
+            run.add("after");
+            done.countDown();
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(3, run.size());
+        assertEquals("before", run.get(0));
+        assertEquals("delayed", run.get(1));
+        assertEquals("after", run.get(2));
+    }
+
+}
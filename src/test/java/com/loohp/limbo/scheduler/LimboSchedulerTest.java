@@ -0,0 +1,188 @@
+/*
+ * This file is part of Limbo.
+ *
+ * Copyright (C) 2022. LoohpJames <jamesloohp@gmail.com>
+ * Copyright (C) 2022. Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.loohp.limbo.scheduler;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LimboSchedulerTest {
+	
+	private static final LimboTask NOTHING = () -> {};
+	
+	private AtomicLong tick;
+	private LimboScheduler scheduler;
+	
+	@BeforeEach
+	public void setUp() {
+		tick = new AtomicLong(0);
+		scheduler = new LimboScheduler(tick::get);
+	}
+	
+	/**
+	 * Moves the clock and the wheel forward by one tick and returns the ids of the tasks that came up.
+	 */
+	private List<Integer> advance() {
+		long currentTick = tick.incrementAndGet();
+		List<Integer> ids = new ArrayList<>();
+		LimboScheduler.CurrentSchedulerTask tasks = scheduler.collectTasks(currentTick);
+		if (tasks != null) {
+			for (LimboScheduler.LimboSchedulerTask task : tasks.getSyncedTasks()) {
+				ids.add(task.getTaskId());
+			}
+			for (LimboScheduler.LimboSchedulerTask task : tasks.getAsyncTasks()) {
+				ids.add(task.getTaskId());
+			}
+		}
+		return ids;
+	}
+	
+	private void advanceTo(long target) {
+		while (tick.get() < target) {
+			advance();
+		}
+	}
+	
+	@Test
+	public void cascadesTasksDownToTheTickTheyAreDue() {
+		long[] delays = {1, 5, 63, 64, 65, 127, 4095, 4096, 4097, 262143, 262144, 300000};
+		Map<Integer, Long> due = new HashMap<>();
+		for (int i = 0; i < delays.length; i++) {
+			int id = i % 2 == 0 ? scheduler.runTaskLater(null, NOTHING, delays[i]) : scheduler.runTaskLaterAsync(null, NOTHING, delays[i]);
+			due.put(id, delays[i]);
+		}
+		
+		Map<Integer, Long> ran = new HashMap<>();
+		while (tick.get() < 300000) {
+			for (int id : advance()) {
+				assertNull(ran.put(id, tick.get()));
+			}
+		}
+		assertEquals(due, ran);
+	}
+	
+	@Test
+	public void firesTasksWhoseSlotWrapsAroundTheWheel() {
+		advanceTo(100);
+		// slot 36 of the lowest level, these fall into slots before it on the next turn of each level
+		int nextTurn = scheduler.runTaskLater(null, NOTHING, 30);
+		int nextUpperTurn = scheduler.runTaskLater(null, NOTHING, 4000);
+		
+		Map<Integer, Long> ran = new HashMap<>();
+		while (tick.get() < 5000) {
+			for (int id : advance()) {
+				ran.put(id, tick.get());
+			}
+		}
+		assertEquals(130L, ran.get(nextTurn));
+		assertEquals(4100L, ran.get(nextUpperTurn));
+	}
+	
+	@Test
+	public void repeatsTimersEveryPeriod() {
+		advanceTo(50);
+		int timer = scheduler.runTaskTimer(null, NOTHING, 10, 7);
+		
+		List<Long> runs = new ArrayList<>();
+		while (tick.get() < 100) {
+			if (advance().contains(timer)) {
+				runs.add(tick.get());
+			}
+		}
+		assertEquals(Arrays.asList(60L, 67L, 74L, 81L, 88L, 95L), runs);
+	}
+	
+	@Test
+	public void neverRunsCancelledTasks() {
+		int cancelled = scheduler.runTaskLater(null, NOTHING, 10);
+		int sameSlot = scheduler.runTaskLater(null, NOTHING, 10);
+		int upperLevel = scheduler.runTaskLater(null, NOTHING, 5000);
+		int timer = scheduler.runTaskTimer(null, NOTHING, 1, 1);
+		scheduler.cancelTask(cancelled);
+		scheduler.cancelTask(upperLevel);
+		
+		assertEquals(Arrays.asList(timer), advance());
+		scheduler.cancelTask(timer);
+		
+		List<Integer> ran = new ArrayList<>();
+		while (tick.get() < 6000) {
+			ran.addAll(advance());
+		}
+		assertEquals(Arrays.asList(sameSlot), ran);
+	}
+	
+	@Test
+	public void keepsTasksCancelledWhileBeingScheduled() throws InterruptedException {
+		int rounds = 2000;
+		ExecutorService threads = Executors.newFixedThreadPool(2);
+		try {
+			for (int i = 0; i < rounds; i++) {
+				int id = scheduler.nextId();
+				CountDownLatch start = new CountDownLatch(1);
+				CountDownLatch done = new CountDownLatch(2);
+				threads.execute(() -> {
+					awaitQuietly(start);
+					scheduler.runTaskLater(id, null, NOTHING, 10);
+					done.countDown();
+				});
+				threads.execute(() -> {
+					awaitQuietly(start);
+					scheduler.cancelTask(id);
+					done.countDown();
+				});
+				start.countDown();
+				assertTrue(done.await(5, TimeUnit.SECONDS));
+				// whichever of the two went first, cancelling once scheduling returned must stop the task
+				scheduler.cancelTask(id);
+			}
+		} finally {
+			threads.shutdownNow();
+		}
+		
+		List<Integer> ran = new ArrayList<>();
+		while (tick.get() < 20) {
+			ran.addAll(advance());
+		}
+		assertEquals(new ArrayList<Integer>(), ran);
+	}
+	
+	private static void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+}